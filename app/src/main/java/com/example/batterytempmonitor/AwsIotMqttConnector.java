@@ -0,0 +1,56 @@
+package com.example.batterytempmonitor;
+
+import android.util.Log;
+
+import com.amazonaws.mobileconnectors.iot.AWSIotMqttClientStatusCallback;
+import com.amazonaws.mobileconnectors.iot.AWSIotMqttManager;
+
+/**
+ * {@link MqttConnector} backed by {@link AWSIotMqttManager} with certificate
+ * authentication. The SDK's own reconnect loop is switched off, since it retries
+ * on a fixed schedule; {@link ConnectionManager} retries with jitter instead.
+ * The keystore comes from a {@link KeyStoreCache}, so only the first attempt
+ * pays for loading it, and it does so on the connection thread.
+ */
+public class AwsIotMqttConnector implements MqttConnector {
+    private static final String TAG = "BatteryTempMonitor";
+
+    private final AWSIotMqttManager mqttManager;
+    private final KeyStoreCache keyStores;
+
+    public AwsIotMqttConnector(AWSIotMqttManager mqttManager, KeyStoreCache keyStores) {
+        this.mqttManager = mqttManager;
+        this.keyStores = keyStores;
+        mqttManager.setAutoReconnect(false);
+    }
+
+    @Override
+    public void connect(Callback callback) throws Exception {
+        mqttManager.connect(keyStores.get(), new AWSIotMqttClientStatusCallback() {
+            @Override
+            public void onStatusChanged(AWSIotMqttClientStatus status, Throwable throwable) {
+                switch (status) {
+                    case Connected:
+                        callback.onConnected();
+                        break;
+                    case ConnectionLost:
+                    case Reconnecting:
+                        callback.onDisconnected(throwable);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        });
+    }
+
+    @Override
+    public void disconnect() {
+        try {
+            mqttManager.disconnect();
+        } catch (Exception e) {
+            // Already closed, or the attempt never got as far as a client
+            Log.d(TAG, "Disconnect after failed attempt: " + e.getMessage());
+        }
+    }
+}
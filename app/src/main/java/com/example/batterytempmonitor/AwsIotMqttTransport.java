@@ -0,0 +1,51 @@
+package com.example.batterytempmonitor;
+
+import com.amazonaws.mobileconnectors.iot.AWSIotMqttManager;
+import com.amazonaws.mobileconnectors.iot.AWSIotMqttMessageDeliveryCallback;
+import com.amazonaws.mobileconnectors.iot.AWSIotMqttQos;
+
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+/**
+ * {@link MqttTransport} backed by {@link AWSIotMqttManager}.
+ */
+public class AwsIotMqttTransport implements MqttTransport {
+    private final AWSIotMqttManager mqttManager;
+    private final AWSIotMqttQos qos;
+    private final BooleanSupplier connected;
+
+    public AwsIotMqttTransport(AWSIotMqttManager mqttManager, AWSIotMqttQos qos, BooleanSupplier connected) {
+        this.mqttManager = mqttManager;
+        this.qos = qos;
+        this.connected = connected;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connected.getAsBoolean();
+    }
+
+    @Override
+    public void publish(String topic, byte[] payload, int offset, int length) {
+        mqttManager.publishData(copyOf(payload, offset, length), topic, qos);
+    }
+
+    /**
+     * {@code publishData} only queues the message. The SDK reports {@code Success} once
+     * it is sent at QoS 0, or once the broker's PUBACK arrives at QoS 1.
+     */
+    @Override
+    public void publish(String topic, byte[] payload, int offset, int length, DeliveryCallback callback) {
+        mqttManager.publishData(copyOf(payload, offset, length), topic, qos,
+                (status, userData) -> callback.onDelivery(
+                        status == AWSIotMqttMessageDeliveryCallback.MessageDeliveryStatus.Success),
+                null);
+    }
+
+    private static byte[] copyOf(byte[] payload, int offset, int length) {
+        // The SDK takes ownership of the array, so it needs an exact-size copy
+        return offset == 0 && length == payload.length
+                ? payload : Arrays.copyOfRange(payload, offset, offset + length);
+    }
+}
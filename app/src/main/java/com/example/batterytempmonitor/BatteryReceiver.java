@@ -0,0 +1,42 @@
+package com.example.batterytempmonitor;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+
+/**
+ * Keeps a {@link BatteryStateCache} current from {@code ACTION_BATTERY_CHANGED}
+ * broadcasts. The sticky intent returned on registration fills the cache straight
+ * away; after that the system only delivers an intent when the battery changes.
+ */
+public class BatteryReceiver extends BroadcastReceiver {
+    private static final IntentFilter BATTERY_FILTER = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+
+    private final BatteryStateCache cache;
+
+    public BatteryReceiver(BatteryStateCache cache) {
+        this.cache = cache;
+    }
+
+    public void register(Context context) {
+        Intent sticky = context.getApplicationContext().registerReceiver(this, BATTERY_FILTER);
+        if (sticky != null) {
+            onReceive(context, sticky);
+        }
+    }
+
+    public void unregister(Context context) {
+        context.getApplicationContext().unregisterReceiver(this);
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        // A missing extra must not read as 0 degrees or 0 %
+        cache.update(intent.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, BatteryStateCache.UNKNOWN_TEMPERATURE),
+                intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1),
+                intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1),
+                intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0);
+    }
+}
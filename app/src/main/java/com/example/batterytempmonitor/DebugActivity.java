@@ -0,0 +1,72 @@
+package com.example.batterytempmonitor;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+/**
+ * Shows the pipeline's own latencies and counters from {@link SelfMetrics},
+ * refreshed every second while visible. Opened by long-pressing the title on
+ * the main screen.
+ */
+public class DebugActivity extends AppCompatActivity {
+    private static final long REFRESH_INTERVAL_MS = 1000;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private TextView selfMetricsText;
+    private TelemetryService service;
+
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            if (service != null) {
+                SelfMetrics.Report report = service.getSelfMetrics().report(System.currentTimeMillis());
+                selfMetricsText.setText("Uptime: " + report.getDurationMillis() / 1000 + " s\n\n" + report);
+            }
+            handler.postDelayed(this, REFRESH_INTERVAL_MS);
+        }
+    };
+
+    private final ServiceConnection connection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            service = ((TelemetryService.LocalBinder) binder).getService();
+            handler.removeCallbacks(refresh);
+            handler.post(refresh);
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            service = null;
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_debug);
+        selfMetricsText = findViewById(R.id.selfMetricsText);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        bindService(new Intent(this, TelemetryService.class), connection, Context.BIND_AUTO_CREATE);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        handler.removeCallbacks(refresh);
+        service = null;
+        unbindService(connection);
+    }
+}
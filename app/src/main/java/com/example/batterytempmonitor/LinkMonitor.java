@@ -0,0 +1,65 @@
+package com.example.batterytempmonitor;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.Build;
+
+/**
+ * Tracks the {@link LinkQuality} of the default network from connectivity callbacks.
+ * The quality can be read from any thread.
+ */
+public class LinkMonitor extends ConnectivityManager.NetworkCallback {
+    // Below this the radio works hard for every byte
+    private static final int WEAK_SIGNAL_DBM = -105;
+
+    private volatile LinkQuality quality = LinkQuality.OFFLINE;
+    private volatile Runnable onRegained;
+
+    public void register(Context context) {
+        connectivity(context).registerDefaultNetworkCallback(this);
+    }
+
+    public void unregister(Context context) {
+        connectivity(context).unregisterNetworkCallback(this);
+    }
+
+    public LinkQuality getQuality() {
+        return quality;
+    }
+
+    /** Runs {@code action} on the callback thread whenever the device goes from offline to online. */
+    public void setOnRegained(Runnable action) {
+        onRegained = action;
+    }
+
+    @Override
+    public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+        LinkQuality previous = quality;
+        if (!capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED)) {
+            quality = LinkQuality.POOR;
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
+                && capabilities.getSignalStrength() != NetworkCapabilities.SIGNAL_STRENGTH_UNSPECIFIED
+                && capabilities.getSignalStrength() < WEAK_SIGNAL_DBM) {
+            quality = LinkQuality.POOR;
+        } else if (capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED)) {
+            quality = LinkQuality.UNMETERED;
+        } else {
+            quality = LinkQuality.GOOD;
+        }
+        Runnable action = onRegained;
+        if (previous == LinkQuality.OFFLINE && quality != LinkQuality.OFFLINE && action != null) {
+            action.run();
+        }
+    }
+
+    @Override
+    public void onLost(Network network) {
+        quality = LinkQuality.OFFLINE;
+    }
+
+    private static ConnectivityManager connectivity(Context context) {
+        return (ConnectivityManager) context.getApplicationContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.batterytempmonitor;
+
+import android.app.ActivityManager;
+import android.content.Context;
+
+/**
+ * Reports {@link Metric#MEMORY_USAGE}, the share of RAM in use, from
+ * {@link ActivityManager.MemoryInfo}.
+ */
+public class MemorySource implements MetricSource {
+    private final ActivityManager activityManager;
+    private final ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+    private final long intervalMillis;
+
+    public MemorySource(Context context, long intervalMillis) {
+        this.activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        this.intervalMillis = intervalMillis;
+    }
+
+    @Override
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    @Override
+    public void sample(MetricsSnapshot.Builder out) {
+        activityManager.getMemoryInfo(memoryInfo);
+        long usedMemory = memoryInfo.totalMem - memoryInfo.availMem;
+        out.set(Metric.MEMORY_USAGE, (double) usedMemory / memoryInfo.totalMem * 100);
+    }
+}
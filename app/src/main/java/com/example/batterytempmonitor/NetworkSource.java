@@ -0,0 +1,67 @@
+package com.example.batterytempmonitor;
+
+import android.net.TrafficStats;
+import android.os.Process;
+import android.os.SystemClock;
+
+/**
+ * Reports cumulative device traffic and receive/transmit rates, for the device and
+ * for this app's own UID, from {@link TrafficStats}. Rates are in KiB/s and are
+ * absent on the first sample, which only sets the baseline.
+ */
+public class NetworkSource implements MetricSource {
+    private static final double BYTES_PER_KIB = 1024.0;
+
+    private final long intervalMillis;
+    private final int appUid = Process.myUid();
+    private final TrafficRateTracker tracker;
+
+    /** @param smoothingMillis EWMA time constant for the rates, or 0 for none */
+    public NetworkSource(long intervalMillis, long smoothingMillis) {
+        this.intervalMillis = intervalMillis;
+        this.tracker = new TrafficRateTracker(new TrafficStatsCounters(), SystemClock::elapsedRealtimeNanos,
+                smoothingMillis, appUid);
+    }
+
+    @Override
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    @Override
+    public void sample(MetricsSnapshot.Builder out) {
+        tracker.update();
+        if (tracker.getTotalRxBytes() >= 0) {
+            out.set(Metric.RX_BYTES, tracker.getTotalRxBytes());
+        }
+        if (tracker.getTotalTxBytes() >= 0) {
+            out.set(Metric.TX_BYTES, tracker.getTotalTxBytes());
+        }
+        out.set(Metric.RX_RATE, tracker.getRxRate() / BYTES_PER_KIB)
+                .set(Metric.TX_RATE, tracker.getTxRate() / BYTES_PER_KIB)
+                .set(Metric.APP_RX_RATE, tracker.getUidRxRate(appUid) / BYTES_PER_KIB)
+                .set(Metric.APP_TX_RATE, tracker.getUidTxRate(appUid) / BYTES_PER_KIB);
+    }
+
+    private static final class TrafficStatsCounters implements TrafficCounters {
+        @Override
+        public long getTotalRxBytes() {
+            return TrafficStats.getTotalRxBytes();
+        }
+
+        @Override
+        public long getTotalTxBytes() {
+            return TrafficStats.getTotalTxBytes();
+        }
+
+        @Override
+        public long getUidRxBytes(int uid) {
+            return TrafficStats.getUidRxBytes(uid);
+        }
+
+        @Override
+        public long getUidTxBytes(int uid) {
+            return TrafficStats.getUidTxBytes(uid);
+        }
+    }
+}
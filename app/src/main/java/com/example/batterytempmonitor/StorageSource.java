@@ -0,0 +1,30 @@
+package com.example.batterytempmonitor;
+
+import android.os.Environment;
+import android.os.StatFs;
+
+/**
+ * Reports available and total bytes on the data partition.
+ */
+public class StorageSource implements MetricSource {
+    private final long intervalMillis;
+
+    public StorageSource(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+
+    @Override
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    @Override
+    public void sample(MetricsSnapshot.Builder out) {
+        StatFs stat = new StatFs(Environment.getDataDirectory().getPath());
+        long bytesAvailable = stat.getAvailableBlocksLong() * stat.getBlockSizeLong();
+        long bytesTotal = stat.getBlockCountLong() * stat.getBlockSizeLong();
+
+        out.set(Metric.STORAGE_AVAILABLE, bytesAvailable)
+                .set(Metric.STORAGE_TOTAL, bytesTotal);
+    }
+}
@@ -0,0 +1,858 @@
+package com.example.batterytempmonitor;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.ServiceInfo;
+import android.os.Binder;
+import android.os.Build;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.content.ContextCompat;
+
+import com.amazonaws.mobileconnectors.iot.AWSIotKeystoreHelper;
+import com.amazonaws.mobileconnectors.iot.AWSIotMqttManager;
+import com.amazonaws.mobileconnectors.iot.AWSIotMqttQos;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owns the whole telemetry pipeline (sampling, encoding, offline queue and the
+ * MQTT connection) so that it outlives any activity.
+ *
+ * Collection runs while the service is started, as a foreground service of type
+ * {@code dataSync}; the MQTT connection is opened once when collection first
+ * starts and kept until the service is destroyed. Activities bind to it only to
+ * display snapshots and status, so rotating the screen or leaving the app no
+ * longer reconnects. The MQTT client id is generated once per installation and
+ * kept in shared preferences, so the broker always sees the same client.
+ */
+public class TelemetryService extends Service {
+    private static final String TAG = "BatteryTempMonitor";
+
+    /** Starts collection; send with {@link ContextCompat#startForegroundService}. */
+    public static final String ACTION_START = "com.example.batterytempmonitor.action.START";
+
+    /** Receives pipeline updates on the main thread. */
+    public interface Observer {
+        void onSnapshot(MetricsSnapshot snapshot);
+
+        void onStatus(String status);
+
+        default void onCollectingChanged(boolean collecting) {
+        }
+    }
+
+    /** Returned to bound activities; gives direct access to the service. */
+    public final class LocalBinder extends Binder {
+        public TelemetryService getService() {
+            return TelemetryService.this;
+        }
+    }
+
+    // UPDATE THESE VALUES with your own AWS IoT information
+    private static final String CUSTOMER_SPECIFIC_ENDPOINT = "adrff8x4zwsxy-ats.iot.eu-west-1.amazonaws.com";
+
+    // Certificate information
+    private static final String KEYSTORE_NAME = "iot_keystore";
+    private static final String KEYSTORE_PASSWORD = "password";
+    private static final String CERTIFICATE_ID = "default";
+    private static final String CERTIFICATE_ASSET = "certificate.pem.crt";
+    private static final String PRIVATE_KEY_ASSET = "private.pem.key";
+
+    // Reconnect backoff: full jitter between 0 and 1 s, doubling up to 5 min
+    private static final long RECONNECT_BASE_MS = 1000;
+    private static final long RECONNECT_MAX_MS = 5 * 60 * 1000;
+    private static final long CONNECT_TIMEOUT_MS = 30000;
+
+    // Stable MQTT client identity
+    private static final String PREFERENCES_NAME = "telemetry";
+    private static final String PREF_CLIENT_ID = "client_id";
+
+    private static final String NOTIFICATION_CHANNEL_ID = "telemetry";
+    private static final int NOTIFICATION_ID = 1;
+
+    // EWMA time constant for network rates; 0 reports each interval as measured
+    private static final long NETWORK_RATE_SMOOTHING_MS = 0;
+
+    // High-frequency mode samples the fast sources every second and publishes one
+    // aggregated snapshot (mean, min, max, p95) per window instead of every sample
+    private static final boolean HIGH_FREQUENCY_MODE = false;
+    private static final long HIGH_FREQUENCY_INTERVAL_MS = 1000;
+    private static final long AGGREGATION_WINDOW_MS = 30000;
+
+    // Offline queue: 256 KB segments, at most 16 MB kept on disk
+    private static final long QUEUE_SEGMENT_BYTES = 256 * 1024;
+    private static final long QUEUE_MAX_BYTES = 16 * 1024 * 1024;
+
+    // Backlog goes out as zlib chunks on its own topic, below the 128 KB AWS IoT payload limit
+    // and at a limited rate so the live stream keeps most of the link
+    private static final String BACKLOG_TOPIC = "device/metrics/backlog";
+    private static final int BACKLOG_MAX_CHUNK_BYTES = 96 * 1024;
+    private static final int BACKLOG_COMPRESSION_LEVEL = 6;
+    private static final long BACKLOG_BYTES_PER_SECOND = 8 * 1024;
+    private static final int BACKLOG_CHUNKS_PER_CALL = 2;
+
+    // Pipeline self-metrics go out on their own topic every few minutes, at QoS 0
+    private static final String SELF_TOPIC = "device/metrics/self";
+    private static final long SELF_REPORT_INTERVAL_MS = 5 * 60 * 1000;
+
+    // Local history: a day of raw samples, a week of minutes and a year of hours (about 12 MB)
+    private static final int HISTORY_RAW_ROWS = 24 * 60 * 12;
+    private static final int HISTORY_MINUTE_ROWS = 7 * 24 * 60;
+    private static final int HISTORY_HOUR_ROWS = 365 * 24;
+
+    // Log files: 1 MB each, at most 8 MB kept
+    private static final int LOG_BUFFER_CAPACITY = 1024;
+    private static final long LOG_MAX_FILE_BYTES = 1024 * 1024;
+    private static final long LOG_MAX_TOTAL_BYTES = 8 * 1024 * 1024;
+
+    // Wire format for published batches; binary is much smaller on metered links
+    private static final boolean USE_BINARY_PAYLOAD = false;
+
+    // How long onDestroy waits for the final flush before disconnecting and closing the log
+    private static final long SHUTDOWN_FLUSH_TIMEOUT_MS = 2000;
+
+    // Sampling and flush intervals stretch or shrink with battery, heat and link quality.
+    // A mode must last this long before sampling speeds up again.
+    private static final long SAMPLING_MODE_MIN_DWELL_MS = 2 * 60 * 1000;
+
+    private final LocalBinder binder = new LocalBinder();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Observer> observers = new CopyOnWriteArrayList<>();
+
+    private MetricsCollector metricsCollector;
+    // Updated by broadcasts on the main thread, read by the battery sources on the collector thread
+    private final BatteryStateCache batteryState = new BatteryStateCache();
+    private final BatteryReceiver batteryReceiver = new BatteryReceiver(batteryState);
+    private final LinkMonitor linkMonitor = new LinkMonitor();
+
+    // Only used on the collector thread
+    private final AdaptiveScheduler adaptiveScheduler = new AdaptiveScheduler(
+            new DefaultSamplingPolicy(), SAMPLING_MODE_MIN_DWELL_MS, this::applySamplingMode);
+    private final DeltaFilter deltaFilter = PipelineDefaults.newDeltaFilter();
+
+    // Offline queue records are single-sample binary frames. Only used on the collector thread.
+    private final BinaryPayloadFormat queueRecordFormat = new BinaryPayloadFormat(Build.MODEL);
+    private final PayloadBuffer queueRecordBuffer = new PayloadBuffer(256);
+
+    private AWSIotMqttManager mqttManager;
+    // Kept for the life of the service so reconnects skip reading the keystore file
+    private final KeyStoreCache keyStores = new KeyStoreCache(this::loadKeyStore);
+    // Restarted when the pipeline is brought up, so time spent before Start is pressed does not count
+    private final StartupTimer startupTimer = new StartupTimer();
+    private volatile ConnectionManager connection;
+    private volatile BatchingPublisher publisher;
+    private volatile OfflineQueue offlineQueue;
+    private volatile TimeSeriesStore history;
+    private volatile MqttTransport backlogTransport;
+    private volatile MqttTransport selfTransport;
+    // Recorded from every pipeline thread; cheap enough to leave on
+    private final SelfMetrics selfMetrics = new SelfMetrics();
+    // Only used on the collector thread
+    private BacklogUploader backlogUploader;
+    private SelfMetrics.Report lastSelfReport;
+    private AsyncLogger logger;
+
+    // Only used on the main thread
+    private final SimpleDateFormat statusTimeFormat = new SimpleDateFormat("HH:mm:ss", Locale.US);
+    private boolean collecting;
+    private MetricsSnapshot lastSnapshot;
+    private String lastStatus = "Status: Ready";
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        logger = new AsyncLogger(new File(getExternalFilesDir(null), "logs"), LOG_BUFFER_CAPACITY,
+                LOG_MAX_FILE_BYTES, LOG_MAX_TOTAL_BYTES, AsyncLogger.BackpressurePolicy.DROP);
+        logger.setSelfMetrics(selfMetrics);
+        registerSelfGauges();
+
+        // Sampling and publishing run on the collector thread; only snapshots reach the main thread
+        metricsCollector = new MetricsCollector(Arrays.asList(
+                new CpuUsageSource(
+                        HIGH_FREQUENCY_MODE ? HIGH_FREQUENCY_INTERVAL_MS : PipelineDefaults.CPU_INTERVAL_MS),
+                new MemorySource(this, PipelineDefaults.MEMORY_INTERVAL_MS),
+                new NetworkSource(
+                        HIGH_FREQUENCY_MODE ? HIGH_FREQUENCY_INTERVAL_MS : PipelineDefaults.NETWORK_INTERVAL_MS,
+                        NETWORK_RATE_SMOOTHING_MS),
+                new StorageSource(PipelineDefaults.STORAGE_INTERVAL_MS),
+                new BatteryTemperatureSource(batteryState,
+                        HIGH_FREQUENCY_MODE ? HIGH_FREQUENCY_INTERVAL_MS : PipelineDefaults.BATTERY_TEMP_INTERVAL_MS),
+                new BatteryLevelSource(batteryState, PipelineDefaults.BATTERY_LEVEL_INTERVAL_MS)));
+        batteryReceiver.register(this);
+        linkMonitor.register(this);
+        if (HIGH_FREQUENCY_MODE) {
+            metricsCollector.setAggregationWindow(AGGREGATION_WINDOW_MS);
+        }
+        metricsCollector.addSink(this::recordHistory);
+        metricsCollector.addSink(this::sendDataToAWS);
+        metricsCollector.addSink(this::adaptSampling);
+        metricsCollector.addSink(snapshot -> uploadBacklog());
+        metricsCollector.addSink(this::publishSelfReport);
+        metricsCollector.setSelfMetrics(selfMetrics);
+        metricsCollector.setListener(new MetricsCollector.Listener() {
+            @Override
+            public void onSnapshot(MetricsSnapshot snapshot) {
+                lastSnapshot = snapshot;
+                for (Observer observer : observers) {
+                    observer.onSnapshot(snapshot);
+                }
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.e(TAG, "Error collecting metrics", e);
+                postStatus("Error collecting metrics: " + e.getMessage());
+            }
+        }, mainHandler::post);
+
+        // Open the offline queue off the main thread; it may have to recover after a crash
+        metricsCollector.execute(this::openOfflineQueue);
+        metricsCollector.execute(this::openHistory);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        // A null intent is a restart by the system after the process was killed while collecting
+        if (intent == null || ACTION_START.equals(intent.getAction())) {
+            startCollection();
+        }
+        return collecting ? START_STICKY : START_NOT_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    /** Registers {@code observer} and replays the latest snapshot and status to it. */
+    public void addObserver(Observer observer) {
+        observers.add(observer);
+        observer.onCollectingChanged(collecting);
+        observer.onStatus(lastStatus);
+        if (lastSnapshot != null) {
+            observer.onSnapshot(lastSnapshot);
+        }
+    }
+
+    public void removeObserver(Observer observer) {
+        observers.remove(observer);
+    }
+
+    public boolean isCollecting() {
+        return collecting;
+    }
+
+    /**
+     * Returns the stored values of {@code metric} between two times, e.g. to show a
+     * trend offline or backfill a gap in the twin. Empty until the history is open.
+     */
+    public TimeSeriesStore.Series queryHistory(Metric metric, long fromMillis, long toMillis,
+                                               TimeSeriesStore.Resolution resolution) {
+        TimeSeriesStore store = history;
+        return store != null
+                ? store.query(metric, fromMillis, toMillis, resolution)
+                : TimeSeriesStore.Series.empty();
+    }
+
+    /** The pipeline's own latencies and counters, e.g. for the debug screen. */
+    public SelfMetrics getSelfMetrics() {
+        return selfMetrics;
+    }
+
+    private void startCollection() {
+        if (collecting) {
+            return;
+        }
+        try {
+            startForegroundCompat();
+        } catch (RuntimeException e) {
+            // Android 12+ refuses foreground starts from the background, e.g. on a sticky restart
+            Log.e(TAG, "Cannot start in the foreground", e);
+            logToFile("Cannot start in the foreground: " + e.getMessage());
+            stopSelf();
+            return;
+        }
+        setCollecting(true);
+        postStatus("Collecting data...");
+        logToFile("Data collection started");
+
+        if (mqttManager == null) {
+            initializeAwsIot();
+        }
+        // Start tracking metrics; each source is read at its own interval
+        metricsCollector.start();
+    }
+
+    /** Stops sampling, flushes what is batched and lets the service end once unbound. */
+    public void stopCollection() {
+        if (!collecting) {
+            return;
+        }
+        setCollecting(false);
+        postStatus("Monitoring stopped");
+        logToFile("Data collection stopped");
+
+        metricsCollector.stop();
+        metricsCollector.execute(() -> {
+            BatchingPublisher p = publisher;
+            if (p != null) {
+                p.flush();
+            }
+        });
+        stopForeground(true);
+        stopSelf();
+    }
+
+    private void setCollecting(boolean collecting) {
+        this.collecting = collecting;
+        for (Observer observer : observers) {
+            observer.onCollectingChanged(collecting);
+        }
+    }
+
+    /** Android 15 limits dataSync services to six hours a day. */
+    @Override
+    public void onTimeout(int startId, int fgsType) {
+        logToFile("Foreground service time limit reached");
+        stopCollection();
+    }
+
+    private void startForegroundCompat() {
+        NotificationManager notifications = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            notifications.createNotificationChannel(new NotificationChannel(NOTIFICATION_CHANNEL_ID,
+                    getString(R.string.telemetry_channel_name), NotificationManager.IMPORTANCE_LOW));
+        }
+        PendingIntent openApp = PendingIntent.getActivity(this, 0,
+                new Intent(this, MainActivity.class), PendingIntent.FLAG_IMMUTABLE);
+        Notification notification = new NotificationCompat.Builder(this, NOTIFICATION_CHANNEL_ID)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(getString(R.string.telemetry_notification_title))
+                .setContentIntent(openApp)
+                .setOngoing(true)
+                .build();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            startForeground(NOTIFICATION_ID, notification, ServiceInfo.FOREGROUND_SERVICE_TYPE_DATA_SYNC);
+        } else {
+            startForeground(NOTIFICATION_ID, notification);
+        }
+    }
+
+    /** Returns this installation's MQTT client id, creating it on first use. */
+    private static String stableClientId(Context context) {
+        SharedPreferences preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        String clientId = preferences.getString(PREF_CLIENT_ID, null);
+        if (clientId == null) {
+            clientId = UUID.randomUUID().toString();
+            preferences.edit().putString(PREF_CLIENT_ID, clientId).apply();
+        }
+        return clientId;
+    }
+
+    private void initializeAwsIot() {
+        startupTimer.restart();
+        postStatus("Initializing AWS IoT...");
+
+        try {
+            // Initialize the AWSIotMqttManager with the client endpoint and client ID
+            mqttManager = new AWSIotMqttManager(stableClientId(this), CUSTOMER_SPECIFIC_ENDPOINT);
+
+            // Set keep alive to 30 seconds
+            mqttManager.setKeepAlive(30);
+
+            // Samples are published in batches; anything that cannot be sent is saved locally
+            PayloadFormat format = USE_BINARY_PAYLOAD
+                    ? new BinaryPayloadFormat(Build.MODEL)
+                    : new JsonPayloadFormat(Build.MODEL);
+            BatchingPublisher p = new BatchingPublisher(
+                    new AwsIotMqttTransport(mqttManager, AWSIotMqttQos.QOS0, this::isIotConnected),
+                    PipelineDefaults.DATA_TOPIC, format, PipelineDefaults.BATCH_MAX_SAMPLES,
+                    PipelineDefaults.BATCH_MAX_BYTES, PipelineDefaults.BATCH_MAX_LATENCY_MS);
+            p.setUndeliveredHandler(this::saveDataLocally);
+            p.setSelfMetrics(selfMetrics);
+            publisher = p;
+            // Backlog chunks already failed once, so ask the broker to acknowledge them
+            backlogTransport = new AwsIotMqttTransport(mqttManager, AWSIotMqttQos.QOS1, this::isIotConnected);
+            selfTransport = new AwsIotMqttTransport(mqttManager, AWSIotMqttQos.QOS0, this::isIotConnected);
+
+            // Connect to AWS IoT; certificates are loaded on the connection thread
+            connectToIot();
+
+        } catch (Exception e) {
+            Log.e(TAG, "Error initializing AWS IoT", e);
+            postStatus("AWS IoT Init Error: " + e.getMessage());
+            logToFile("AWS IoT Init Error: " + e.getMessage());
+        }
+    }
+
+    private void connectToIot() {
+        // Retries with jittered backoff so a fleet that lost the broker together does not return together
+        ConnectionManager manager = new ConnectionManager(new AwsIotMqttConnector(mqttManager, keyStores),
+                new ExponentialBackoff(RECONNECT_BASE_MS, RECONNECT_MAX_MS), CONNECT_TIMEOUT_MS,
+                new ConnectionManager.Listener() {
+                    @Override
+                    public void onStateChanged(ConnectionManager.State state, Throwable cause) {
+                        Log.d(TAG, "IoT connection state: " + state);
+                        logToFile("IoT connection state: " + state
+                                + (cause != null ? " (" + cause.getMessage() + ")" : ""));
+
+                        switch (state) {
+                            case CONNECTING:
+                                postStatus("Connecting to AWS IoT...");
+                                break;
+                            case CONNECTED:
+                                postStatus("Connected to AWS IoT");
+                                break;
+                            case WAITING_TO_RETRY:
+                                postStatus(cause != null
+                                        ? "AWS IoT Connection Lost: " + cause.getMessage()
+                                        : "AWS IoT Connection Lost");
+                                break;
+                            default:
+                                break;
+                        }
+                    }
+
+                    @Override
+                    public void onConnected() {
+                        startupTimer.mark(StartupTimer.Phase.CONNECTED);
+                        logToFile("Connected: " + connection);
+                        // Send what is batched, start on the backlog saved while offline, then resync the twin
+                        metricsCollector.execute(() -> {
+                            BatchingPublisher p = publisher;
+                            if (p != null) {
+                                p.flush();
+                                recordFirstPublish(p);
+                            }
+                            uploadBacklog();
+                            deltaFilter.requestKeyframe();
+                        });
+                    }
+                });
+        connection = manager;
+        // Coming back online skips whatever is left of the backoff
+        linkMonitor.setOnRegained(manager::connectNow);
+        manager.start();
+    }
+
+    private boolean isIotConnected() {
+        ConnectionManager manager = connection;
+        return manager != null && manager.isConnected();
+    }
+
+    /** Shows {@code status} to observers; callable from any thread. */
+    private void postStatus(String status) {
+        mainHandler.post(() -> setStatus(status));
+    }
+
+    private void setStatus(String status) {
+        lastStatus = status;
+        for (Observer observer : observers) {
+            observer.onStatus(status);
+        }
+    }
+
+    private void sendDataToAWS(MetricsSnapshot sample) {
+        long timestamp = sample.getTimestampMillis();
+        BatchingPublisher p = publisher;
+
+        try {
+            // Queue for the next MQTT batch; the publisher saves locally if the batch cannot be sent
+            if (p != null) {
+                long sentBefore = p.getMessagesPublished();
+                // Drops metrics that have not changed and encodes the rest straight into the
+                // current batch buffer; a fully suppressed sample still flushes a batch that is due
+                MetricsSnapshot snapshot = p.publish(sample, deltaFilter);
+
+                if (p.getMessagesPublished() > sentBefore) {
+                    recordFirstPublish(p);
+                    Log.i(TAG, "Batch sent to AWS IoT: " + p + " " + deltaFilter);
+                    logToFile("Batch sent to AWS IoT: " + p + " " + deltaFilter);
+                    mainHandler.post(() -> setStatus("Data sent at: " + statusTimeFormat.format(new Date(timestamp))));
+                } else if (snapshot != null) {
+                    mainHandler.post(() -> setStatus("Data batched at: " + statusTimeFormat.format(new Date(timestamp))));
+                }
+            } else {
+                // No MQTT connection, save locally whatever changed
+                MetricsSnapshot snapshot = deltaFilter.filter(sample);
+                if (snapshot == null) {
+                    return;
+                }
+                saveDataLocally(snapshot);
+                logToFile("No IoT connection, saved locally");
+                postStatus("No IoT connection, saved locally");
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error sending data to AWS", e);
+            logToFile("Error sending data to AWS: " + e.getMessage());
+            postStatus("Error sending data: " + e.getMessage());
+
+            // Save the full sample locally; the filter may already count part of it as sent
+            saveDataLocally(sample);
+        }
+    }
+
+    /** Logs the startup timings once the first batch has gone out. */
+    private void recordFirstPublish(BatchingPublisher p) {
+        if (p.getMessagesPublished() > 0 && startupTimer.mark(StartupTimer.Phase.FIRST_PUBLISH)) {
+            Log.i(TAG, "First publish: " + startupTimer);
+            logToFile("First publish: " + startupTimer + ", keystore loaded in "
+                    + keyStores.getLastLoadMillis() + " ms");
+        }
+    }
+
+    /** Re-evaluates the sampling mode after each snapshot; runs on the collector thread. */
+    private void adaptSampling(MetricsSnapshot snapshot) {
+        DeviceConditions conditions = new DeviceConditions(batteryState.getLevelPercent(),
+                batteryState.isCharging(), batteryState.getTemperatureCelsius(), linkMonitor.getQuality());
+        adaptiveScheduler.update(conditions, snapshot.getTimestampMillis());
+    }
+
+    private void applySamplingMode(SamplingMode previous, SamplingMode mode, DeviceConditions conditions) {
+        metricsCollector.setIntervalScale(mode.getSamplingScale());
+        BatchingPublisher p = publisher;
+        if (p != null) {
+            p.setMaxLatencyMillis(Math.round(PipelineDefaults.BATCH_MAX_LATENCY_MS * mode.getFlushScale()));
+        }
+        logToFile("Sampling mode " + previous + " -> " + mode + " for " + conditions);
+    }
+
+    /**
+     * Append a sample to the offline queue. It is re-sent once the IoT connection is back.
+     */
+    private void saveDataLocally(MetricsSnapshot snapshot) {
+        try {
+            OfflineQueue queue = enqueue(snapshot);
+            postStatus("Data saved locally (" + queue.getPendingRecords() + " queued)");
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving data locally", e);
+            postStatus("Error saving locally: " + e.getMessage());
+        }
+    }
+
+    /** Appends {@code snapshot} to the offline queue, or throws if it was not stored. */
+    private OfflineQueue enqueue(MetricsSnapshot snapshot) throws IOException {
+        OfflineQueue queue = offlineQueue;
+        if (queue == null) {
+            selfMetrics.increment(SelfMetrics.Counter.LOCAL_SAVE_FAILURES);
+            throw new IOException("Offline queue not open");
+        }
+        try {
+            long start = System.nanoTime();
+            queueRecordBuffer.reset();
+            queueRecordFormat.beginBatch(queueRecordBuffer);
+            queueRecordFormat.appendRecord(snapshot, 0, queueRecordBuffer);
+            queueRecordFormat.endBatch(queueRecordBuffer);
+            queue.append(queueRecordBuffer.array(), 0, queueRecordBuffer.length());
+            selfMetrics.recordSince(SelfMetrics.Stage.ENQUEUE, start);
+            selfMetrics.increment(SelfMetrics.Counter.LOCAL_SAVES);
+            return queue;
+        } catch (IOException e) {
+            selfMetrics.increment(SelfMetrics.Counter.LOCAL_SAVE_FAILURES);
+            throw e;
+        }
+    }
+
+    private void openOfflineQueue() {
+        try {
+            offlineQueue = OfflineQueue.open(new File(getFilesDir(), "metrics_queue"),
+                    QUEUE_SEGMENT_BYTES, QUEUE_MAX_BYTES, OfflineQueue.FsyncPolicy.ON_ROLLOVER);
+            importLegacySamples();
+            logToFile("Offline queue opened: " + offlineQueue);
+            if (isIotConnected()) {
+                uploadBacklog();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error opening offline queue", e);
+            logToFile("Error opening offline queue: " + e.getMessage());
+        }
+    }
+
+    private void openHistory() {
+        try {
+            history = TimeSeriesStore.open(new File(getFilesDir(), "history"),
+                    HISTORY_RAW_ROWS, HISTORY_MINUTE_ROWS, HISTORY_HOUR_ROWS);
+            logToFile("History opened: " + history);
+        } catch (IOException e) {
+            Log.e(TAG, "Error opening history", e);
+            logToFile("Error opening history: " + e.getMessage());
+        }
+    }
+
+    /** Keeps every full sample, before delta filtering; runs on the collector thread. */
+    private void recordHistory(MetricsSnapshot snapshot) {
+        TimeSeriesStore store = history;
+        if (store == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        boolean kept = store.append(snapshot);
+        selfMetrics.recordSince(SelfMetrics.Stage.HISTORY, start);
+        if (!kept) {
+            Log.w(TAG, "Clock went backwards, sample not kept in history");
+        }
+    }
+
+    /** Values other parts of the pipeline already track, read only when a report is taken. */
+    private void registerSelfGauges() {
+        selfMetrics.addGauge("logDropped", () -> logger.getDroppedCount());
+        selfMetrics.addGauge("queuePending", () -> {
+            OfflineQueue queue = offlineQueue;
+            return queue != null ? queue.getPendingRecords() : 0;
+        });
+        selfMetrics.addGauge("connectAttempts", () -> {
+            ConnectionManager manager = connection;
+            return manager != null ? manager.getAttemptCount() : 0;
+        });
+        selfMetrics.addGauge("connectionLosses", () -> {
+            ConnectionManager manager = connection;
+            return manager != null ? manager.getLossCount() : 0;
+        });
+        selfMetrics.addGauge("historyRows", () -> {
+            TimeSeriesStore store = history;
+            return store != null ? store.getRowCount(TimeSeriesStore.Resolution.RAW) : 0;
+        });
+        selfMetrics.addGauge("heapUsedKb", () -> {
+            Runtime runtime = Runtime.getRuntime();
+            return (runtime.totalMemory() - runtime.freeMemory()) / 1024;
+        });
+        // Startup phases, -1 until reached, so slow starts show up in the field reports
+        startupTimer.addGauges(selfMetrics);
+        selfMetrics.addGauge("keystoreLoadMs", keyStores::getLastLoadMillis);
+    }
+
+    /**
+     * Publishes what the pipeline cost since the last report, at most every
+     * {@link #SELF_REPORT_INTERVAL_MS}. Runs on the collector thread after each
+     * snapshot; an interval that cannot be sent is folded into the next one.
+     */
+    private void publishSelfReport(MetricsSnapshot snapshot) {
+        long now = snapshot.getTimestampMillis();
+        if (lastSelfReport == null) {
+            lastSelfReport = selfMetrics.report(now);
+            return;
+        }
+        MqttTransport transport = selfTransport;
+        if (now - lastSelfReport.getTimestampMillis() < SELF_REPORT_INTERVAL_MS
+                || transport == null || !transport.isConnected()) {
+            return;
+        }
+        SelfMetrics.Report report = selfMetrics.report(now);
+        byte[] payload = report.minus(lastSelfReport).toJson(Build.MODEL).getBytes(StandardCharsets.UTF_8);
+        try {
+            transport.publish(SELF_TOPIC, payload, 0, payload.length);
+            lastSelfReport = report;
+        } catch (Exception e) {
+            Log.w(TAG, "Error publishing self metrics", e);
+        }
+    }
+
+    /**
+     * Move samples written by older versions as one JSON file each into the queue.
+     * A file is deleted only once its sample is in the queue; if appending fails the
+     * import stops and the remaining files are retried the next time the queue opens.
+     */
+    private void importLegacySamples() {
+        File directory = getExternalFilesDir("metrics_data");
+        File[] files = directory != null ? directory.listFiles((dir, name) ->
+                name.startsWith("metrics_") && name.endsWith(".json")) : null;
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        int imported = 0;
+        for (File file : files) {
+            try {
+                enqueue(parseJsonSample(new String(readFile(file), StandardCharsets.UTF_8)));
+                imported++;
+            } catch (JSONException e) {
+                // Can never be imported, so it is not worth keeping
+                Log.w(TAG, "Skipping unreadable legacy sample " + file.getName(), e);
+            } catch (IOException e) {
+                Log.e(TAG, "Error importing legacy samples", e);
+                logToFile("Legacy import stopped after " + imported + " samples: " + e.getMessage());
+                return;
+            }
+            if (!file.delete()) {
+                Log.w(TAG, "Cannot delete imported legacy sample " + file.getName());
+            }
+        }
+        logToFile("Imported " + imported + " of " + files.length + " legacy sample files into the offline queue");
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        try (FileInputStream in = new FileInputStream(file)) {
+            int read = 0;
+            while (read < data.length) {
+                int n = in.read(data, read, data.length - read);
+                if (n < 0) {
+                    throw new IOException("Unexpected end of " + file);
+                }
+                read += n;
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Send queued samples as compressed, rate-limited chunks while the connection holds.
+     * Runs on the collector thread after connecting and after every tick.
+     */
+    private void uploadBacklog() {
+        OfflineQueue queue = offlineQueue;
+        MqttTransport transport = backlogTransport;
+        if (queue == null || transport == null || queue.getPendingRecords() == 0) {
+            return;
+        }
+        if (backlogUploader == null) {
+            backlogUploader = new BacklogUploader(queue, transport, BACKLOG_TOPIC, BACKLOG_MAX_CHUNK_BYTES,
+                    BACKLOG_COMPRESSION_LEVEL, null,
+                    new TokenBucket(BACKLOG_BYTES_PER_SECOND, BACKLOG_MAX_CHUNK_BYTES));
+        }
+        try {
+            if (backlogUploader.upload(BACKLOG_CHUNKS_PER_CALL) > 0) {
+                logToFile("Backlog upload: " + backlogUploader + ", " + queue.getPendingRecords() + " left");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error uploading backlog", e);
+            logToFile("Error uploading backlog: " + e.getMessage());
+        }
+    }
+
+    /** Reads a legacy sample file; its "cpuUsage" was memory utilisation, see {@link LegacySampleFormat}. */
+    private static MetricsSnapshot parseJsonSample(String json) throws JSONException {
+        JSONObject payload = new JSONObject(json);
+        JSONObject metrics = payload.optJSONObject("metrics");
+        MetricsSnapshot.Builder builder = new MetricsSnapshot.Builder();
+        if (metrics != null) {
+            for (Iterator<String> keys = metrics.keys(); keys.hasNext(); ) {
+                String key = keys.next();
+                Metric metric = LegacySampleFormat.metricForKey(key);
+                if (metric != null) {
+                    builder.set(metric, metrics.getDouble(key));
+                }
+            }
+        }
+        return builder.build(payload.optLong("timestamp", System.currentTimeMillis()));
+    }
+
+    private void logToFile(String message) {
+        // Queued for the writer thread; never touches the file system on the caller's thread
+        if (logger != null) {
+            logger.log(message);
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        metricsCollector.stop();
+        batteryReceiver.unregister(this);
+        linkMonitor.unregister(this);
+        metricsCollector.execute(() -> {
+            BatchingPublisher p = publisher;
+            if (p != null) {
+                p.flush();
+            }
+            if (backlogUploader != null) {
+                backlogUploader.close();
+            }
+            TimeSeriesStore store = history;
+            history = null;
+            if (store != null) {
+                store.close();
+            }
+            try {
+                if (offlineQueue != null) {
+                    offlineQueue.close();
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Error closing offline queue", e);
+            }
+        });
+        metricsCollector.shutdown();
+        try {
+            // The flush above needs the connection and the logger, so let it finish first
+            if (!metricsCollector.awaitTermination(SHUTDOWN_FLUSH_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "Final flush still running after " + SHUTDOWN_FLUSH_TIMEOUT_MS + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Disconnect from AWS IoT and stop retrying
+        linkMonitor.setOnRegained(null);
+        if (connection != null) {
+            connection.shutdown();
+        }
+
+        logToFile("Telemetry service destroyed");
+        logger.close();
+    }
+
+    /**
+     * Load the client keystore, creating it from the PEM assets on first run.
+     * Runs on the connection thread through {@link KeyStoreCache}.
+     */
+    private KeyStore loadKeyStore() throws IOException {
+        String keystorePath = getFilesDir().getPath();
+        if (!AWSIotKeystoreHelper.isKeystorePresent(keystorePath, KEYSTORE_NAME)) {
+            // The helper takes the PEM text itself, so the assets are read straight into memory
+            AWSIotKeystoreHelper.saveCertificateAndPrivateKey(
+                    CERTIFICATE_ID,
+                    readAsset(CERTIFICATE_ASSET),
+                    readAsset(PRIVATE_KEY_ASSET),
+                    keystorePath,
+                    KEYSTORE_NAME,
+                    KEYSTORE_PASSWORD
+            );
+            logToFile("Successfully created keystore with certificates");
+        }
+        KeyStore keyStore = AWSIotKeystoreHelper.getIotKeystore(CERTIFICATE_ID,
+                keystorePath, KEYSTORE_NAME, KEYSTORE_PASSWORD);
+        startupTimer.mark(StartupTimer.Phase.CREDENTIALS_LOADED);
+        return keyStore;
+    }
+
+    private String readAsset(String assetFileName) throws IOException {
+        try (InputStream in = getAssets().open(assetFileName)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(in.available(), 1024));
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString(StandardCharsets.UTF_8.name());
+        }
+    }
+}
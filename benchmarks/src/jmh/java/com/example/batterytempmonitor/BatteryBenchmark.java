@@ -0,0 +1,99 @@
+package com.example.batterytempmonitor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-tick cost of the battery metrics. {@code legacyParsePerTick} reproduces the
+ * original sources: each asked for the sticky {@code ACTION_BATTERY_CHANGED} Intent,
+ * which hands back a fresh copy of its extras, and looked up the boxed ints it
+ * needed. The extras here are the ones a current phone sends. {@code cacheRead} is
+ * the same tick served from {@link BatteryStateCache}, and {@code cacheUpdate} is
+ * what {@code BatteryReceiver} now pays once per broadcast instead.
+ *
+ * <p>The Binder round trip behind {@code registerReceiver} is not modelled, so the
+ * legacy figure is a lower bound.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BatteryBenchmark {
+    private static final String EXTRA_LEVEL = "level";
+    private static final String EXTRA_SCALE = "scale";
+    private static final String EXTRA_TEMPERATURE = "temperature";
+
+    private final Map<String, Object> stickyExtras = new HashMap<>();
+    private final MetricsSnapshot.Builder tick = new MetricsSnapshot.Builder();
+    private final BatteryStateCache cache = new BatteryStateCache();
+    private BatteryTemperatureSource temperatureSource;
+    private BatteryLevelSource levelSource;
+    private int temperatureTenths = 312;
+
+    @Setup
+    public void setUp() {
+        stickyExtras.put("status", 3);
+        stickyExtras.put("health", 2);
+        stickyExtras.put("present", Boolean.TRUE);
+        stickyExtras.put(EXTRA_LEVEL, 64);
+        stickyExtras.put(EXTRA_SCALE, 100);
+        stickyExtras.put("icon-small", 0x7f080123);
+        stickyExtras.put("plugged", 0);
+        stickyExtras.put("voltage", 3871);
+        stickyExtras.put(EXTRA_TEMPERATURE, 312);
+        stickyExtras.put("technology", "Li-ion");
+        stickyExtras.put("invalid_charger", 0);
+        stickyExtras.put("battery_low", Boolean.FALSE);
+        stickyExtras.put("seq", 4812);
+        stickyExtras.put("charge_counter", 2_904_000);
+        stickyExtras.put("max_charging_current", 0);
+        stickyExtras.put("max_charging_voltage", 0);
+        stickyExtras.put("cycle_count", 211);
+
+        cache.update(312, 64, 100, false);
+        temperatureSource = new BatteryTemperatureSource(cache, 5000);
+        levelSource = new BatteryLevelSource(cache, 30000);
+    }
+
+    @Benchmark
+    public MetricsSnapshot.Builder legacyParsePerTick() {
+        tick.clearSampled();
+        Map<String, Object> levelIntent = new HashMap<>(stickyExtras);
+        int raw = getIntExtra(levelIntent, EXTRA_LEVEL, -1);
+        int scale = getIntExtra(levelIntent, EXTRA_SCALE, -1);
+        if (raw != -1 && scale != -1) {
+            tick.set(Metric.BATTERY_LEVEL, raw * 100 / (float) scale);
+        }
+        Map<String, Object> temperatureIntent = new HashMap<>(stickyExtras);
+        tick.set(Metric.BATTERY_TEMP, getIntExtra(temperatureIntent, EXTRA_TEMPERATURE, 0) / 10.0f);
+        return tick;
+    }
+
+    @Benchmark
+    public MetricsSnapshot.Builder cacheRead() {
+        tick.clearSampled();
+        levelSource.sample(tick);
+        temperatureSource.sample(tick);
+        return tick;
+    }
+
+    @Benchmark
+    public double cacheUpdate() {
+        temperatureTenths = temperatureTenths == 312 ? 313 : 312;
+        cache.update(temperatureTenths, 64, 100, false);
+        return cache.getTemperatureCelsius();
+    }
+
+    private static int getIntExtra(Map<String, Object> extras, String name, int defaultValue) {
+        Object value = extras.get(name);
+        return value instanceof Integer ? (Integer) value : defaultValue;
+    }
+}
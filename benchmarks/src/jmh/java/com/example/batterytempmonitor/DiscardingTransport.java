@@ -0,0 +1,18 @@
+package com.example.batterytempmonitor;
+
+/** Always connected; drops every message so that only the caller's cost is measured. */
+final class DiscardingTransport implements MqttTransport {
+    long messages;
+    long bytes;
+
+    @Override
+    public boolean isConnected() {
+        return true;
+    }
+
+    @Override
+    public void publish(String topic, byte[] payload, int offset, int length) {
+        messages++;
+        bytes += length;
+    }
+}
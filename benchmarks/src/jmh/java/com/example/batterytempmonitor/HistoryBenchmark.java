@@ -0,0 +1,81 @@
+package com.example.batterytempmonitor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the on-device {@link TimeSeriesStore} with the service's ring
+ * sizes: appending one sample, including its minute and hour rollups, and reading
+ * a day of one metric at minute resolution for a chart.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HistoryBenchmark {
+    private static final int RAW_ROWS = 24 * 60 * 12;
+    private static final int MINUTE_ROWS = 7 * 24 * 60;
+    private static final int HOUR_ROWS = 365 * 24;
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+
+    private MetricsSnapshot[] trace;
+    private final MetricsSnapshot.Builder builder = new MetricsSnapshot.Builder();
+    private int next;
+    private long timestamp;
+
+    private File directory;
+    private TimeSeriesStore store;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        trace = Samples.trace(RAW_ROWS, 4);
+        directory = Files.createTempDirectory("history").toFile();
+        store = TimeSeriesStore.open(directory, RAW_ROWS, MINUTE_ROWS, HOUR_ROWS);
+        // A full day, so queries and the rings behave as they do after a day of uptime
+        for (MetricsSnapshot sample : trace) {
+            store.append(sample);
+        }
+        timestamp = trace[trace.length - 1].getTimestampMillis();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        store.close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public boolean append() {
+        MetricsSnapshot sample = trace[next];
+        next = (next + 1) % trace.length;
+        timestamp += Samples.INTERVAL_MS;
+        for (Metric metric : Metric.ALL) {
+            if (sample.has(metric)) {
+                builder.set(metric, sample.get(metric));
+            }
+        }
+        return store.append(builder.build(timestamp));
+    }
+
+    @Benchmark
+    public TimeSeriesStore.Series queryDayOfMinutes() {
+        return store.query(Metric.CPU_USAGE, timestamp - DAY_MS, timestamp, TimeSeriesStore.Resolution.MINUTE);
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.batterytempmonitor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of saving one undelivered sample, as {@code saveDataLocally} does.
+ *
+ * {@link #legacyFilePerSample} writes one JSON file per sample like the original
+ * app; {@link #offlineQueueAppend} encodes a binary frame and appends it to the
+ * {@link OfflineQueue} without fsync and with the fsync on segment rollover the
+ * service uses.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LocalSaveBenchmark {
+    private static final int TRACE_LENGTH = 1024;
+
+    private MetricsSnapshot[] trace;
+    private int next;
+    private long fileCounter;
+
+    private final BinaryPayloadFormat format = new BinaryPayloadFormat(Samples.DEVICE_ID);
+    private final JsonPayloadFormat jsonFormat = new JsonPayloadFormat(Samples.DEVICE_ID);
+    private final PayloadBuffer buffer = new PayloadBuffer(256);
+    private File directory;
+    private OfflineQueue queue;
+    private OfflineQueue syncedQueue;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        trace = Samples.trace(TRACE_LENGTH, 2);
+        directory = Files.createTempDirectory("local-save").toFile();
+        // Same limits as the service; the oldest segments are dropped once 16 MB is queued
+        queue = OfflineQueue.open(new File(directory, "queue"), 256 * 1024, 16 * 1024 * 1024,
+                OfflineQueue.FsyncPolicy.NEVER);
+        syncedQueue = OfflineQueue.open(new File(directory, "synced"), 256 * 1024, 16 * 1024 * 1024,
+                OfflineQueue.FsyncPolicy.ON_ROLLOVER);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        queue.close();
+        syncedQueue.close();
+        deleteRecursively(directory);
+    }
+
+    private MetricsSnapshot nextSample() {
+        MetricsSnapshot sample = trace[next];
+        next = (next + 1) & (TRACE_LENGTH - 1);
+        return sample;
+    }
+
+    @Benchmark
+    public File legacyFilePerSample() throws IOException {
+        buffer.reset();
+        jsonFormat.beginBatch(buffer);
+        jsonFormat.appendRecord(nextSample(), 0, buffer);
+        jsonFormat.endBatch(buffer);
+        String data = new String(buffer.array(), 0, buffer.length(), StandardCharsets.UTF_8);
+
+        File legacyDirectory = new File(directory, "metrics_data");
+        if (!legacyDirectory.exists()) {
+            legacyDirectory.mkdirs();
+        }
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US);
+        // The original named files by the second; a counter keeps every sample
+        String filename = "metrics_" + sdf.format(new Date()) + "_" + fileCounter++ + ".json";
+        File file = new File(legacyDirectory, filename);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            writer.write(data);
+        }
+        return file;
+    }
+
+    @Benchmark
+    public long offlineQueueAppend() throws IOException {
+        return append(queue);
+    }
+
+    @Benchmark
+    public long offlineQueueAppendFsyncOnRollover() throws IOException {
+        return append(syncedQueue);
+    }
+
+    private long append(OfflineQueue target) throws IOException {
+        buffer.reset();
+        format.beginBatch(buffer);
+        format.appendRecord(nextSample(), 0, buffer);
+        format.endBatch(buffer);
+        target.append(buffer.array(), 0, buffer.length());
+        return target.getPendingRecords();
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.batterytempmonitor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one {@code logToFile} line.
+ *
+ * {@link #legacyLogToFile} formats the line and opens, appends to and closes the
+ * day's file on the calling thread, as the original app did. {@link #asyncLogger}
+ * hands the message to {@link AsyncLogger} with the blocking policy, so once the
+ * ring is full each call also pays for the writer thread keeping up; the result
+ * is the sustained rate rather than just the enqueue.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LoggingBenchmark {
+    private static final String MESSAGE = "Batch sent to AWS IoT: BatchingPublisher{messages=1832, samples=21984, "
+            + "bytes=5306112, undelivered=0, pending=0} DeltaFilter{offered=241824, sent=98211}";
+
+    private File directory;
+    private AsyncLogger logger;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("logging").toFile();
+        logger = new AsyncLogger(new File(directory, "logs"), 1024, 1024 * 1024, 8 * 1024 * 1024,
+                AsyncLogger.BackpressurePolicy.BLOCK);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        logger.close();
+        File[] files = new File(directory, "logs").listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        new File(directory, "logs").delete();
+        directory.delete();
+    }
+
+    @Benchmark
+    public void legacyLogToFile() throws IOException {
+        File logDir = new File(directory, "logs");
+        if (!logDir.exists()) {
+            logDir.mkdirs();
+        }
+        SimpleDateFormat dateSdf = new SimpleDateFormat("yyyyMMdd", Locale.US);
+        File logFile = new File(logDir, "log_" + dateSdf.format(new Date()) + ".txt");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(logFile, true))) {
+            SimpleDateFormat timeSdf = new SimpleDateFormat("HH:mm:ss", Locale.US);
+            writer.write("[" + timeSdf.format(new Date()) + "] " + MESSAGE + "\n");
+        }
+    }
+
+    @Benchmark
+    public boolean asyncLogger() {
+        return logger.log(MESSAGE);
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.batterytempmonitor;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning one sample into MQTT payload bytes, as {@code sendDataToAWS} does.
+ *
+ * {@link #legacyJsonObject} rebuilds the payload the way the app originally did,
+ * with {@link JSONObject} and a new {@link SimpleDateFormat} per sample; the other
+ * benchmarks encode with the formats used today.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PayloadEncodingBenchmark {
+    private static final int TRACE_LENGTH = 1024;
+
+    private MetricsSnapshot[] trace;
+    private int next;
+
+    private final JsonPayloadFormat jsonFormat = new JsonPayloadFormat(Samples.DEVICE_ID);
+    private final BinaryPayloadFormat binaryFormat = new BinaryPayloadFormat(Samples.DEVICE_ID);
+    private final PayloadBuffer buffer = new PayloadBuffer(4096);
+    private BatchingPublisher publisher;
+
+    @Setup
+    public void setUp() {
+        trace = Samples.trace(TRACE_LENGTH, 1);
+        // Batches as in the service, sent to a transport that discards them
+        publisher = new BatchingPublisher(new DiscardingTransport(), "device/metrics/data",
+                new JsonPayloadFormat(Samples.DEVICE_ID), 12, 32 * 1024, Long.MAX_VALUE);
+    }
+
+    private MetricsSnapshot nextSample() {
+        MetricsSnapshot sample = trace[next];
+        next = (next + 1) & (TRACE_LENGTH - 1);
+        return sample;
+    }
+
+    @Benchmark
+    public byte[] legacyJsonObject() throws JSONException {
+        MetricsSnapshot sample = nextSample();
+        JSONObject payload = new JSONObject();
+        payload.put("deviceId", Samples.DEVICE_ID);
+        payload.put("timestamp", sample.getTimestampMillis());
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+        payload.put("datetimeISO", sdf.format(new Date(sample.getTimestampMillis())));
+        JSONObject metrics = new JSONObject();
+        for (Metric metric : Metric.ALL) {
+            if (sample.has(metric)) {
+                metrics.put(metric.getKey(), sample.get(metric));
+            }
+        }
+        payload.put("metrics", metrics);
+        return payload.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public int jsonFormat() {
+        return encode(jsonFormat);
+    }
+
+    @Benchmark
+    public int binaryFormat() {
+        return encode(binaryFormat);
+    }
+
+    /** One sample added to the current batch, including its share of each flush. */
+    @Benchmark
+    public long batchingPublisher() {
+        publisher.publish(nextSample());
+        return publisher.getPendingCount();
+    }
+
+    private int encode(PayloadFormat format) {
+        buffer.reset();
+        format.beginBatch(buffer);
+        format.appendRecord(nextSample(), 0, buffer);
+        format.endBatch(buffer);
+        return buffer.length();
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.batterytempmonitor;
+
+import java.util.Random;
+
+/** Snapshots shaped like a phone's 5 s samples, shared by the benchmarks. */
+final class Samples {
+    static final String DEVICE_ID = "Pixel 7";
+    static final long INTERVAL_MS = 5000;
+    static final long START_MILLIS = 1_741_910_400_012L;
+
+    private Samples() {
+    }
+
+    /** {@code count} consecutive samples; the same seed always gives the same trace. */
+    static MetricsSnapshot[] trace(int count, long seed) {
+        Random random = new Random(seed);
+        MetricsSnapshot[] samples = new MetricsSnapshot[count];
+        double batteryLevel = 86;
+        double batteryTemp = 29.4;
+        for (int i = 0; i < count; i++) {
+            // Idle most of the time, with a busy spell every few minutes
+            boolean busy = i % 60 >= 45;
+            batteryLevel = Math.max(5, batteryLevel - (busy ? 0.05 : 0.01));
+            batteryTemp += (busy ? 0.05 : -0.02) + random.nextGaussian() * 0.02;
+            MetricsSnapshot.Builder builder = new MetricsSnapshot.Builder()
+                    .set(Metric.CPU_USAGE, round((busy ? 55 : 6) + random.nextDouble() * 10, 2))
+                    .set(Metric.CPU_MAX_CORE_USAGE, round((busy ? 90 : 20) + random.nextDouble() * 10, 2))
+                    .set(Metric.MEMORY_USAGE, round(61 + random.nextDouble(), 2))
+                    .set(Metric.RX_RATE, busy ? round(200 + random.nextDouble() * 150, 1) : 0)
+                    .set(Metric.TX_RATE, busy ? round(120 + random.nextDouble() * 80, 1) : 0)
+                    .set(Metric.APP_RX_RATE, 0)
+                    .set(Metric.APP_TX_RATE, busy ? 0.4 : 0)
+                    .set(Metric.STORAGE_AVAILABLE, 21_474_836_480L - i * 4096L)
+                    .set(Metric.STORAGE_TOTAL, 128_000_000_000L)
+                    .set(Metric.BATTERY_TEMP, round(batteryTemp, 1))
+                    .set(Metric.BATTERY_LEVEL, round(batteryLevel, 1));
+            samples[i] = builder.build(START_MILLIS + i * INTERVAL_MS);
+        }
+        return samples;
+    }
+
+    private static double round(double value, int decimals) {
+        double scale = Math.pow(10, decimals);
+        return Math.round(value * scale) / scale;
+    }
+}
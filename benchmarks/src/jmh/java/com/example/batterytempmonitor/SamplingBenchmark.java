@@ -0,0 +1,99 @@
+package com.example.batterytempmonitor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the work done on each collector tick apart from the platform calls:
+ * parsing {@code /proc/stat} for an eight-core phone, a full {@link CpuSampler}
+ * read of such a file, and folding 30 ticks into one window with
+ * {@link WindowAggregator} in high-frequency mode.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SamplingBenchmark {
+    private static final int CORES = 8;
+    private static final int WINDOW_TICKS = 30;
+
+    private byte[] procStat;
+    private final ProcStatParser parser = new ProcStatParser(CORES);
+    private File procStatFile;
+    private CpuSampler sampler;
+
+    private MetricsSnapshot[] trace;
+    private final MetricsSnapshot.Builder tick = new MetricsSnapshot.Builder();
+    private WindowAggregator aggregator;
+    private long windowStart = Samples.START_MILLIS;
+
+    @Setup
+    public void setUp() throws IOException {
+        procStat = procStat(CORES).getBytes(StandardCharsets.US_ASCII);
+        procStatFile = File.createTempFile("stat", null);
+        Files.write(procStatFile.toPath(), procStat);
+        sampler = new CpuSampler(procStatFile);
+        sampler.sample();
+
+        trace = Samples.trace(WINDOW_TICKS, 3);
+        aggregator = new WindowAggregator(WINDOW_TICKS);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        sampler.close();
+        procStatFile.delete();
+    }
+
+    @Benchmark
+    public boolean parseProcStat() {
+        return parser.parse(procStat, procStat.length);
+    }
+
+    @Benchmark
+    public double cpuSamplerRead() throws IOException {
+        sampler.sample();
+        return sampler.getUsage();
+    }
+
+    @Benchmark
+    public MetricsSnapshot aggregateWindow() {
+        for (MetricsSnapshot sample : trace) {
+            tick.clearSampled();
+            for (Metric metric : Metric.ALL) {
+                if (sample.has(metric)) {
+                    tick.set(metric, sample.get(metric));
+                }
+            }
+            aggregator.addSampled(tick);
+        }
+        windowStart += WINDOW_TICKS * 1000L;
+        return aggregator.closeWindow(windowStart, WINDOW_TICKS * 1000L);
+    }
+
+    /** A {@code /proc/stat} as a phone shows it: cpu lines followed by the other counters. */
+    static String procStat(int cores) {
+        StringBuilder text = new StringBuilder();
+        text.append("cpu  10132153 290696 3084719 46828483 16683 0 25195 0 175628 0\n");
+        for (int core = 0; core < cores; core++) {
+            text.append("cpu").append(core).append(' ')
+                    .append(1393280 + core * 7919).append(" 32966 ").append(572056 + core * 104729)
+                    .append(' ').append(13343292 - core * 15485).append(" 6130 0 17875 0 23933 0\n");
+        }
+        text.append("intr 1166542716 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0\n");
+        text.append("ctxt 1957403628\nbtime 1741900000\nprocesses 3166420\nprocs_running 2\n");
+        text.append("procs_blocked 0\nsoftirq 417302470 4 121932046 3 2156931 4 0 8 97066553 0 196146921\n");
+        return text.toString();
+    }
+}
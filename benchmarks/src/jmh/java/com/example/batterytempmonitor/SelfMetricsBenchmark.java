@@ -0,0 +1,36 @@
+package com.example.batterytempmonitor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of the always-on {@link SelfMetrics} instrumentation: timing one stage
+ * and bumping one counter, from one thread and from four threads sharing the
+ * registry as the collector, MQTT and log writer threads do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SelfMetricsBenchmark {
+    private final SelfMetrics metrics = new SelfMetrics();
+
+    @Benchmark
+    public void recordStage() {
+        long start = System.nanoTime();
+        metrics.recordSince(SelfMetrics.Stage.ENCODE, start);
+        metrics.increment(SelfMetrics.Counter.TICKS);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordStageContended() {
+        recordStage();
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.batterytempmonitor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Cost of getting the client keystore on a reconnect. {@link #uncachedLoad}
+ * decrypts a password-protected PKCS#12 store on every call, as each connect did
+ * before {@link KeyStoreCache}; {@link #cachedGet} is what a reconnect pays now.
+ * The JVM's PKCS#12 stands in for the BKS store the AWS helper writes on Android.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StartupBenchmark {
+    private static final char[] PASSWORD = "password".toCharArray();
+
+    private byte[] keyStoreBytes;
+    private KeyStoreCache cache;
+
+    @Setup
+    public void setUp() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, PASSWORD);
+        keyStore.setEntry("default", new KeyStore.SecretKeyEntry(new SecretKeySpec(new byte[32], "AES")),
+                new KeyStore.PasswordProtection(PASSWORD));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        keyStore.store(out, PASSWORD);
+        keyStoreBytes = out.toByteArray();
+
+        cache = new KeyStoreCache(this::load);
+        cache.get();
+    }
+
+    private KeyStore load() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(new ByteArrayInputStream(keyStoreBytes), PASSWORD);
+        // Unlocking the key is part of every TLS handshake setup
+        keyStore.getKey("default", PASSWORD);
+        return keyStore;
+    }
+
+    @Benchmark
+    public KeyStore uncachedLoad() throws Exception {
+        return load();
+    }
+
+    @Benchmark
+    public KeyStore cachedGet() throws Exception {
+        return cache.get();
+    }
+}
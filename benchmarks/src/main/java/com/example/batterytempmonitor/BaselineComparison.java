@@ -0,0 +1,117 @@
+package com.example.batterytempmonitor;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compares two JMH JSON result files benchmark by benchmark: time per operation
+ * and bytes allocated per operation. Exits with status 1 if any benchmark got
+ * slower by more than the allowed percentage, or allocates more than before.
+ *
+ * Usage: {@code BaselineComparison <baseline.json> <results.json> [maxRegressionPercent]}
+ */
+public final class BaselineComparison {
+    private static final String ALLOCATION = "gc.alloc.rate.norm";
+    // Allocation is deterministic up to a few bytes of JMH bookkeeping
+    private static final double ALLOCATION_SLACK_BYTES = 8;
+
+    private BaselineComparison() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineComparison <baseline.json> <results.json> [maxRegressionPercent]");
+            System.exit(2);
+        }
+        if (!Files.exists(Paths.get(args[0]))) {
+            System.err.println("No baseline at " + args[0] + "; run updateBaseline after a benchmark run to create one");
+            System.exit(2);
+        }
+        Map<String, JSONObject> baseline = load(args[0]);
+        Map<String, JSONObject> results = load(args[1]);
+        double maxRegression = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+
+        System.out.println(String.format(Locale.US, "%-60s %12s %12s %8s %10s %10s",
+                "benchmark", "baseline", "now", "change", "B/op was", "B/op now"));
+        int regressions = 0;
+        for (Map.Entry<String, JSONObject> entry : results.entrySet()) {
+            JSONObject now = entry.getValue();
+            JSONObject was = baseline.get(entry.getKey());
+            String unit = now.getJSONObject("primaryMetric").getString("scoreUnit");
+            double score = score(now);
+            double allocation = allocation(now);
+            if (was == null) {
+                System.out.println(String.format(Locale.US, "%-60s %12s %12.3f %8s %10s %10.0f  (new, %s)",
+                        entry.getKey(), "-", score, "-", "-", allocation, unit));
+                continue;
+            }
+            double wasScore = score(was);
+            double wasAllocation = allocation(was);
+            double change = (score - wasScore) / wasScore * 100;
+            // Throughput modes report ops per time, where lower is worse
+            if (now.getString("mode").equals("thrpt")) {
+                change = -change;
+            }
+            boolean slower = change > maxRegression;
+            boolean allocatesMore = allocation > wasAllocation + ALLOCATION_SLACK_BYTES;
+            if (slower || allocatesMore) {
+                regressions++;
+            }
+            System.out.println(String.format(Locale.US, "%-60s %12.3f %12.3f %+7.1f%% %10.0f %10.0f  %s%s",
+                    entry.getKey(), wasScore, score, change, wasAllocation, allocation, unit,
+                    slower || allocatesMore ? "  REGRESSION" : ""));
+        }
+        for (String name : baseline.keySet()) {
+            if (!results.containsKey(name)) {
+                System.out.println(String.format(Locale.US, "%-60s (not run)", name));
+            }
+        }
+        if (regressions > 0) {
+            System.out.println(regressions + " benchmark(s) regressed beyond " + maxRegression
+                    + "% or allocate more than the baseline");
+            System.exit(1);
+        }
+    }
+
+    /** Results keyed by benchmark name plus parameters, in file order. */
+    private static Map<String, JSONObject> load(String path) throws IOException {
+        String json = new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+        JSONArray runs = new JSONArray(json);
+        Map<String, JSONObject> byName = new LinkedHashMap<>();
+        for (int i = 0; i < runs.length(); i++) {
+            JSONObject run = runs.getJSONObject(i);
+            String name = run.getString("benchmark").replace("com.example.batterytempmonitor.", "");
+            JSONObject params = run.optJSONObject("params");
+            if (params != null) {
+                StringBuilder key = new StringBuilder(name);
+                for (String param : params.keySet()) {
+                    key.append(':').append(param).append('=').append(params.get(param));
+                }
+                name = key.toString();
+            }
+            byName.put(name, run);
+        }
+        return byName;
+    }
+
+    private static double score(JSONObject run) {
+        return run.getJSONObject("primaryMetric").getDouble("score");
+    }
+
+    /** Bytes allocated per operation, or NaN if the run was made without the gc profiler. */
+    private static double allocation(JSONObject run) {
+        JSONObject secondary = run.optJSONObject("secondaryMetrics");
+        if (secondary == null || !secondary.has(ALLOCATION)) {
+            return Double.NaN;
+        }
+        return secondary.getJSONObject(ALLOCATION).getDouble("score");
+    }
+}
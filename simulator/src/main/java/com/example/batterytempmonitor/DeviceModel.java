@@ -0,0 +1,179 @@
+package com.example.batterytempmonitor;
+
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+/**
+ * Synthetic phone whose metrics follow plausible dynamics rather than noise.
+ *
+ * Usage moves between idle, browsing and streaming in a Markov chain, which sets
+ * the CPU load and network rates. Battery temperature follows the load with a lag,
+ * the battery drains with use and is put on charge at 15%, and free storage shrinks
+ * as data is downloaded. Each device gets its own seed, so a fleet does not move
+ * in lockstep. Not thread-safe; a device's sources are read on its own thread.
+ */
+final class DeviceModel {
+
+    enum Activity {
+        IDLE(4, 0.5, 0.2),
+        BROWSING(28, 120, 15),
+        STREAMING(45, 900, 40);
+
+        final double cpuPercent;
+        final double rxKBps;
+        final double txKBps;
+
+        Activity(double cpuPercent, double rxKBps, double txKBps) {
+            this.cpuPercent = cpuPercent;
+            this.rxKBps = rxKBps;
+            this.txKBps = txKBps;
+        }
+    }
+
+    // Chance per simulated second of leaving each activity for another one
+    private static final double[] LEAVE_PER_SECOND = {1 / 600.0, 1 / 180.0, 1 / 900.0};
+    private static final double AMBIENT_CELSIUS = 27;
+    private static final double CELSIUS_PER_CPU_PERCENT = 0.12;
+    private static final double THERMAL_TIME_CONSTANT_S = 240;
+    private static final double STORAGE_TOTAL = 128e9;
+
+    private final Random random;
+    private Activity activity = Activity.IDLE;
+    private long lastMillis = -1;
+
+    private double cpu;
+    private double temperature;
+    private double batteryLevel;
+    private boolean charging;
+    private double memory;
+    private double storageAvailable;
+    private double rxRate;
+    private double txRate;
+    // Bytes since boot, like TrafficStats; the rates above are in KiB/s
+    private long rxBytes;
+    private long txBytes;
+
+    DeviceModel(long seed) {
+        random = new Random(seed);
+        temperature = AMBIENT_CELSIUS + random.nextDouble() * 3;
+        batteryLevel = 30 + random.nextDouble() * 70;
+        memory = 45 + random.nextDouble() * 30;
+        storageAvailable = STORAGE_TOTAL * (0.1 + random.nextDouble() * 0.5);
+    }
+
+    /** Moves the model forward to {@code nowMillis} of simulated time. */
+    void advanceTo(long nowMillis) {
+        if (lastMillis < 0) {
+            lastMillis = nowMillis;
+        }
+        double seconds = Math.max(0, (nowMillis - lastMillis) / 1000.0);
+        lastMillis = nowMillis;
+
+        if (random.nextDouble() < 1 - Math.exp(-LEAVE_PER_SECOND[activity.ordinal()] * seconds)) {
+            Activity[] all = Activity.values();
+            Activity next;
+            do {
+                next = all[random.nextInt(all.length)];
+            } while (next == activity);
+            activity = next;
+        }
+
+        cpu = clamp(activity.cpuPercent * (0.7 + random.nextDouble() * 0.6), 0, 100);
+        rxRate = Math.max(0, activity.rxKBps * (0.5 + random.nextDouble()));
+        txRate = Math.max(0, activity.txKBps * (0.5 + random.nextDouble()));
+        rxBytes += Math.round(rxRate * 1024 * seconds);
+        txBytes += Math.round(txRate * 1024 * seconds);
+        memory = clamp(memory + random.nextGaussian() * 0.3, 30, 95);
+        storageAvailable = Math.max(0, storageAvailable - rxRate * 1024 * seconds * 0.01);
+
+        double target = AMBIENT_CELSIUS + cpu * CELSIUS_PER_CPU_PERCENT + (charging ? 3 : 0);
+        temperature += (target - temperature) * (1 - Math.exp(-seconds / THERMAL_TIME_CONSTANT_S));
+
+        // Drains from about 0.5%/h idle to 15%/h streaming; charges at 1%/min
+        double drainPerHour = 0.5 + cpu * 0.3;
+        batteryLevel += charging ? seconds / 60 : -drainPerHour * seconds / 3600;
+        if (batteryLevel <= 15 && !charging) {
+            charging = true;
+        } else if (batteryLevel >= 100) {
+            batteryLevel = 100;
+            charging = false;
+        }
+    }
+
+    /** CPU, memory, network counters and rates, and temperature, read every tick. */
+    MetricSource fastSource(long intervalMillis, LongSupplier clock) {
+        return new MetricSource() {
+            @Override
+            public long getIntervalMillis() {
+                return intervalMillis;
+            }
+
+            @Override
+            public void sample(MetricsSnapshot.Builder out) {
+                advanceTo(clock.getAsLong());
+                out.set(Metric.RX_BYTES, rxBytes)
+                        .set(Metric.TX_BYTES, txBytes)
+                        .set(Metric.CPU_USAGE, round(cpu, 2))
+                        .set(Metric.CPU_MAX_CORE_USAGE, round(Math.min(100, cpu * 1.8), 2))
+                        .set(Metric.MEMORY_USAGE, round(memory, 2))
+                        .set(Metric.RX_RATE, round(rxRate, 1))
+                        .set(Metric.TX_RATE, round(txRate, 1))
+                        .set(Metric.APP_RX_RATE, 0)
+                        .set(Metric.APP_TX_RATE, round(0.05 + random.nextDouble() * 0.1, 2))
+                        .set(Metric.BATTERY_TEMP, round(temperature, 1));
+            }
+        };
+    }
+
+    /** Battery level, which changes slowly. */
+    MetricSource batterySource(long intervalMillis) {
+        return new MetricSource() {
+            @Override
+            public long getIntervalMillis() {
+                return intervalMillis;
+            }
+
+            @Override
+            public void sample(MetricsSnapshot.Builder out) {
+                out.set(Metric.BATTERY_LEVEL, round(batteryLevel, 1));
+            }
+        };
+    }
+
+    /** Free and total storage in bytes. */
+    MetricSource storageSource(long intervalMillis) {
+        return new MetricSource() {
+            @Override
+            public long getIntervalMillis() {
+                return intervalMillis;
+            }
+
+            @Override
+            public void sample(MetricsSnapshot.Builder out) {
+                out.set(Metric.STORAGE_AVAILABLE, Math.floor(storageAvailable))
+                        .set(Metric.STORAGE_TOTAL, STORAGE_TOTAL);
+            }
+        };
+    }
+
+    Activity getActivity() {
+        return activity;
+    }
+
+    double getBatteryLevel() {
+        return batteryLevel;
+    }
+
+    double getTemperature() {
+        return temperature;
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static double round(double value, int decimals) {
+        double scale = Math.pow(10, decimals);
+        return Math.round(value * scale) / scale;
+    }
+}
@@ -0,0 +1,302 @@
+package com.example.batterytempmonitor;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless load generator for the telemetry pipeline: runs N {@link SimulatedDevice}s,
+ * each on its own virtual thread, against a {@link LocalBroker} and reports what the
+ * fleet achieved, to find where it stops keeping up before a rollout does.
+ *
+ * <pre>
+ *   ./gradlew :simulator:run --args="--devices 1000,10000,50000 --duration 30 --time-scale 60"
+ * </pre>
+ *
+ * Each entry of {@code --devices} is one step, run to completion with a fresh broker.
+ * Per step it prints offered and delivered samples per second, messages and bytes per
+ * second, device-side publish latency (the {@code MqttTransport.publish} call), broker
+ * delivery latency (queued to processed), how late device ticks ran, samples lost, and
+ * heap per device measured after a GC halfway through the step. A step has kept up
+ * when nothing was lost and the p99 tick lag stayed under one tick period.
+ *
+ * Options: {@code --duration} real seconds per step; {@code --time-scale} simulated
+ * seconds per real second; {@code --format json|binary}; {@code --qos 0|1};
+ * {@code --no-delta} to publish full snapshots; {@code --platform-threads} to compare
+ * against one OS thread per device; {@code --broker-workers}, {@code --broker-queue} and
+ * {@code --broker-work-us} to size the broker and model its per-message cost.
+ */
+public final class FleetSimulator {
+
+    static final class Options {
+        List<Integer> deviceCounts = List.of(100, 1000, 10000);
+        int durationSeconds = 30;
+        double timeScale = 60;
+        boolean binary;
+        int qos = LocalBroker.QOS0;
+        boolean deltaEncoding = true;
+        boolean virtualThreads = true;
+        int brokerWorkers = Math.max(1, Runtime.getRuntime().availableProcessors());
+        int brokerQueue = 100_000;
+        long brokerWorkMicros;
+        long seed = 42;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--devices":
+                        List<Integer> counts = new ArrayList<>();
+                        for (String count : value(args, ++i, arg).split(",")) {
+                            counts.add(positive(Integer.parseInt(count.trim()), arg));
+                        }
+                        options.deviceCounts = counts;
+                        break;
+                    case "--duration":
+                        options.durationSeconds = positive(Integer.parseInt(value(args, ++i, arg)), arg);
+                        break;
+                    case "--time-scale":
+                        options.timeScale = Double.parseDouble(value(args, ++i, arg));
+                        if (!(options.timeScale > 0)) {
+                            throw new IllegalArgumentException("--time-scale must be positive");
+                        }
+                        break;
+                    case "--format":
+                        String format = value(args, ++i, arg);
+                        if (!format.equals("json") && !format.equals("binary")) {
+                            throw new IllegalArgumentException("--format must be json or binary");
+                        }
+                        options.binary = format.equals("binary");
+                        break;
+                    case "--qos":
+                        options.qos = Integer.parseInt(value(args, ++i, arg));
+                        if (options.qos != LocalBroker.QOS0 && options.qos != LocalBroker.QOS1) {
+                            throw new IllegalArgumentException("--qos must be 0 or 1");
+                        }
+                        break;
+                    case "--no-delta":
+                        options.deltaEncoding = false;
+                        break;
+                    case "--platform-threads":
+                        options.virtualThreads = false;
+                        break;
+                    case "--broker-workers":
+                        options.brokerWorkers = positive(Integer.parseInt(value(args, ++i, arg)), arg);
+                        break;
+                    case "--broker-queue":
+                        options.brokerQueue = positive(Integer.parseInt(value(args, ++i, arg)), arg);
+                        break;
+                    case "--broker-work-us":
+                        options.brokerWorkMicros = Long.parseLong(value(args, ++i, arg));
+                        break;
+                    case "--seed":
+                        options.seed = Long.parseLong(value(args, ++i, arg));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+            return options;
+        }
+
+        private static String value(String[] args, int index, String option) {
+            if (index >= args.length) {
+                throw new IllegalArgumentException(option + " needs a value");
+            }
+            return args[index];
+        }
+
+        private static int positive(int value, String option) {
+            if (value <= 0) {
+                throw new IllegalArgumentException(option + " must be positive");
+            }
+            return value;
+        }
+    }
+
+    /** Outcome of one step. */
+    static final class Result {
+        int devices;
+        double wallSeconds;
+        double simulatedSeconds;
+        long samplesCollected;
+        long samplesSuppressed;
+        long samplesUndelivered;
+        long samplesDelivered;
+        long messages;
+        long bytes;
+        long brokerRejected;
+        long brokerMalformed;
+        LatencyHistogram.Snapshot publishLatency;
+        LatencyHistogram.Snapshot deliveryLatency;
+        LatencyHistogram.Snapshot tickLag;
+        long tickPeriodNanos;
+        long heapBytesPerDevice;
+        boolean allFinished;
+
+        double offeredSamplesPerSecond() {
+            return samplesCollected / wallSeconds;
+        }
+
+        double deliveredSamplesPerSecond() {
+            return samplesDelivered / wallSeconds;
+        }
+
+        boolean keptUp() {
+            return allFinished && samplesUndelivered == 0 && brokerMalformed == 0
+                    && tickLag.getPercentileNanos(99) < tickPeriodNanos;
+        }
+    }
+
+    private static final long JOIN_GRACE_MILLIS = 30_000;
+
+    private FleetSimulator() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        System.out.printf(Locale.US, "Fleet simulator: %s threads, %s payloads, QoS %d, delta %s, "
+                        + "%d s per step at %.0fx, broker %d workers / %d queue / %d us per message, %d CPUs%n",
+                options.virtualThreads ? "virtual" : "platform", options.binary ? "binary" : "json",
+                options.qos, options.deltaEncoding ? "on" : "off", options.durationSeconds, options.timeScale,
+                options.brokerWorkers, options.brokerQueue, options.brokerWorkMicros,
+                Runtime.getRuntime().availableProcessors());
+
+        List<Result> results = new ArrayList<>();
+        for (int devices : options.deviceCounts) {
+            Result result = runStep(options, devices);
+            results.add(result);
+            printDetail(result);
+            if (!result.allFinished) {
+                System.out.println("Devices did not finish; stopping the ramp here.");
+                break;
+            }
+        }
+        printSummary(results);
+    }
+
+    static Result runStep(Options options, int devices) throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long heapBefore = memory.getHeapMemoryUsage().getUsed();
+
+        Result result = new Result();
+        result.devices = devices;
+        SimulatedDevice.FleetStats stats = new SimulatedDevice.FleetStats();
+        try (LocalBroker broker = new LocalBroker(options.brokerWorkers, options.brokerQueue,
+                TimeUnit.MICROSECONDS.toNanos(options.brokerWorkMicros))) {
+            SimulatedClock clock = new SimulatedClock(System.currentTimeMillis(), options.timeScale);
+            long simulatedMillis = (long) (options.durationSeconds * 1000L * options.timeScale);
+            long stopAt = clock.getAsLong() + simulatedMillis;
+
+            Thread.Builder builder = options.virtualThreads
+                    ? Thread.ofVirtual().name("sim-device-", 0)
+                    : Thread.ofPlatform().daemon().name("sim-device-", 0);
+            List<Thread> threads = new ArrayList<>(devices);
+            long startNanos = System.nanoTime();
+            for (int i = 0; i < devices; i++) {
+                SimulatedDevice device = new SimulatedDevice(String.format(Locale.US, "sim-%05d", i),
+                        options.seed * 1_000_003 + i, clock, stopAt, broker.connect(options.qos),
+                        options.binary, options.deltaEncoding, stats);
+                threads.add(builder.start(device));
+            }
+
+            // Halfway through, every device is mid-batch and its thread is parked or running
+            TimeUnit.MILLISECONDS.sleep(options.durationSeconds * 500L);
+            System.gc();
+            result.heapBytesPerDevice = Math.max(0, memory.getHeapMemoryUsage().getUsed() - heapBefore) / devices;
+
+            long joinDeadline = System.currentTimeMillis() + options.durationSeconds * 1000L + JOIN_GRACE_MILLIS;
+            result.allFinished = true;
+            for (Thread thread : threads) {
+                long remaining = joinDeadline - System.currentTimeMillis();
+                if (remaining <= 0 || !thread.join(Duration.ofMillis(remaining))) {
+                    result.allFinished = false;
+                    break;
+                }
+            }
+            broker.awaitIdle(JOIN_GRACE_MILLIS);
+            long elapsedNanos = System.nanoTime() - startNanos;
+            if (!result.allFinished) {
+                threads.forEach(Thread::interrupt);
+            }
+
+            result.wallSeconds = elapsedNanos / 1e9;
+            result.simulatedSeconds = simulatedMillis / 1000.0;
+            result.samplesCollected = stats.samplesCollected.sum();
+            result.samplesSuppressed = stats.samplesSuppressed.sum();
+            result.samplesUndelivered = stats.samplesUndelivered.sum();
+            result.samplesDelivered = broker.getSamples();
+            result.messages = broker.getMessages();
+            result.bytes = broker.getBytes();
+            result.brokerRejected = broker.getRejected();
+            result.brokerMalformed = broker.getMalformed();
+            result.publishLatency = stats.pipeline.getHistogram(SelfMetrics.Stage.PUBLISH).snapshot();
+            result.deliveryLatency = broker.getDeliveryLatency().snapshot();
+            result.tickLag = stats.tickLag.snapshot();
+            result.tickPeriodNanos = (long) (SimulatedDevice.FAST_INTERVAL_MS * 1_000_000 / options.timeScale);
+        }
+        return result;
+    }
+
+    private static void printDetail(Result r) {
+        System.out.printf(Locale.US, "%n== %d devices: %.1f s wall, %.0f s simulated%n",
+                r.devices, r.wallSeconds, r.simulatedSeconds);
+        System.out.printf(Locale.US, "  samples    %d collected, %d suppressed by delta, %d delivered, %d undelivered%n",
+                r.samplesCollected, r.samplesSuppressed, r.samplesDelivered, r.samplesUndelivered);
+        System.out.printf(Locale.US, "  throughput %.0f samples/s offered, %.0f delivered, %.0f msg/s, %.2f MB/s%n",
+                r.offeredSamplesPerSecond(), r.deliveredSamplesPerSecond(), r.messages / r.wallSeconds,
+                r.bytes / r.wallSeconds / 1e6);
+        printLatency("publish", r.publishLatency);
+        printLatency("delivery", r.deliveryLatency);
+        printLatency("tick lag", r.tickLag);
+        System.out.printf(Locale.US, "  broker     %d rejected, %d malformed%n", r.brokerRejected, r.brokerMalformed);
+        System.out.printf(Locale.US, "  memory     %.1f KB heap per device%n", r.heapBytesPerDevice / 1024.0);
+    }
+
+    private static void printLatency(String label, LatencyHistogram.Snapshot s) {
+        System.out.printf(Locale.US, "  %-10s p50 %s  p95 %s  p99 %s  max %s  (%d)%n", label,
+                formatNanos(s.getPercentileNanos(50)), formatNanos(s.getPercentileNanos(95)),
+                formatNanos(s.getPercentileNanos(99)), formatNanos(s.getMaxNanos()), s.getCount());
+    }
+
+    private static void printSummary(List<Result> results) {
+        System.out.printf(Locale.US, "%n%8s %12s %12s %9s %9s %10s %10s %10s %12s %8s %5s%n",
+                "devices", "offered/s", "delivered/s", "msg/s", "MB/s", "pub p99", "dlv p99",
+                "lag p99", "undelivered", "KB/dev", "ok");
+        for (Result r : results) {
+            System.out.printf(Locale.US, "%8d %12.0f %12.0f %9.0f %9.2f %10s %10s %10s %12d %8.1f %5s%n",
+                    r.devices, r.offeredSamplesPerSecond(), r.deliveredSamplesPerSecond(),
+                    r.messages / r.wallSeconds, r.bytes / r.wallSeconds / 1e6,
+                    formatNanos(r.publishLatency.getPercentileNanos(99)),
+                    formatNanos(r.deliveryLatency.getPercentileNanos(99)),
+                    formatNanos(r.tickLag.getPercentileNanos(99)), r.samplesUndelivered,
+                    r.heapBytesPerDevice / 1024.0, r.keptUp() ? "yes" : "NO");
+        }
+    }
+
+    static String formatNanos(long nanos) {
+        if (nanos < 1_000) {
+            return nanos + " ns";
+        }
+        if (nanos < 1_000_000) {
+            return String.format(Locale.US, "%.1f us", nanos / 1e3);
+        }
+        if (nanos < 1_000_000_000) {
+            return String.format(Locale.US, "%.1f ms", nanos / 1e6);
+        }
+        return String.format(Locale.US, "%.2f s", nanos / 1e9);
+    }
+}
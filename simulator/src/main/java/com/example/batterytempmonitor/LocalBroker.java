@@ -0,0 +1,224 @@
+package com.example.batterytempmonitor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-process stand-in for the MQTT broker, so the fleet simulator measures the
+ * device pipeline rather than a network.
+ *
+ * Published payloads are copied into a bounded inbound queue and drained by a
+ * fixed pool of worker threads, the way a broker's ingest stage works. Each worker
+ * decodes the batch to count its samples (JSON batches by their records, binary
+ * ones with {@link BinaryPayloadDecoder}) and can spend extra time per message to
+ * model downstream cost. At QoS 0 a publish returns once the message is queued and
+ * fails when the queue is full; at QoS 1 it waits for the worker's acknowledgement,
+ * so a slow broker pushes back on the devices.
+ */
+final class LocalBroker implements AutoCloseable {
+
+    static final int QOS0 = 0;
+    static final int QOS1 = 1;
+
+    private static final byte[] JSON_RECORD = "{\"deviceId\":".getBytes(StandardCharsets.US_ASCII);
+    private static final long ACK_TIMEOUT_MILLIS = 10_000;
+
+    private static final class Message {
+        final byte[] payload;
+        final long enqueuedNanos;
+        final CountDownLatch ack;
+
+        Message(byte[] payload, long enqueuedNanos, CountDownLatch ack) {
+            this.payload = payload;
+            this.enqueuedNanos = enqueuedNanos;
+            this.ack = ack;
+        }
+    }
+
+    private final BlockingQueue<Message> inbound;
+    private final long workNanosPerMessage;
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean closed;
+
+    private final LatencyHistogram deliveryLatency = new LatencyHistogram();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder malformed = new LongAdder();
+
+    LocalBroker(int workerCount, int queueCapacity, long workNanosPerMessage) {
+        if (workerCount <= 0 || queueCapacity <= 0 || workNanosPerMessage < 0) {
+            throw new IllegalArgumentException("Invalid broker settings");
+        }
+        this.inbound = new ArrayBlockingQueue<>(queueCapacity);
+        this.workNanosPerMessage = workNanosPerMessage;
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::drain, "broker-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    /** Returns a transport for one client, publishing at the given QoS. */
+    MqttTransport connect(int qos) {
+        if (qos != QOS0 && qos != QOS1) {
+            throw new IllegalArgumentException("Unsupported QoS: " + qos);
+        }
+        return new MqttTransport() {
+            @Override
+            public boolean isConnected() {
+                return !closed;
+            }
+
+            @Override
+            public void publish(String topic, byte[] payload, int offset, int length) throws Exception {
+                accept(payload, offset, length, qos);
+            }
+        };
+    }
+
+    private void accept(byte[] payload, int offset, int length, int qos) throws Exception {
+        if (closed) {
+            throw new IllegalStateException("Broker is closed");
+        }
+        // The publisher reuses its buffer, so the broker keeps its own copy
+        byte[] copy = new byte[length];
+        System.arraycopy(payload, offset, copy, 0, length);
+        CountDownLatch ack = qos == QOS1 ? new CountDownLatch(1) : null;
+        Message message = new Message(copy, System.nanoTime(), ack);
+        if (ack == null) {
+            if (!inbound.offer(message)) {
+                rejected.increment();
+                throw new IllegalStateException("Broker inbound queue is full");
+            }
+            accepted.increment();
+            return;
+        }
+        if (!inbound.offer(message, ACK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            rejected.increment();
+            throw new IllegalStateException("Broker inbound queue is full");
+        }
+        accepted.increment();
+        if (!ack.await(ACK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            throw new IllegalStateException("No PUBACK within " + ACK_TIMEOUT_MILLIS + " ms");
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Message message;
+            try {
+                message = inbound.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            process(message);
+        }
+    }
+
+    private void process(Message message) {
+        int records = countRecords(message.payload);
+        if (records < 0) {
+            malformed.increment();
+        } else {
+            samples.add(records);
+        }
+        if (workNanosPerMessage > 0) {
+            LockSupport.parkNanos(workNanosPerMessage);
+        }
+        messages.increment();
+        bytes.add(message.payload.length);
+        deliveryLatency.recordSince(message.enqueuedNanos);
+        if (message.ack != null) {
+            message.ack.countDown();
+        }
+    }
+
+    /** Number of samples in a batch, or -1 if it is neither format. */
+    static int countRecords(byte[] payload) {
+        if (payload.length > 0 && payload[0] == '[') {
+            int count = 0;
+            for (int i = 0; i <= payload.length - JSON_RECORD.length; i++) {
+                if (matchesAt(payload, i)) {
+                    count++;
+                    i += JSON_RECORD.length - 1;
+                }
+            }
+            return count;
+        }
+        try {
+            return BinaryPayloadDecoder.decode(payload).getRecords().size();
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    private static boolean matchesAt(byte[] payload, int index) {
+        for (int j = 0; j < JSON_RECORD.length; j++) {
+            if (payload[index + j] != JSON_RECORD[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Time from a message entering the inbound queue to a worker finishing it. */
+    LatencyHistogram getDeliveryLatency() {
+        return deliveryLatency;
+    }
+
+    long getMessages() {
+        return messages.sum();
+    }
+
+    long getBytes() {
+        return bytes.sum();
+    }
+
+    long getSamples() {
+        return samples.sum();
+    }
+
+    /** Publishes refused because the inbound queue stayed full. */
+    long getRejected() {
+        return rejected.sum();
+    }
+
+    long getMalformed() {
+        return malformed.sum();
+    }
+
+    int getQueueDepth() {
+        return inbound.size();
+    }
+
+    /** Waits up to {@code timeoutMillis} for every accepted message to be processed. */
+    boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (messages.sum() < accepted.sum()) {
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            Thread.sleep(5);
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+}
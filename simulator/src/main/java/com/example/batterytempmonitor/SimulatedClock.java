@@ -0,0 +1,43 @@
+package com.example.batterytempmonitor;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Wall clock for the simulated fleet, running {@code timeScale} times faster than
+ * real time from a fixed start, so an hour of device schedule can be compressed
+ * into a minute of load. Shared by every device; reads are lock-free.
+ */
+final class SimulatedClock implements LongSupplier {
+    private final long startMillis;
+    private final long startNanos;
+    private final double timeScale;
+
+    SimulatedClock(long startMillis, double timeScale) {
+        if (!(timeScale > 0)) {
+            throw new IllegalArgumentException("Time scale must be positive: " + timeScale);
+        }
+        this.startMillis = startMillis;
+        this.startNanos = System.nanoTime();
+        this.timeScale = timeScale;
+    }
+
+    /** Current simulated time in epoch milliseconds. */
+    @Override
+    public long getAsLong() {
+        return startMillis + (long) ((System.nanoTime() - startNanos) * timeScale / 1_000_000);
+    }
+
+    /** Real nanoseconds until the clock reads {@code simMillis}; negative once it has passed. */
+    long realNanosUntil(long simMillis) {
+        long dueNanos = startNanos + (long) ((simMillis - startMillis) * 1_000_000 / timeScale);
+        return dueNanos - System.nanoTime();
+    }
+
+    long getStartMillis() {
+        return startMillis;
+    }
+
+    double getTimeScale() {
+        return timeScale;
+    }
+}
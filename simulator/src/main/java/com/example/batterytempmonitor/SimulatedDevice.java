@@ -0,0 +1,113 @@
+package com.example.batterytempmonitor;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One virtual phone running the same collection and publish path as
+ * {@code TelemetryService}: a {@link MetricsCollector} over the app's source
+ * intervals, the app's {@link DeltaFilter} deadbands, and a
+ * {@link BatchingPublisher} with the app's batch limits, publishing the
+ * {@code sendDataToAWS} payload to the data topic. All of these come from
+ * {@link PipelineDefaults}, which the app uses too.
+ *
+ * The device drives its collector's ticks from its own thread, sleeping between
+ * them on the {@link SimulatedClock}, so it is meant to run on a virtual thread.
+ * The first tick falls at a random point in the first period, as real phones are
+ * not synchronised. A device that falls behind ticks back to back to catch up,
+ * and how late each tick ran is recorded as tick lag.
+ */
+final class SimulatedDevice implements Runnable {
+
+    // The app samples CPU, memory, network and battery temperature on the same interval
+    static final long FAST_INTERVAL_MS = PipelineDefaults.CPU_INTERVAL_MS;
+
+    /** Counters and histograms shared by the whole fleet. */
+    static final class FleetStats {
+        final SelfMetrics pipeline = new SelfMetrics();
+        final LatencyHistogram tickLag = new LatencyHistogram();
+        final LongAdder samplesCollected = new LongAdder();
+        final LongAdder samplesSuppressed = new LongAdder();
+        final LongAdder samplesUndelivered = new LongAdder();
+        final LongAdder devicesFinished = new LongAdder();
+    }
+
+    private final String deviceId;
+    private final SimulatedClock clock;
+    private final long stopAtMillis;
+    private final FleetStats stats;
+    private final long phaseMillis;
+
+    private final MetricsCollector collector;
+    private final BatchingPublisher publisher;
+    private final DeltaFilter deltaFilter;
+
+    SimulatedDevice(String deviceId, long seed, SimulatedClock clock, long stopAtMillis,
+                    MqttTransport transport, boolean binary, boolean deltaEncoding, FleetStats stats) {
+        this.deviceId = deviceId;
+        this.clock = clock;
+        this.stopAtMillis = stopAtMillis;
+        this.stats = stats;
+
+        DeviceModel model = new DeviceModel(seed);
+        collector = new MetricsCollector(Arrays.asList(
+                model.fastSource(FAST_INTERVAL_MS, clock),
+                model.batterySource(PipelineDefaults.BATTERY_LEVEL_INTERVAL_MS),
+                model.storageSource(PipelineDefaults.STORAGE_INTERVAL_MS)), clock);
+        collector.setSelfMetrics(stats.pipeline);
+
+        PayloadFormat format = binary ? new BinaryPayloadFormat(deviceId) : new JsonPayloadFormat(deviceId);
+        publisher = new BatchingPublisher(transport, PipelineDefaults.DATA_TOPIC, format,
+                PipelineDefaults.BATCH_MAX_SAMPLES, PipelineDefaults.BATCH_MAX_BYTES,
+                PipelineDefaults.BATCH_MAX_LATENCY_MS, clock);
+        publisher.setSelfMetrics(stats.pipeline);
+        publisher.setUndeliveredHandler(snapshot -> stats.samplesUndelivered.increment());
+
+        deltaFilter = deltaEncoding ? PipelineDefaults.newDeltaFilter() : null;
+        collector.addSink(this::send);
+
+        phaseMillis = new Random(seed).nextInt((int) collector.getPeriodMillis());
+    }
+
+    private void send(MetricsSnapshot sample) {
+        stats.samplesCollected.increment();
+        if (deltaFilter == null) {
+            publisher.publish(sample);
+        } else if (publisher.publish(sample, deltaFilter) == null) {
+            stats.samplesSuppressed.increment();
+        }
+    }
+
+    @Override
+    public void run() {
+        long period = collector.getPeriodMillis();
+        long next = clock.getAsLong() + phaseMillis;
+        try {
+            while (next < stopAtMillis) {
+                long waitNanos = clock.realNanosUntil(next);
+                if (waitNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                }
+                stats.tickLag.record(-clock.realNanosUntil(next));
+                collector.tick();
+                next += period;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Like the service on shutdown, send the partial batch rather than lose it
+            publisher.flush();
+            stats.devicesFinished.increment();
+        }
+    }
+
+    String getDeviceId() {
+        return deviceId;
+    }
+
+    BatchingPublisher getPublisher() {
+        return publisher;
+    }
+}
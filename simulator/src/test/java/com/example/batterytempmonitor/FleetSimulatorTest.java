@@ -0,0 +1,95 @@
+package com.example.batterytempmonitor;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FleetSimulatorTest {
+
+    @Test
+    public void everyCollectedSampleIsAccountedFor() throws Exception {
+        for (boolean binary : new boolean[]{false, true}) {
+            FleetSimulator.Options options = FleetSimulator.Options.parse(new String[]{
+                    "--duration", "2", "--time-scale", "600", "--broker-workers", "2"});
+            options.binary = binary;
+            FleetSimulator.Result result = FleetSimulator.runStep(options, 50);
+
+            assertTrue(result.allFinished);
+            // 1200 simulated seconds at one sample per 5 s, give or take the random phase
+            assertTrue("collected " + result.samplesCollected, result.samplesCollected >= 50 * 230);
+            assertEquals(0, result.brokerMalformed);
+            assertEquals(0, result.samplesUndelivered);
+            assertEquals(result.samplesCollected - result.samplesSuppressed, result.samplesDelivered);
+            assertTrue(result.samplesSuppressed > 0);
+            assertEquals(result.messages, result.publishLatency.getCount());
+        }
+    }
+
+    @Test
+    public void qos1PublishWaitsForTheBroker() throws Exception {
+        FleetSimulator.Options options = FleetSimulator.Options.parse(new String[]{
+                "--duration", "1", "--time-scale", "600", "--qos", "1", "--broker-workers", "1",
+                "--broker-work-us", "200"});
+        FleetSimulator.Result result = FleetSimulator.runStep(options, 20);
+
+        assertTrue(result.allFinished);
+        assertEquals(result.samplesCollected - result.samplesSuppressed, result.samplesDelivered);
+        // Each acknowledged publish includes the broker's 200 us of work
+        assertTrue(result.publishLatency.getPercentileNanos(50) >= 200_000);
+    }
+
+    @Test
+    public void fullQueueRejectsQos0Publishes() throws Exception {
+        FleetSimulator.Options options = FleetSimulator.Options.parse(new String[]{
+                "--duration", "1", "--time-scale", "3000", "--broker-workers", "1",
+                "--broker-queue", "1", "--broker-work-us", "5000", "--no-delta"});
+        FleetSimulator.Result result = FleetSimulator.runStep(options, 50);
+
+        assertTrue(result.brokerRejected > 0);
+        assertTrue(result.samplesUndelivered > 0);
+        assertFalse(result.keptUp());
+        assertEquals(result.samplesCollected, result.samplesDelivered + result.samplesUndelivered);
+    }
+
+    @Test
+    public void brokerCountsRecordsInBothFormats() {
+        MetricsSnapshot snapshot = new MetricsSnapshot.Builder()
+                .set(Metric.CPU_USAGE, 12.5)
+                .set(Metric.BATTERY_TEMP, 31.2)
+                .build(1_700_000_000_000L);
+        for (PayloadFormat format : List.of(new JsonPayloadFormat("sim-00001"), new BinaryPayloadFormat("sim-00001"))) {
+            PayloadBuffer buffer = new PayloadBuffer(256);
+            format.beginBatch(buffer);
+            for (int i = 0; i < 3; i++) {
+                format.appendRecord(snapshot, i, buffer);
+            }
+            format.endBatch(buffer);
+            byte[] payload = new byte[buffer.length()];
+            System.arraycopy(buffer.array(), 0, payload, 0, payload.length);
+            assertEquals(format.getClass().getSimpleName(), 3, LocalBroker.countRecords(payload));
+        }
+        assertEquals(-1, LocalBroker.countRecords("garbage".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    public void deviceModelStaysWithinPhysicalRanges() throws Exception {
+        long[] now = {0};
+        DeviceModel model = new DeviceModel(7);
+        MetricSource fast = model.fastSource(5000, () -> now[0]);
+        MetricsSnapshot.Builder out = new MetricsSnapshot.Builder();
+        boolean sawBusy = false;
+        // A simulated day
+        for (int i = 0; i < 17_280; i++) {
+            now[0] += 5000;
+            fast.sample(out);
+            assertTrue(out.get(Metric.CPU_USAGE) >= 0 && out.get(Metric.CPU_USAGE) <= 100);
+            assertTrue(out.get(Metric.BATTERY_TEMP) > 20 && out.get(Metric.BATTERY_TEMP) < 45);
+            assertTrue(model.getBatteryLevel() > 0 && model.getBatteryLevel() <= 100);
+            sawBusy |= model.getActivity() != DeviceModel.Activity.IDLE;
+        }
+        assertTrue(sawBusy);
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.batterytempmonitor;
+
+/**
+ * Applies a {@link SamplingPolicy} over time and reports mode changes.
+ *
+ * Moving to a more conservative mode happens as soon as the policy asks for it,
+ * since that protects the battery or a hot device. Moving to a more eager mode
+ * additionally requires the current mode to have lasted {@code minDwellMillis},
+ * which stops short-lived recoveries from flapping the schedule. Time comes from
+ * the caller, so the scheduler is deterministic under a fake clock.
+ * Not thread-safe; used on the collector thread.
+ */
+public final class AdaptiveScheduler {
+
+    /** Told about every mode change, e.g. to rescale the collector and publisher. */
+    public interface Listener {
+        void onModeChanged(SamplingMode previous, SamplingMode mode, DeviceConditions conditions);
+    }
+
+    private final SamplingPolicy policy;
+    private final long minDwellMillis;
+    private final Listener listener;
+    private SamplingMode mode = SamplingMode.NORMAL;
+    private long modeSinceMillis = Long.MIN_VALUE;
+    private long transitions;
+
+    public AdaptiveScheduler(SamplingPolicy policy, long minDwellMillis, Listener listener) {
+        if (minDwellMillis < 0) {
+            throw new IllegalArgumentException("minDwellMillis must not be negative: " + minDwellMillis);
+        }
+        this.policy = policy;
+        this.minDwellMillis = minDwellMillis;
+        this.listener = listener;
+    }
+
+    /** Re-evaluates the policy and returns the mode now in effect. */
+    public SamplingMode update(DeviceConditions conditions, long nowMillis) {
+        if (modeSinceMillis == Long.MIN_VALUE) {
+            modeSinceMillis = nowMillis;
+        }
+        SamplingMode proposed = policy.select(conditions, mode);
+        if (proposed == mode) {
+            return mode;
+        }
+        boolean relaxing = proposed.ordinal() < mode.ordinal();
+        if (relaxing && nowMillis - modeSinceMillis < minDwellMillis) {
+            return mode;
+        }
+        SamplingMode previous = mode;
+        mode = proposed;
+        modeSinceMillis = nowMillis;
+        transitions++;
+        listener.onModeChanged(previous, proposed, conditions);
+        return mode;
+    }
+
+    public SamplingMode getMode() {
+        return mode;
+    }
+
+    /** Number of mode changes so far. */
+    public long getTransitionCount() {
+        return transitions;
+    }
+}
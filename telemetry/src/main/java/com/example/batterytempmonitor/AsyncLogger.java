@@ -0,0 +1,335 @@
+package com.example.batterytempmonitor;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * File logger that never does I/O on the calling thread.
+ *
+ * Callers place messages in a bounded lock-free ring buffer; a single writer
+ * thread drains it into one long-lived buffered writer. Files are named
+ * {@code log_yyyyMMdd.txt} and rotate at local midnight, or to
+ * {@code log_yyyyMMdd_N.txt} when a file reaches {@code maxFileBytes}. The oldest
+ * files are deleted once the directory exceeds {@code maxTotalBytes}. Each line
+ * has the form {@code [HH:mm:ss] message}.
+ */
+public final class AsyncLogger implements Closeable {
+
+    /** What {@link #log} does when the ring buffer is full. */
+    public enum BackpressurePolicy {
+        /** Discard the new message and count it as dropped. */
+        DROP,
+        /** Wait for the writer to make room. */
+        BLOCK
+    }
+
+    static final String THREAD_NAME = "log-writer";
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final File directory;
+    private final long maxFileBytes;
+    private final long maxTotalBytes;
+    private final BackpressurePolicy policy;
+    private final TimeZone timeZone;
+
+    // Multi-producer, single-consumer ring
+    private final int mask;
+    private final AtomicReferenceArray<String> messages;
+    private final long[] timestamps;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+
+    private final Thread writerThread;
+    private volatile boolean running = true;
+    private volatile boolean writerParked;
+    private volatile SelfMetrics selfMetrics;
+
+    // Writer thread state
+    private final char[] timeChars = {'[', '0', '0', ':', '0', '0', ':', '0', '0', ']', ' '};
+    private Writer writer;
+    private long currentDay = Long.MIN_VALUE;
+    private String currentDate;
+    private int fileIndex;
+    private long fileBytes;
+
+    public AsyncLogger(File directory, int capacity, long maxFileBytes, long maxTotalBytes,
+                       BackpressurePolicy policy) {
+        this(directory, capacity, maxFileBytes, maxTotalBytes, policy, TimeZone.getDefault());
+    }
+
+    AsyncLogger(File directory, int capacity, long maxFileBytes, long maxTotalBytes,
+                BackpressurePolicy policy, TimeZone timeZone) {
+        if (capacity <= 0 || maxFileBytes <= 0 || maxTotalBytes < maxFileBytes) {
+            throw new IllegalArgumentException("Invalid logger limits");
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        if (size <= 0) {
+            size = 1;
+        }
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+        this.maxTotalBytes = maxTotalBytes;
+        this.policy = policy;
+        this.timeZone = timeZone;
+        this.mask = size - 1;
+        this.messages = new AtomicReferenceArray<>(size);
+        this.timestamps = new long[size];
+
+        writerThread = new Thread(this::runWriter, THREAD_NAME);
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Queues a message with the current time. Never blocks on I/O; with the
+     * {@link BackpressurePolicy#DROP} policy it never blocks at all.
+     *
+     * @return false if the message was dropped
+     */
+    public boolean log(String message) {
+        return log(System.currentTimeMillis(), message);
+    }
+
+    boolean log(long timestampMillis, String message) {
+        if (!running) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        long slot;
+        while (true) {
+            slot = tail.get();
+            if (slot - head.get() > mask) {
+                if (policy == BackpressurePolicy.DROP || !running) {
+                    dropped.incrementAndGet();
+                    return false;
+                }
+                wakeWriter();
+                Thread.yield();
+                continue;
+            }
+            if (tail.compareAndSet(slot, slot + 1)) {
+                break;
+            }
+        }
+        int index = (int) (slot & mask);
+        timestamps[index] = timestampMillis;
+        // The volatile store publishes the timestamp written above to the writer thread
+        messages.set(index, message);
+        if (writerParked) {
+            wakeWriter();
+        }
+        return true;
+    }
+
+    /** Records how long the writer thread spends writing and flushing each batch of lines. */
+    public void setSelfMetrics(SelfMetrics selfMetrics) {
+        this.selfMetrics = selfMetrics;
+    }
+
+    /** Messages discarded because the buffer was full or the logger was closed. */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /** Messages written to disk so far. */
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    /** Stops accepting messages, writes everything already queued, and closes the file. */
+    @Override
+    public void close() {
+        running = false;
+        wakeWriter();
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void wakeWriter() {
+        LockSupport.unpark(writerThread);
+    }
+
+    private void runWriter() {
+        try {
+            // Start of the batch being written, if any, so its flush is timed with it
+            long batchStart = 0;
+            boolean writing = false;
+            while (true) {
+                long start = System.nanoTime();
+                int count = drainToWriter();
+                if (count > 0) {
+                    if (!writing) {
+                        batchStart = start;
+                        writing = true;
+                    }
+                    continue;
+                }
+                flushQuietly();
+                if (writing) {
+                    writing = false;
+                    SelfMetrics metrics = selfMetrics;
+                    if (metrics != null) {
+                        metrics.recordSince(SelfMetrics.Stage.DISK_WRITE, batchStart);
+                        metrics.increment(SelfMetrics.Counter.LOG_WRITES);
+                    }
+                }
+                if (!running && head.get() == tail.get()) {
+                    break;
+                }
+                writerParked = true;
+                // Re-check after advertising that we are about to park, so no wake-up is missed
+                if (messages.get((int) (head.get() & mask)) == null) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                writerParked = false;
+            }
+        } finally {
+            closeWriter();
+        }
+    }
+
+    private int drainToWriter() {
+        int count = 0;
+        long h = head.get();
+        while (true) {
+            int index = (int) (h & mask);
+            String message = messages.get(index);
+            if (message == null) {
+                // Empty, or a producer has claimed the slot but not filled it yet
+                break;
+            }
+            long timestamp = timestamps[index];
+            messages.lazySet(index, null);
+            head.lazySet(++h);
+            write(timestamp, message);
+            count++;
+        }
+        return count;
+    }
+
+    private void write(long timestampMillis, String message) {
+        try {
+            long local = timestampMillis + timeZone.getOffset(timestampMillis);
+            long day = Math.floorDiv(local, DAY_MILLIS);
+            if (day != currentDay || writer == null || fileBytes >= maxFileBytes) {
+                openFile(day, timestampMillis);
+            }
+            formatTime((int) (Math.floorMod(local, DAY_MILLIS) / 1000));
+            writer.write(timeChars);
+            writer.write(message);
+            writer.write('\n');
+            // Close enough for ASCII log lines; only used for the rotation threshold
+            fileBytes += timeChars.length + message.length() + 1;
+            written.incrementAndGet();
+        } catch (IOException e) {
+            dropped.incrementAndGet();
+            closeWriter();
+        }
+    }
+
+    private void formatTime(int secondOfDay) {
+        int hours = secondOfDay / 3600;
+        int minutes = secondOfDay / 60 % 60;
+        int seconds = secondOfDay % 60;
+        timeChars[1] = (char) ('0' + hours / 10);
+        timeChars[2] = (char) ('0' + hours % 10);
+        timeChars[4] = (char) ('0' + minutes / 10);
+        timeChars[5] = (char) ('0' + minutes % 10);
+        timeChars[7] = (char) ('0' + seconds / 10);
+        timeChars[8] = (char) ('0' + seconds % 10);
+    }
+
+    private void openFile(long day, long timestampMillis) throws IOException {
+        closeWriter();
+        if (day != currentDay) {
+            SimpleDateFormat dateSdf = new SimpleDateFormat("yyyyMMdd", Locale.US);
+            dateSdf.setTimeZone(timeZone);
+            currentDay = day;
+            currentDate = dateSdf.format(new Date(timestampMillis));
+            fileIndex = 0;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create log directory " + directory);
+        }
+
+        File file = logFile(currentDate, fileIndex);
+        while (file.length() >= maxFileBytes) {
+            file = logFile(currentDate, ++fileIndex);
+        }
+        fileBytes = file.length();
+        writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file, true), StandardCharsets.UTF_8), 8192);
+        enforceTotalSize(file);
+    }
+
+    private File logFile(String date, int index) {
+        String name = index == 0 ? "log_" + date + ".txt" : "log_" + date + "_" + index + ".txt";
+        return new File(directory, name);
+    }
+
+    /** Deletes the oldest log files until the directory fits in {@code maxTotalBytes}. */
+    private void enforceTotalSize(File current) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith("log_") && name.endsWith(".txt"));
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        for (File file : files) {
+            if (total <= maxTotalBytes) {
+                break;
+            }
+            if (!file.equals(current)) {
+                total -= file.length();
+                file.delete();
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            closeWriter();
+        }
+    }
+
+    private void closeWriter() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException ignored) {
+            // Nothing more we can do with a broken log file
+        }
+        writer = null;
+    }
+}
@@ -0,0 +1,445 @@
+package com.example.batterytempmonitor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.LongSupplier;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Sends the {@link OfflineQueue} backlog as compressed chunks instead of one
+ * small message per sample.
+ *
+ * A chunk is {@code [version][record count varint][raw length varint]} followed
+ * by a zlib stream of the records, each prefixed with its length as a varint.
+ * Records are passed through as stored: {@link BinaryPayloadFormat} frames, or
+ * JSON objects queued by older builds. An optional preset dictionary of typical
+ * record bytes helps small chunks compress; the zlib header names it by checksum,
+ * and {@link #decodeChunk} needs the same bytes. Every chunk, header included,
+ * fits in {@code maxChunkBytes}, which should stay below the broker's maximum
+ * payload size.
+ *
+ * Records are only removed from the queue once the transport reports their chunk
+ * delivered, which at QoS 1 means acknowledged by the broker. Only one chunk is
+ * in flight at a time; one that is neither acknowledged nor failed within
+ * {@link #ACK_TIMEOUT_MILLIS} is sent again, so a chunk may arrive twice but is
+ * never lost. A {@link TokenBucket} of payload bytes limits the upload rate, so
+ * that a long backlog does not crowd out the live stream. Each chunk is charged
+ * its actual size, and a chunk the limit refuses is kept for the next call. Not
+ * thread-safe; call {@link #upload} from one thread, normally the collector thread.
+ */
+public final class BacklogUploader implements Closeable {
+    static final int VERSION = 1;
+    // Version byte plus two varints of at most five bytes each
+    static final int HEADER_RESERVE = 11;
+    // zlib header, preset dictionary id, final block and Adler-32 trailer, with room to spare
+    private static final int STREAM_OVERHEAD = 32;
+    private static final int MAX_RAW_BYTES = 64 * 1024 * 1024;
+    static final long ACK_TIMEOUT_MILLIS = 60_000;
+
+    private final OfflineQueue queue;
+    private final MqttTransport transport;
+    private final String topic;
+    private final int maxChunkBytes;
+    private final int maxCompressedBytes;
+    private final byte[] dictionary;
+    private final TokenBucket rateLimit;
+    private final Deflater deflater;
+    private final LongSupplier nanoClock;
+    private final OfflineQueue.RecordHandler addRecord = this::addRecord;
+
+    // The chunk being built; compressed data starts at HEADER_RESERVE
+    private final byte[] chunk;
+    private final byte[] varint = new byte[5];
+    private int compressedLength;
+    private long unflushedBytes;
+    private int chunkRecords;
+    private long chunkRawBytes;
+    private boolean oversized;
+    // A finished chunk not yet delivered, kept across calls while the rate limit or the link holds it back
+    private boolean chunkReady;
+    private int chunkOffset;
+    private int chunkLength;
+    // The published chunk waiting for its delivery report; the next is built only once it settles
+    private Delivery inFlight;
+
+    private long chunksSent;
+    private long recordsSent;
+    private long rawBytesSent;
+    private long compressedBytesSent;
+    private long publishFailures;
+    private long throttled;
+    private long oversizedDropped;
+    private long uploadNanos;
+
+    /**
+     * @param level      {@link Deflater} compression level, 0 to 9
+     * @param dictionary preset dictionary, or null for none
+     * @param rateLimit  bucket of payload bytes; its burst must hold a whole chunk
+     */
+    public BacklogUploader(OfflineQueue queue, MqttTransport transport, String topic, int maxChunkBytes,
+                           int level, byte[] dictionary, TokenBucket rateLimit) {
+        this(queue, transport, topic, maxChunkBytes, level, dictionary, rateLimit, System::nanoTime);
+    }
+
+    BacklogUploader(OfflineQueue queue, MqttTransport transport, String topic, int maxChunkBytes,
+                    int level, byte[] dictionary, TokenBucket rateLimit, LongSupplier nanoClock) {
+        if (maxChunkBytes <= HEADER_RESERVE + STREAM_OVERHEAD) {
+            throw new IllegalArgumentException("Chunk size too small: " + maxChunkBytes);
+        }
+        if (rateLimit.getBurst() < maxChunkBytes) {
+            throw new IllegalArgumentException("Rate limit burst " + rateLimit.getBurst()
+                    + " cannot cover a " + maxChunkBytes + " byte chunk");
+        }
+        this.queue = queue;
+        this.transport = transport;
+        this.topic = topic;
+        this.maxChunkBytes = maxChunkBytes;
+        this.maxCompressedBytes = maxChunkBytes - HEADER_RESERVE;
+        this.dictionary = dictionary;
+        this.rateLimit = rateLimit;
+        this.deflater = new Deflater(level);
+        this.nanoClock = nanoClock;
+        this.chunk = new byte[maxChunkBytes];
+    }
+
+    /**
+     * Removes the records of a chunk delivered since the last call, then publishes up
+     * to {@code maxChunks} more while connected and within the rate limit, each only
+     * once the previous one is delivered. A failed publish leaves its records queued
+     * for the next call.
+     *
+     * @return the number of records delivered
+     */
+    public int upload(int maxChunks) throws IOException {
+        long start = nanoClock.getAsLong();
+        int sent = settleInFlight();
+        try {
+            for (int i = 0; i < maxChunks && inFlight == null; i++) {
+                if (!transport.isConnected() || (!chunkReady && !buildChunk())) {
+                    break;
+                }
+                if (!rateLimit.tryAcquire(chunkLength)) {
+                    throttled++;
+                    break;
+                }
+                Delivery delivery = new Delivery(chunkRecords, chunkRawBytes, chunkLength, nanoClock.getAsLong());
+                try {
+                    transport.publish(topic, chunk, chunkOffset, chunkLength, delivery);
+                } catch (Exception e) {
+                    publishFailures++;
+                    break;
+                }
+                inFlight = delivery;
+                int delivered = settleInFlight();
+                if (delivered == 0) {
+                    break;
+                }
+                sent += delivered;
+            }
+        } finally {
+            uploadNanos += nanoClock.getAsLong() - start;
+        }
+        return sent;
+    }
+
+    /**
+     * Builds the next chunk from the head of the queue.
+     *
+     * @return false if there is nothing to send
+     */
+    private boolean buildChunk() throws IOException {
+        while (queue.getPendingRecords() > 0) {
+            beginChunk();
+            int records = queue.peek(Integer.MAX_VALUE, addRecord);
+            if (records > 0) {
+                chunkOffset = finishChunk();
+                chunkLength = HEADER_RESERVE + compressedLength - chunkOffset;
+                chunkReady = true;
+                return true;
+            }
+            if (!oversized) {
+                break;
+            }
+            // A record that cannot fit even on its own would block the queue forever
+            queue.skip(1);
+            oversizedDropped++;
+        }
+        return false;
+    }
+
+    /**
+     * Removes the in-flight chunk's records from the queue once it is delivered. If
+     * it failed or timed out, the chunk stays ready to be sent again.
+     *
+     * @return the number of records delivered, 0 if none were
+     */
+    private int settleInFlight() throws IOException {
+        Delivery delivery = inFlight;
+        if (delivery == null) {
+            return 0;
+        }
+        int status = delivery.status;
+        if (status == Delivery.PENDING) {
+            if ((nanoClock.getAsLong() - delivery.publishedNanos) / 1_000_000 < ACK_TIMEOUT_MILLIS) {
+                return 0;
+            }
+            // Most likely the link dropped before the acknowledgement arrived
+            status = Delivery.FAILED;
+        }
+        inFlight = null;
+        if (status == Delivery.FAILED) {
+            publishFailures++;
+            return 0;
+        }
+        chunkReady = false;
+        queue.skip(delivery.records);
+        chunksSent++;
+        recordsSent += delivery.records;
+        rawBytesSent += delivery.rawBytes;
+        compressedBytesSent += delivery.length;
+        return delivery.records;
+    }
+
+    private void beginChunk() {
+        deflater.reset();
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+        compressedLength = 0;
+        unflushedBytes = 0;
+        chunkRecords = 0;
+        chunkRawBytes = 0;
+        oversized = false;
+    }
+
+    private boolean addRecord(byte[] record, int offset, int length) {
+        int prefixLength = writeVarint(length, varint, 0);
+        long added = prefixLength + length;
+        if (!fits(added)) {
+            if (unflushedBytes > 0) {
+                // Learn the exact compressed size before giving up on this chunk
+                deflate(Deflater.SYNC_FLUSH);
+                unflushedBytes = 0;
+            }
+            if (!fits(added)) {
+                oversized = chunkRecords == 0;
+                return false;
+            }
+        }
+        deflater.setInput(varint, 0, prefixLength);
+        deflate(Deflater.NO_FLUSH);
+        deflater.setInput(record, offset, length);
+        deflate(Deflater.NO_FLUSH);
+        unflushedBytes += added;
+        chunkRecords++;
+        chunkRawBytes += added;
+        return true;
+    }
+
+    /**
+     * True if the chunk is sure to stay within its limit after {@code added} more
+     * raw bytes, using zlib's worst case for input not yet flushed.
+     */
+    private boolean fits(long added) {
+        long pending = unflushedBytes + added;
+        long bound = compressedLength + pending + (pending >>> 12) * 5 + STREAM_OVERHEAD;
+        return bound <= maxCompressedBytes;
+    }
+
+    private void deflate(int flush) {
+        while (true) {
+            int space = maxCompressedBytes - compressedLength;
+            int written = deflater.deflate(chunk, HEADER_RESERVE + compressedLength, space, flush);
+            compressedLength += written;
+            boolean done = flush == Deflater.NO_FLUSH ? deflater.needsInput() : written < space;
+            if (done) {
+                return;
+            }
+            if (written == space) {
+                throw new IllegalStateException("Compressed chunk outgrew its bound");
+            }
+        }
+    }
+
+    /** Completes the zlib stream and writes the header; returns where the chunk starts. */
+    private int finishChunk() {
+        deflater.finish();
+        while (!deflater.finished()) {
+            int space = maxCompressedBytes - compressedLength;
+            if (space == 0) {
+                throw new IllegalStateException("Compressed chunk outgrew its bound");
+            }
+            compressedLength += deflater.deflate(chunk, HEADER_RESERVE + compressedLength, space);
+        }
+        byte[] header = new byte[HEADER_RESERVE];
+        header[0] = VERSION;
+        int headerLength = writeVarint(chunkRecords, header, 1);
+        headerLength = writeVarint(chunkRawBytes, header, headerLength);
+        int offset = HEADER_RESERVE - headerLength;
+        System.arraycopy(header, 0, chunk, offset, headerLength);
+        return offset;
+    }
+
+    /** Writes {@code value} as a varint at {@code position}; returns the position after it. */
+    private static int writeVarint(long value, byte[] out, int position) {
+        while ((value & ~0x7FL) != 0) {
+            out[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[position++] = (byte) value;
+        return position;
+    }
+
+    /**
+     * Splits a chunk back into its records, e.g. on the ingestion side.
+     *
+     * @param dictionary the preset dictionary the chunk was written with, or null
+     * @throws DataFormatException if the chunk is corrupt, truncated or needs another dictionary
+     */
+    public static List<byte[]> decodeChunk(byte[] payload, int offset, int length, byte[] dictionary)
+            throws DataFormatException {
+        int end = offset + length;
+        int[] position = {offset};
+        if (length < 3 || payload[position[0]++] != VERSION) {
+            throw new DataFormatException("Unsupported backlog chunk");
+        }
+        long count = readVarint(payload, position, end);
+        long rawLength = readVarint(payload, position, end);
+        if (rawLength > MAX_RAW_BYTES || count > rawLength) {
+            throw new DataFormatException("Implausible chunk header: " + count + " records, " + rawLength + " bytes");
+        }
+
+        byte[] raw = new byte[(int) rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(payload, position[0], end - position[0]);
+            int inflated = 0;
+            while (inflated < raw.length) {
+                int n = inflater.inflate(raw, inflated, raw.length - inflated);
+                if (n == 0) {
+                    if (inflater.needsDictionary() && dictionary != null) {
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.needsDictionary() || inflater.needsInput() || inflater.finished()) {
+                        throw new DataFormatException(inflater.needsDictionary()
+                                ? "Chunk needs a preset dictionary" : "Truncated chunk");
+                    }
+                }
+                inflated += n;
+            }
+        } finally {
+            inflater.end();
+        }
+
+        List<byte[]> records = new ArrayList<>((int) count);
+        int[] rawPosition = {0};
+        while (rawPosition[0] < raw.length) {
+            long recordLength = readVarint(raw, rawPosition, raw.length);
+            if (recordLength > raw.length - rawPosition[0]) {
+                throw new DataFormatException("Record runs past the end of the chunk");
+            }
+            byte[] record = new byte[(int) recordLength];
+            System.arraycopy(raw, rawPosition[0], record, 0, record.length);
+            rawPosition[0] += record.length;
+            records.add(record);
+        }
+        if (records.size() != count) {
+            throw new DataFormatException("Expected " + count + " records, found " + records.size());
+        }
+        return records;
+    }
+
+    private static long readVarint(byte[] data, int[] position, int end) throws DataFormatException {
+        long value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (position[0] >= end) {
+                throw new DataFormatException("Truncated varint");
+            }
+            int b = data[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new DataFormatException("Varint too long");
+    }
+
+    public long getChunksSent() {
+        return chunksSent;
+    }
+
+    public long getRecordsSent() {
+        return recordsSent;
+    }
+
+    /** Chunks that failed to publish or were not acknowledged in time; their records stayed queued. */
+    public long getPublishFailures() {
+        return publishFailures;
+    }
+
+    /** Times an upload stopped early because the rate limit refused the next chunk. */
+    public long getThrottledCount() {
+        return throttled;
+    }
+
+    /** Records dropped because they could not fit in a chunk on their own. */
+    public long getOversizedDropped() {
+        return oversizedDropped;
+    }
+
+    /** Uncompressed bytes per byte sent, or NaN before the first chunk. */
+    public double getCompressionRatio() {
+        return compressedBytesSent == 0 ? Double.NaN : (double) rawBytesSent / compressedBytesSent;
+    }
+
+    /** Records sent per second of time spent uploading, or NaN before the first chunk. */
+    public double getRecordsPerSecond() {
+        return recordsSent == 0 ? Double.NaN : recordsSent * 1e9 / Math.max(1, uploadNanos);
+    }
+
+    /** True while a published chunk is waiting for its delivery report. */
+    public boolean isAwaitingDelivery() {
+        return inFlight != null;
+    }
+
+    @Override
+    public void close() {
+        deflater.end();
+    }
+
+    /** A published chunk; its status is set by the transport, possibly on another thread. */
+    private static final class Delivery implements MqttTransport.DeliveryCallback {
+        static final int PENDING = 0;
+        static final int DELIVERED = 1;
+        static final int FAILED = 2;
+
+        final int records;
+        final long rawBytes;
+        final int length;
+        final long publishedNanos;
+        volatile int status = PENDING;
+
+        Delivery(int records, long rawBytes, int length, long publishedNanos) {
+            this.records = records;
+            this.rawBytes = rawBytes;
+            this.length = length;
+            this.publishedNanos = publishedNanos;
+        }
+
+        @Override
+        public void onDelivery(boolean delivered) {
+            status = delivered ? DELIVERED : FAILED;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "BacklogUploader{chunks=%d, records=%d, ratio=%.2f, recordsPerSec=%.0f, failures=%d, throttled=%d}",
+                chunksSent, recordsSent, getCompressionRatio(), getRecordsPerSecond(), publishFailures, throttled);
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.batterytempmonitor;
+
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * Collects samples into a single batch payload and publishes it as one MQTT
+ * message, so the radio wakes once per batch instead of once per sample.
+ *
+ * Samples are encoded by the {@link PayloadFormat} straight into the batch buffer.
+ * A batch is flushed when it holds {@code maxRecords} samples, when adding the
+ * next sample would exceed {@code maxBytes}, or when the oldest sample has waited
+ * {@code maxLatencyMillis}. The latency check runs on every {@link #publish} and
+ * {@link #flushIfDue} call, so callers on a fixed tick get a bounded delay.
+ * Samples that cannot be sent are handed to the {@link UndeliveredHandler} one by one.
+ */
+public final class BatchingPublisher {
+
+    /** Receives each sample of a batch that could not be published. */
+    public interface UndeliveredHandler {
+        void onUndelivered(MetricsSnapshot snapshot);
+    }
+
+    // Room left for the format's batch trailer, e.g. a closing bracket
+    private static final int TRAILER_RESERVE = 1;
+
+    private final MqttTransport transport;
+    private final String topic;
+    private final PayloadFormat format;
+    private final int maxRecords;
+    private final int maxBytes;
+    private long maxLatencyMillis;
+    private final LongSupplier clock;
+    private volatile UndeliveredHandler undeliveredHandler;
+    private volatile SelfMetrics selfMetrics;
+
+    private final PayloadBuffer batch;
+    private final MetricsSnapshot[] pending;
+    private int recordCount;
+    private long batchStartMillis;
+
+    private long firstPublishMillis = -1;
+    private long lastPublishMillis;
+    private long messagesPublished;
+    private long samplesPublished;
+    private long bytesPublished;
+    private long samplesUndelivered;
+
+    public BatchingPublisher(MqttTransport transport, String topic, PayloadFormat format,
+                             int maxRecords, int maxBytes, long maxLatencyMillis) {
+        this(transport, topic, format, maxRecords, maxBytes, maxLatencyMillis, System::currentTimeMillis);
+    }
+
+    BatchingPublisher(MqttTransport transport, String topic, PayloadFormat format,
+                      int maxRecords, int maxBytes, long maxLatencyMillis, LongSupplier clock) {
+        if (maxRecords <= 0 || maxBytes <= 2 || maxLatencyMillis < 0) {
+            throw new IllegalArgumentException("Invalid batch limits");
+        }
+        this.transport = transport;
+        this.topic = topic;
+        this.format = format;
+        this.maxRecords = maxRecords;
+        this.maxBytes = maxBytes;
+        this.maxLatencyMillis = maxLatencyMillis;
+        this.clock = clock;
+        this.batch = new PayloadBuffer(Math.min(maxBytes, 4096));
+        this.pending = new MetricsSnapshot[maxRecords];
+    }
+
+    public void setUndeliveredHandler(UndeliveredHandler handler) {
+        this.undeliveredHandler = handler;
+    }
+
+    /** Records encode and publish latencies and publish outcomes. */
+    public void setSelfMetrics(SelfMetrics selfMetrics) {
+        this.selfMetrics = selfMetrics;
+    }
+
+    /** Adds one sample to the current batch, flushing first or after as the limits require. */
+    public synchronized void publish(MetricsSnapshot snapshot) {
+        int mark = batch.length();
+        append(snapshot);
+        if (recordCount > 0 && batch.length() + TRAILER_RESERVE > maxBytes) {
+            // Did not fit: send what we had and start a new batch with this sample
+            batch.truncate(mark);
+            flush();
+            append(snapshot);
+        }
+        pending[recordCount++] = snapshot;
+
+        if (recordCount >= maxRecords || batch.length() + TRAILER_RESERVE >= maxBytes) {
+            flush();
+        } else {
+            flushIfDue();
+        }
+    }
+
+    /**
+     * Publishes what {@code filter} lets through of {@code sample}, or null if every
+     * metric was suppressed. A suppressed sample still runs the latency check, so a
+     * quiet device does not hold a partial batch until something changes.
+     */
+    public synchronized MetricsSnapshot publish(MetricsSnapshot sample, DeltaFilter filter) {
+        MetricsSnapshot snapshot = filter.filter(sample);
+        if (snapshot == null) {
+            flushIfDue();
+            return null;
+        }
+        publish(snapshot);
+        return snapshot;
+    }
+
+    private void append(MetricsSnapshot snapshot) {
+        long start = System.nanoTime();
+        if (recordCount == 0) {
+            batchStartMillis = clock.getAsLong();
+            format.beginBatch(batch);
+        }
+        format.appendRecord(snapshot, recordCount, batch);
+        SelfMetrics metrics = selfMetrics;
+        if (metrics != null) {
+            metrics.recordSince(SelfMetrics.Stage.ENCODE, start);
+        }
+    }
+
+    /** Changes the latency limit, e.g. to batch longer while saving power. Applies to the pending batch too. */
+    public synchronized void setMaxLatencyMillis(long maxLatencyMillis) {
+        if (maxLatencyMillis < 0) {
+            throw new IllegalArgumentException("maxLatencyMillis must not be negative: " + maxLatencyMillis);
+        }
+        this.maxLatencyMillis = maxLatencyMillis;
+    }
+
+    /** Flushes the pending batch if its oldest sample has waited at least the maximum latency. */
+    public synchronized void flushIfDue() {
+        if (recordCount > 0 && clock.getAsLong() - batchStartMillis >= maxLatencyMillis) {
+            flush();
+        }
+    }
+
+    /** Publishes whatever is pending, or hands it to the undelivered handler if that fails. */
+    public synchronized void flush() {
+        if (recordCount == 0) {
+            return;
+        }
+        format.endBatch(batch);
+        SelfMetrics metrics = selfMetrics;
+        try {
+            if (!transport.isConnected()) {
+                throw new IllegalStateException("MQTT transport is not connected");
+            }
+            long start = System.nanoTime();
+            transport.publish(topic, batch.array(), 0, batch.length());
+            if (metrics != null) {
+                metrics.recordSince(SelfMetrics.Stage.PUBLISH, start);
+                metrics.increment(SelfMetrics.Counter.BATCHES_PUBLISHED);
+                metrics.add(SelfMetrics.Counter.SAMPLES_PUBLISHED, recordCount);
+            }
+
+            long now = clock.getAsLong();
+            if (firstPublishMillis < 0) {
+                firstPublishMillis = now;
+            }
+            lastPublishMillis = now;
+            messagesPublished++;
+            samplesPublished += recordCount;
+            bytesPublished += batch.length();
+        } catch (Exception e) {
+            samplesUndelivered += recordCount;
+            if (metrics != null) {
+                metrics.increment(SelfMetrics.Counter.PUBLISH_FAILURES);
+            }
+            UndeliveredHandler handler = undeliveredHandler;
+            if (handler != null) {
+                for (int i = 0; i < recordCount; i++) {
+                    handler.onUndelivered(pending[i]);
+                }
+            }
+        } finally {
+            batch.reset();
+            Arrays.fill(pending, 0, recordCount, null);
+            recordCount = 0;
+        }
+    }
+
+    public synchronized int getPendingCount() {
+        return recordCount;
+    }
+
+    public synchronized long getMessagesPublished() {
+        return messagesPublished;
+    }
+
+    public synchronized long getSamplesPublished() {
+        return samplesPublished;
+    }
+
+    public synchronized long getBytesPublished() {
+        return bytesPublished;
+    }
+
+    public synchronized long getSamplesUndelivered() {
+        return samplesUndelivered;
+    }
+
+    /** Average MQTT messages per second between the first and the latest successful publish. */
+    public synchronized double getMessagesPerSecond() {
+        long elapsed = lastPublishMillis - firstPublishMillis;
+        if (messagesPublished < 2 || elapsed <= 0) {
+            return 0;
+        }
+        return (messagesPublished - 1) * 1000.0 / elapsed;
+    }
+
+    /** Average payload bytes sent per sample, including batch framing. */
+    public synchronized double getBytesPerSample() {
+        return samplesPublished == 0 ? 0 : (double) bytesPublished / samplesPublished;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BatchingPublisher{messages=" + messagesPublished
+                + ", samples=" + samplesPublished
+                + ", bytes=" + bytesPublished
+                + ", undelivered=" + samplesUndelivered
+                + ", pending=" + recordCount + '}';
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.batterytempmonitor;
+
+/**
+ * Reports {@link Metric#BATTERY_LEVEL} as a percentage from a {@link BatteryStateCache}.
+ * Nothing is reported until an update has carried a level.
+ */
+public class BatteryLevelSource implements MetricSource {
+    private final BatteryStateCache battery;
+    private final long intervalMillis;
+
+    public BatteryLevelSource(BatteryStateCache battery, long intervalMillis) {
+        this.battery = battery;
+        this.intervalMillis = intervalMillis;
+    }
+
+    @Override
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    @Override
+    public void sample(MetricsSnapshot.Builder out) {
+        if (battery.hasLevel()) {
+            out.set(Metric.BATTERY_LEVEL, battery.getLevelPercent());
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.batterytempmonitor;
+
+/**
+ * Latest battery state, written whenever the system reports a change and read by
+ * the battery metric sources on every tick.
+ *
+ * Temperature, level and charging state are packed into a single volatile long,
+ * so writers and readers never lock, a read is one field load, and a reader can
+ * never see the temperature of one update with the level of another. An update
+ * that lacks a value keeps the previous one; a value that has never arrived reads
+ * as NaN rather than as a plausible 0.
+ */
+public final class BatteryStateCache {
+    /** Pass as the temperature when the broadcast has no {@code EXTRA_TEMPERATURE}. */
+    public static final int UNKNOWN_TEMPERATURE = Integer.MIN_VALUE;
+
+    private static final long HAS_TEMPERATURE = 1L << 48;
+    private static final long CHARGING = 1L << 49;
+    private static final long HAS_LEVEL = 1L << 50;
+    private static final int LEVEL_SHIFT = 16;
+    private static final int LEVEL_BITS = 0xFFFF;
+    private static final long TEMPERATURE_BITS = 0xFFFFL;
+
+    // bits 0-15: temperature in tenths of a degree (signed), 16-31: level in hundredths
+    // of a percent, bit 48: temperature known, bit 49: plugged in, bit 50: level known
+    private volatile long state;
+
+    /**
+     * Stores a battery update from the raw {@code ACTION_BATTERY_CHANGED} extras.
+     * A missing temperature ({@link #UNKNOWN_TEMPERATURE}) keeps the previous
+     * temperature, and a missing level or scale (-1) keeps the previous level.
+     *
+     * @param temperatureTenths {@code EXTRA_TEMPERATURE}, in tenths of a degree Celsius
+     * @param charging          true if {@code EXTRA_PLUGGED} reports any power source
+     */
+    public void update(int temperatureTenths, int level, int scale, boolean charging) {
+        long previous = state;
+        long next = charging ? CHARGING : 0;
+        if (level >= 0 && scale > 0) {
+            next |= HAS_LEVEL | Math.min((long) level * 10_000 / scale, 10_000) << LEVEL_SHIFT;
+        } else {
+            next |= previous & (HAS_LEVEL | (long) LEVEL_BITS << LEVEL_SHIFT);
+        }
+        if (temperatureTenths != UNKNOWN_TEMPERATURE) {
+            int clamped = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, temperatureTenths));
+            next |= HAS_TEMPERATURE | (clamped & TEMPERATURE_BITS);
+        } else {
+            next |= previous & (HAS_TEMPERATURE | TEMPERATURE_BITS);
+        }
+        state = next;
+    }
+
+    /** False until an update has carried a temperature. */
+    public boolean hasTemperature() {
+        return (state & HAS_TEMPERATURE) != 0;
+    }
+
+    /** False until an update has carried a level. */
+    public boolean hasLevel() {
+        return (state & HAS_LEVEL) != 0;
+    }
+
+    /** Battery temperature in degrees Celsius, or NaN if none has been reported. */
+    public double getTemperatureCelsius() {
+        return temperatureOf(state);
+    }
+
+    /** Battery level in percent, or NaN if none has been reported. */
+    public double getLevelPercent() {
+        return levelOf(state);
+    }
+
+    /** True if the device was plugged in at the last update. */
+    public boolean isCharging() {
+        return (state & CHARGING) != 0;
+    }
+
+    /** The packed state, for reading both values from the same update. */
+    long getState() {
+        return state;
+    }
+
+    static double temperatureOf(long state) {
+        return (state & HAS_TEMPERATURE) == 0 ? Double.NaN : (short) state / 10.0;
+    }
+
+    static double levelOf(long state) {
+        return (state & HAS_LEVEL) == 0 ? Double.NaN : ((state >>> LEVEL_SHIFT) & LEVEL_BITS) / 100.0;
+    }
+}
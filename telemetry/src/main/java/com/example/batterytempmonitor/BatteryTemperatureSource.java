@@ -0,0 +1,27 @@
+package com.example.batterytempmonitor;
+
+/**
+ * Reports {@link Metric#BATTERY_TEMP} in degrees Celsius from a {@link BatteryStateCache}.
+ * Nothing is reported until an update has carried a temperature.
+ */
+public class BatteryTemperatureSource implements MetricSource {
+    private final BatteryStateCache battery;
+    private final long intervalMillis;
+
+    public BatteryTemperatureSource(BatteryStateCache battery, long intervalMillis) {
+        this.battery = battery;
+        this.intervalMillis = intervalMillis;
+    }
+
+    @Override
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    @Override
+    public void sample(MetricsSnapshot.Builder out) {
+        if (battery.hasTemperature()) {
+            out.set(Metric.BATTERY_TEMP, battery.getTemperatureCelsius());
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.batterytempmonitor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads frames written by {@link BinaryPayloadFormat}. Depends only on
+ * {@link Metric} and {@link MetricsSnapshot}, so ingestion services can use it
+ * as-is. Metrics with wire ids unknown to this build are skipped.
+ */
+public final class BinaryPayloadDecoder {
+
+    /** One decoded batch. */
+    public static final class Frame {
+        private final String deviceId;
+        private final List<MetricsSnapshot> records;
+
+        Frame(String deviceId, List<MetricsSnapshot> records) {
+            this.deviceId = deviceId;
+            this.records = Collections.unmodifiableList(records);
+        }
+
+        public String getDeviceId() {
+            return deviceId;
+        }
+
+        public List<MetricsSnapshot> getRecords() {
+            return records;
+        }
+    }
+
+    private final byte[] data;
+    private final int end;
+    private int position;
+
+    private BinaryPayloadDecoder(byte[] data, int offset, int length) {
+        this.data = data;
+        this.position = offset;
+        this.end = offset + length;
+    }
+
+    public static Frame decode(byte[] payload) {
+        return decode(payload, 0, payload.length);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the frame is truncated, malformed or of an unknown version
+     */
+    public static Frame decode(byte[] payload, int offset, int length) {
+        return new BinaryPayloadDecoder(payload, offset, length).readFrame();
+    }
+
+    private Frame readFrame() {
+        int version = readByte();
+        if (version != BinaryPayloadFormat.VERSION) {
+            throw new IllegalArgumentException("Unsupported binary payload version " + version);
+        }
+        readByte(); // flags, reserved
+        int idLength = (int) readVarint();
+        if (idLength < 0 || idLength > end - position) {
+            throw new IllegalArgumentException("Bad device id length " + idLength);
+        }
+        String deviceId = new String(data, position, idLength, StandardCharsets.UTF_8);
+        position += idLength;
+
+        List<MetricsSnapshot> records = new ArrayList<>();
+        long timestamp = 0;
+        while (position < end) {
+            timestamp += unzigzag(readVarint());
+            int flags = readByte();
+            long mask = readVarint();
+            MetricsSnapshot.Builder builder = new MetricsSnapshot.Builder();
+            for (int wireId = 0; wireId <= Metric.MAX_WIRE_ID; wireId++) {
+                if ((mask & (1L << wireId)) != 0) {
+                    Metric metric = Metric.fromWireId(wireId);
+                    double value = readScaled(metric);
+                    if (metric != null) {
+                        builder.set(metric, value);
+                    }
+                }
+            }
+            WindowStats window = (flags & BinaryPayloadFormat.FLAG_WINDOW) != 0 ? readWindow(mask) : null;
+            records.add(builder.build(timestamp, window, (flags & BinaryPayloadFormat.FLAG_DELTA) != 0));
+        }
+        return new Frame(deviceId, records);
+    }
+
+    private WindowStats readWindow(long mask) {
+        long durationMillis = readVarint();
+        int[] counts = new int[Metric.COUNT];
+        double[] mins = new double[Metric.COUNT];
+        double[] maxs = new double[Metric.COUNT];
+        double[] p95s = new double[Metric.COUNT];
+        Arrays.fill(mins, Double.NaN);
+        Arrays.fill(maxs, Double.NaN);
+        Arrays.fill(p95s, Double.NaN);
+        for (int wireId = 0; wireId <= Metric.MAX_WIRE_ID; wireId++) {
+            if ((mask & (1L << wireId)) == 0) {
+                continue;
+            }
+            Metric metric = Metric.fromWireId(wireId);
+            int count = (int) readVarint();
+            if (count == 0) {
+                continue;
+            }
+            double min = readScaled(metric);
+            double max = readScaled(metric);
+            double p95 = readScaled(metric);
+            if (metric != null) {
+                int m = metric.ordinal();
+                counts[m] = count;
+                mins[m] = min;
+                maxs[m] = max;
+                p95s[m] = p95;
+            }
+        }
+        return new WindowStats(durationMillis, counts, mins, maxs, p95s);
+    }
+
+    /** Reads a scaled value; for metrics unknown to this build the raw value is skipped. */
+    private double readScaled(Metric metric) {
+        long scaled = unzigzag(readVarint());
+        return metric == null ? Double.NaN
+                : (double) scaled / BinaryPayloadFormat.POWERS_OF_TEN[metric.getDecimals()];
+    }
+
+    private int readByte() {
+        if (position >= end) {
+            throw new IllegalArgumentException("Truncated binary payload");
+        }
+        return data[position++] & 0xFF;
+    }
+
+    private long readVarint() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.batterytempmonitor;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary batch encoding. Version 1 layout, all integers as LEB128 varints:
+ *
+ * <pre>
+ * frame   := version:u8 flags:u8 deviceIdLength:varint deviceId:utf8 record*
+ * record  := timestampDelta:zigzag flags:u8 metricMask:varint value:zigzag* [window]
+ * window  := durationMillis:varint (count:varint [min:zigzag max:zigzag p95:zigzag])*
+ * </pre>
+ *
+ * The device id is sent once per batch instead of once per sample. The first
+ * record's timestamp delta is relative to 0 (i.e. absolute epoch milliseconds),
+ * each following one is relative to the previous record. {@code metricMask} has
+ * bit {@link Metric#getWireId()} set for every metric present, and the values
+ * follow in wire id order, each scaled by 10^{@link Metric#getDecimals()} and
+ * rounded. Record flag {@link #FLAG_WINDOW} marks a window snapshot from
+ * high-frequency mode: the values are window means and a window block follows with
+ * one entry per metric in the mask; entries with a count of 0 (values that were not
+ * aggregated) have no min, max or p95. Record flag {@link #FLAG_DELTA} marks a
+ * record from {@link DeltaFilter} that holds only the metrics that changed.
+ * Other flag bits are reserved and written as 0. The first byte is never
+ * '[' or '{', so receivers can tell binary frames from JSON ones.
+ *
+ * {@link BinaryPayloadDecoder} reads this format.
+ */
+public final class BinaryPayloadFormat implements PayloadFormat {
+    public static final int VERSION = 1;
+    public static final int FLAG_WINDOW = 0x01;
+    public static final int FLAG_DELTA = 0x02;
+
+    static final long[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000};
+
+    private final byte[] deviceId;
+    private final Metric[] byWireId;
+    private long previousTimestamp;
+
+    public BinaryPayloadFormat(String deviceId) {
+        this.deviceId = deviceId.getBytes(StandardCharsets.UTF_8);
+        this.byWireId = new Metric[Metric.MAX_WIRE_ID + 1];
+        for (Metric metric : Metric.ALL) {
+            byWireId[metric.getWireId()] = metric;
+        }
+    }
+
+    @Override
+    public void beginBatch(PayloadBuffer out) {
+        out.write(VERSION);
+        out.write(0);
+        writeVarint(deviceId.length, out);
+        out.write(deviceId, 0, deviceId.length);
+        previousTimestamp = 0;
+    }
+
+    @Override
+    public void appendRecord(MetricsSnapshot snapshot, int index, PayloadBuffer out) {
+        long timestamp = snapshot.getTimestampMillis();
+        writeVarint(zigzag(timestamp - previousTimestamp), out);
+        previousTimestamp = timestamp;
+        WindowStats window = snapshot.getWindow();
+        int flags = window != null ? FLAG_WINDOW : 0;
+        if (snapshot.isDelta()) {
+            flags |= FLAG_DELTA;
+        }
+        out.write(flags);
+
+        long mask = 0;
+        for (Metric metric : byWireId) {
+            if (metric != null && isEncodable(snapshot.get(metric))) {
+                mask |= 1L << metric.getWireId();
+            }
+        }
+        writeVarint(mask, out);
+        for (Metric metric : byWireId) {
+            if (metric != null && (mask & (1L << metric.getWireId())) != 0) {
+                writeScaled(snapshot.get(metric), metric, out);
+            }
+        }
+
+        if (window != null) {
+            writeVarint(window.getDurationMillis(), out);
+            for (Metric metric : byWireId) {
+                if (metric != null && (mask & (1L << metric.getWireId())) != 0) {
+                    writeVarint(window.getCount(metric), out);
+                    if (!window.has(metric)) {
+                        continue;
+                    }
+                    writeScaled(window.getMin(metric), metric, out);
+                    writeScaled(window.getMax(metric), metric, out);
+                    writeScaled(window.getP95(metric), metric, out);
+                }
+            }
+        }
+    }
+
+    private static void writeScaled(double value, Metric metric, PayloadBuffer out) {
+        writeVarint(zigzag(Math.round(value * POWERS_OF_TEN[metric.getDecimals()])), out);
+    }
+
+    @Override
+    public void endBatch(PayloadBuffer out) {
+        // Records run to the end of the frame
+    }
+
+    private static boolean isEncodable(double value) {
+        return !Double.isNaN(value) && !Double.isInfinite(value);
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static void writeVarint(long value, PayloadBuffer out) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
@@ -0,0 +1,282 @@
+package com.example.batterytempmonitor;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps an MQTT connection up, retrying with {@link ExponentialBackoff} after
+ * every failed attempt or lost connection.
+ *
+ * The state machine is {@link State#DISCONNECTED} until {@link #start()}, then
+ * cycles through {@link State#CONNECTING}, {@link State#CONNECTED} and
+ * {@link State#WAITING_TO_RETRY}. Transitions are made under the manager's lock
+ * and every attempt has its own generation, so late callbacks from an abandoned
+ * or timed-out attempt are ignored. An attempt that reports nothing within the
+ * connect timeout counts as failed.
+ *
+ * {@link #connectNow()} skips the remaining backoff, e.g. when the network comes
+ * back, and the listener's {@link Listener#onConnected()} runs after every
+ * successful connect so that queued data can be drained. Listener calls are made
+ * in order on the manager's thread, never under its lock.
+ */
+public final class ConnectionManager {
+
+    public enum State {
+        DISCONNECTED,
+        CONNECTING,
+        CONNECTED,
+        WAITING_TO_RETRY
+    }
+
+    /** Receives state changes on the manager's thread. */
+    public interface Listener {
+        /** {@code cause} is set when a failure led to the new state. */
+        void onStateChanged(State state, Throwable cause);
+
+        /** Called after each successful connect, once the state is {@link State#CONNECTED}. */
+        default void onConnected() {
+        }
+    }
+
+    static final String THREAD_NAME = "mqtt-connection";
+
+    private final MqttConnector connector;
+    private final ExponentialBackoff backoff;
+    private final long connectTimeoutMillis;
+    private final ScheduledExecutorService scheduler;
+    private final LongSupplier clock;
+    private final boolean ownsScheduler;
+    private final Listener listener;
+
+    // Guarded by this
+    private volatile State state = State.DISCONNECTED;
+    private boolean started;
+    private long generation;
+    private int consecutiveFailures;
+    private long attemptStartMillis;
+    private ScheduledFuture<?> pending;
+
+    // Reconnect budget, guarded by this
+    private long attempts;
+    private long failures;
+    private long losses;
+    private long connects;
+    private long totalRetryDelayMillis;
+    private long lastConnectMillis = -1;
+
+    public ConnectionManager(MqttConnector connector, ExponentialBackoff backoff, long connectTimeoutMillis,
+                             Listener listener) {
+        this(connector, backoff, connectTimeoutMillis, listener, newScheduler(), System::currentTimeMillis, true);
+    }
+
+    /** @param scheduler must run tasks one at a time, in order */
+    ConnectionManager(MqttConnector connector, ExponentialBackoff backoff, long connectTimeoutMillis,
+                      Listener listener, ScheduledExecutorService scheduler, LongSupplier clock) {
+        this(connector, backoff, connectTimeoutMillis, listener, scheduler, clock, false);
+    }
+
+    private ConnectionManager(MqttConnector connector, ExponentialBackoff backoff, long connectTimeoutMillis,
+                              Listener listener, ScheduledExecutorService scheduler, LongSupplier clock,
+                              boolean ownsScheduler) {
+        if (connectTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("Connect timeout must be positive: " + connectTimeoutMillis);
+        }
+        this.connector = connector;
+        this.backoff = backoff;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.listener = listener;
+        this.scheduler = scheduler;
+        this.clock = clock;
+        this.ownsScheduler = ownsScheduler;
+    }
+
+    private static ScheduledExecutorService newScheduler() {
+        return Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /** Safe to call from any thread, e.g. a publisher checking before each batch. */
+    public boolean isConnected() {
+        return state == State.CONNECTED;
+    }
+
+    /** Starts connecting, unless already started. */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        consecutiveFailures = 0;
+        scheduleAttempt(0);
+    }
+
+    /**
+     * Retries straight away if the manager is waiting out a backoff delay, and
+     * resets the backoff. Call when conditions change for the better, such as a
+     * network becoming available.
+     */
+    public synchronized void connectNow() {
+        if (!started || state != State.WAITING_TO_RETRY) {
+            return;
+        }
+        cancelPending();
+        consecutiveFailures = 0;
+        scheduleAttempt(0);
+    }
+
+    /** Closes the connection and stops retrying until {@link #start()} is called again. */
+    public void stop() {
+        synchronized (this) {
+            if (!started) {
+                return;
+            }
+            started = false;
+            generation++;
+            cancelPending();
+            setState(State.DISCONNECTED, null);
+        }
+        connector.disconnect();
+    }
+
+    /** Stops and releases the manager's thread. */
+    public void shutdown() {
+        stop();
+        if (ownsScheduler) {
+            scheduler.shutdown();
+        }
+    }
+
+    private void scheduleAttempt(long delayMillis) {
+        long attemptGeneration = ++generation;
+        pending = scheduler.schedule(() -> attempt(attemptGeneration), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void attempt(long attemptGeneration) {
+        synchronized (this) {
+            if (!started || attemptGeneration != generation) {
+                return;
+            }
+            attempts++;
+            attemptStartMillis = clock.getAsLong();
+            setState(State.CONNECTING, null);
+            pending = scheduler.schedule(() -> onDisconnected(attemptGeneration,
+                            new TimeoutException("No connection after " + connectTimeoutMillis + " ms")),
+                    connectTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        try {
+            connector.connect(new MqttConnector.Callback() {
+                @Override
+                public void onConnected() {
+                    ConnectionManager.this.onConnected(attemptGeneration);
+                }
+
+                @Override
+                public void onDisconnected(Throwable cause) {
+                    ConnectionManager.this.onDisconnected(attemptGeneration, cause);
+                }
+            });
+        } catch (Exception e) {
+            onDisconnected(attemptGeneration, e);
+        }
+    }
+
+    private void onConnected(long attemptGeneration) {
+        synchronized (this) {
+            if (attemptGeneration != generation || state != State.CONNECTING) {
+                return;
+            }
+            cancelPending();
+            connects++;
+            consecutiveFailures = 0;
+            lastConnectMillis = clock.getAsLong() - attemptStartMillis;
+            setState(State.CONNECTED, null);
+            scheduler.execute(listener::onConnected);
+        }
+    }
+
+    private void onDisconnected(long attemptGeneration, Throwable cause) {
+        synchronized (this) {
+            if (attemptGeneration != generation || !started) {
+                return;
+            }
+            cancelPending();
+            if (state == State.CONNECTED) {
+                losses++;
+            } else {
+                failures++;
+            }
+            long delay = backoff.nextDelayMillis(consecutiveFailures++);
+            totalRetryDelayMillis += delay;
+            setState(State.WAITING_TO_RETRY, cause);
+            // Release whatever the failed attempt left behind before the next one. Queued on the
+            // manager's thread ahead of the attempt, so even a zero delay cannot overtake it, and
+            // never called from inside the client library's own callback.
+            scheduler.execute(connector::disconnect);
+            scheduleAttempt(delay);
+        }
+    }
+
+    private void setState(State newState, Throwable cause) {
+        state = newState;
+        scheduler.execute(() -> listener.onStateChanged(newState, cause));
+    }
+
+    private void cancelPending() {
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+    }
+
+    /** Connection attempts made so far. */
+    public synchronized long getAttemptCount() {
+        return attempts;
+    }
+
+    /** Attempts that failed or timed out. */
+    public synchronized long getFailureCount() {
+        return failures;
+    }
+
+    /** Established connections that were later lost. */
+    public synchronized long getLossCount() {
+        return losses;
+    }
+
+    public synchronized long getConnectCount() {
+        return connects;
+    }
+
+    /** Failures since the last successful connect; the next backoff grows with it. */
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /** Sum of all backoff delays so far, i.e. time spent deliberately offline. */
+    public synchronized long getTotalRetryDelayMillis() {
+        return totalRetryDelayMillis;
+    }
+
+    /** How long the last successful attempt took to connect, or -1 if none has. */
+    public synchronized long getLastConnectMillis() {
+        return lastConnectMillis;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ConnectionManager{state=" + state + ", attempts=" + attempts + ", failures=" + failures
+                + ", losses=" + losses + ", connects=" + connects + ", retryDelayMs=" + totalRetryDelayMillis
+                + ", lastConnectMs=" + lastConnectMillis + '}';
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.batterytempmonitor;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * Computes CPU utilisation from the difference between two reads of {@code /proc/stat}.
+ *
+ * The file is kept open and re-read from the start into a reused buffer, and the
+ * counters of the previous read are kept in primitive arrays, so a steady-state
+ * {@link #sample()} does not allocate. Usage is NaN until two reads have been
+ * made, and for a core that was offline, or whose counters went backwards
+ * (e.g. after being hot-plugged), during the last interval.
+ * Not thread-safe; used on the collector thread.
+ */
+public final class CpuSampler implements Closeable {
+    private static final int INITIAL_BUFFER_BYTES = 4096;
+
+    private final File file;
+    private final ProcStatParser parser;
+    private RandomAccessFile input;
+    private byte[] buffer = new byte[INITIAL_BUFFER_BYTES];
+
+    private long[] previousBusy = new long[0];
+    private long[] previousTotal = new long[0];
+    private boolean[] previousPresent = new boolean[0];
+    private double[] usage = new double[0];
+    private int rows;
+
+    public CpuSampler(File file) {
+        this.file = file;
+        this.parser = new ProcStatParser(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Reads the file and updates the usage figures.
+     *
+     * @throws IOException if the file cannot be read; on Android 8 and later
+     *         {@code /proc/stat} is not readable by most apps
+     */
+    public void sample() throws IOException {
+        int length = read();
+        while (!parser.parse(buffer, length) && length == buffer.length) {
+            // The cpu block did not fit; grow once and read again
+            buffer = new byte[buffer.length * 2];
+            length = read();
+        }
+
+        int count = parser.getRowCount();
+        if (count > previousTotal.length) {
+            previousBusy = Arrays.copyOf(previousBusy, count);
+            previousTotal = Arrays.copyOf(previousTotal, count);
+            previousPresent = Arrays.copyOf(previousPresent, count);
+            usage = Arrays.copyOf(usage, count);
+        }
+        for (int row = 0; row < Math.max(count, rows); row++) {
+            boolean present = parser.isPresent(row);
+            if (!present) {
+                usage[row] = Double.NaN;
+                previousPresent[row] = false;
+                continue;
+            }
+            long busy = parser.getBusy(row);
+            long total = parser.getTotal(row);
+            long busyDelta = busy - previousBusy[row];
+            long totalDelta = total - previousTotal[row];
+            usage[row] = previousPresent[row] && totalDelta > 0 && busyDelta >= 0 && busyDelta <= totalDelta
+                    ? 100.0 * busyDelta / totalDelta : Double.NaN;
+            previousBusy[row] = busy;
+            previousTotal[row] = total;
+            previousPresent[row] = true;
+        }
+        rows = count;
+    }
+
+    private int read() throws IOException {
+        if (input == null) {
+            input = new RandomAccessFile(file, "r");
+        }
+        input.seek(0);
+        int length = 0;
+        while (length < buffer.length) {
+            int n = input.read(buffer, length, buffer.length - length);
+            if (n < 0) {
+                break;
+            }
+            length += n;
+        }
+        return length;
+    }
+
+    /** Overall utilisation in percent over the last interval, or NaN. */
+    public double getUsage() {
+        return rows == 0 ? Double.NaN : usage[0];
+    }
+
+    /** Number of cores seen, including offline cores below the highest online one. */
+    public int getCoreCount() {
+        return Math.max(rows - 1, 0);
+    }
+
+    /** Utilisation of {@code core} in percent over the last interval, or NaN. */
+    public double getCoreUsage(int core) {
+        return core + 1 < rows ? usage[core + 1] : Double.NaN;
+    }
+
+    /** Highest utilisation of any single core, or NaN if no core has a value. */
+    public double getMaxCoreUsage() {
+        double max = Double.NaN;
+        for (int row = 1; row < rows; row++) {
+            if (!Double.isNaN(usage[row]) && (Double.isNaN(max) || usage[row] > max)) {
+                max = usage[row];
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (input != null) {
+            input.close();
+            input = null;
+        }
+    }
+}
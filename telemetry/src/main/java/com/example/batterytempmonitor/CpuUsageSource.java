@@ -0,0 +1,51 @@
+package com.example.batterytempmonitor;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Reports {@link Metric#CPU_USAGE} and {@link Metric#CPU_MAX_CORE_USAGE} from
+ * {@code /proc/stat} via {@link CpuSampler}.
+ *
+ * Since Android 8 most apps may not read {@code /proc/stat}. The first failure is
+ * reported to the collector, after which the source stops trying and the CPU
+ * metrics stay absent instead of producing an error on every tick.
+ */
+public class CpuUsageSource implements MetricSource {
+    private static final File PROC_STAT = new File("/proc/stat");
+
+    private final CpuSampler sampler;
+    private final long intervalMillis;
+    private boolean unavailable;
+
+    public CpuUsageSource(long intervalMillis) {
+        this(PROC_STAT, intervalMillis);
+    }
+
+    CpuUsageSource(File statFile, long intervalMillis) {
+        this.sampler = new CpuSampler(statFile);
+        this.intervalMillis = intervalMillis;
+    }
+
+    @Override
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    @Override
+    public void sample(MetricsSnapshot.Builder out) throws IOException {
+        if (unavailable) {
+            return;
+        }
+        try {
+            sampler.sample();
+        } catch (IOException e) {
+            unavailable = true;
+            sampler.close();
+            throw e;
+        }
+        // NaN on the first tick, which only establishes the baseline
+        out.set(Metric.CPU_USAGE, sampler.getUsage())
+                .set(Metric.CPU_MAX_CORE_USAGE, sampler.getMaxCoreUsage());
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.batterytempmonitor;
+
+/**
+ * Threshold policy over battery level, charging, temperature and link quality.
+ *
+ * Every threshold has a separate exit value: a mode is entered at one level and
+ * only left once conditions have recovered past a second one, so readings that
+ * hover around a threshold do not make the mode flap. Charging lifts the battery
+ * level conditions; heat applies regardless.
+ */
+public final class DefaultSamplingPolicy implements SamplingPolicy {
+    static final double CRITICAL_LEVEL = 10;
+    static final double CRITICAL_EXIT_LEVEL = 15;
+    static final double SAVER_LEVEL = 20;
+    static final double SAVER_EXIT_LEVEL = 25;
+    static final double HOT_TEMPERATURE = 45;
+    static final double HOT_EXIT_TEMPERATURE = 42;
+    static final double WARM_TEMPERATURE = 40;
+    static final double WARM_EXIT_TEMPERATURE = 38;
+    static final double FAST_MAX_TEMPERATURE = 35;
+    static final double FAST_EXIT_TEMPERATURE = 37;
+
+    @Override
+    public SamplingMode select(DeviceConditions c, SamplingMode current) {
+        boolean inCritical = current == SamplingMode.CRITICAL;
+        if (lowBattery(c, inCritical ? CRITICAL_EXIT_LEVEL : CRITICAL_LEVEL)
+                || atLeast(c.getTemperature(), inCritical ? HOT_EXIT_TEMPERATURE : HOT_TEMPERATURE)) {
+            return SamplingMode.CRITICAL;
+        }
+
+        // Coming down from critical passes through the saver band
+        boolean inSaver = current == SamplingMode.SAVER || inCritical;
+        if (lowBattery(c, inSaver ? SAVER_EXIT_LEVEL : SAVER_LEVEL)
+                || atLeast(c.getTemperature(), inSaver ? WARM_EXIT_TEMPERATURE : WARM_TEMPERATURE)
+                || c.getLink() == LinkQuality.POOR) {
+            return SamplingMode.SAVER;
+        }
+
+        double fastLimit = current == SamplingMode.FAST ? FAST_EXIT_TEMPERATURE : FAST_MAX_TEMPERATURE;
+        if (c.isCharging() && c.getLink() == LinkQuality.UNMETERED && !atLeast(c.getTemperature(), fastLimit)) {
+            return SamplingMode.FAST;
+        }
+        return SamplingMode.NORMAL;
+    }
+
+    private static boolean lowBattery(DeviceConditions c, double threshold) {
+        return !c.isCharging() && c.getBatteryLevel() <= threshold;
+    }
+
+    // False for NaN, so an unknown temperature never triggers a mode
+    private static boolean atLeast(double value, double threshold) {
+        return value >= threshold;
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.batterytempmonitor;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Change-detection stage between the collector and the publisher.
+ *
+ * Each metric has a deadband: a new value is only sent if it differs from the last
+ * <em>sent</em> value by more than {@code max(absolute, relative * |last|)}, so slow
+ * drift is still reported once it adds up. Records that pass carry only the
+ * changed metrics and are marked as deltas; if nothing changed the record is
+ * dropped. Every {@code heartbeatMillis} a full keyframe is sent instead, which
+ * doubles as a liveness signal and lets the twin resync after lost deltas.
+ * Keyframes also carry the cumulative suppression ratio as
+ * {@link Metric#DELTA_SUPPRESSION}. Metrics marked {@link #setKeyframeOnly keyframe-only},
+ * such as cumulative byte counters that change on every tick, are left out of deltas.
+ *
+ * Not thread-safe; used on the collector thread.
+ */
+public final class DeltaFilter {
+    private final long heartbeatMillis;
+    private final double[] absoluteBands = new double[Metric.COUNT];
+    private final double[] relativeBands = new double[Metric.COUNT];
+    private final boolean[] keyframeOnly = new boolean[Metric.COUNT];
+    private final double[] lastSent = new double[Metric.COUNT];
+    private long lastKeyframeMillis;
+    private boolean keyframeDue = true;
+
+    private long fieldsOffered;
+    private long fieldsSent;
+    private long recordsSuppressed;
+
+    public DeltaFilter(long heartbeatMillis) {
+        if (heartbeatMillis <= 0) {
+            throw new IllegalArgumentException("heartbeatMillis must be positive: " + heartbeatMillis);
+        }
+        this.heartbeatMillis = heartbeatMillis;
+        Arrays.fill(lastSent, Double.NaN);
+    }
+
+    /**
+     * Sets the deadband of {@code metric}. With both bands at 0 (the default)
+     * any change is sent and only exact repeats are suppressed.
+     */
+    public DeltaFilter setDeadband(Metric metric, double absolute, double relative) {
+        if (absolute < 0 || relative < 0) {
+            throw new IllegalArgumentException("Deadbands must not be negative");
+        }
+        absoluteBands[metric.ordinal()] = absolute;
+        relativeBands[metric.ordinal()] = relative;
+        return this;
+    }
+
+    /**
+     * Sends {@code metric} on keyframes only. Meant for cumulative counters, whose
+     * value between keyframes follows from the rates that are sent as deltas.
+     */
+    public DeltaFilter setKeyframeOnly(Metric metric) {
+        keyframeOnly[metric.ordinal()] = true;
+        return this;
+    }
+
+    /** Makes the next record a keyframe, e.g. after reconnecting. */
+    public void requestKeyframe() {
+        keyframeDue = true;
+    }
+
+    /**
+     * Returns what should be published for {@code snapshot}: a keyframe, a delta
+     * holding only the changed metrics, or null if nothing changed.
+     */
+    public MetricsSnapshot filter(MetricsSnapshot snapshot) {
+        long now = snapshot.getTimestampMillis();
+        int offered = 0;
+        for (Metric metric : Metric.ALL) {
+            if (metric != Metric.DELTA_SUPPRESSION && snapshot.has(metric)) {
+                offered++;
+            }
+        }
+        fieldsOffered += offered;
+
+        if (keyframeDue || now - lastKeyframeMillis >= heartbeatMillis || now < lastKeyframeMillis) {
+            keyframeDue = false;
+            lastKeyframeMillis = now;
+            MetricsSnapshot.Builder keyframe = new MetricsSnapshot.Builder();
+            for (Metric metric : Metric.ALL) {
+                double value = snapshot.get(metric);
+                lastSent[metric.ordinal()] = value;
+                if (!Double.isNaN(value)) {
+                    keyframe.set(metric, value);
+                }
+            }
+            fieldsSent += offered;
+            keyframe.set(Metric.DELTA_SUPPRESSION, getSuppressionRatio() * 100);
+            return keyframe.build(now, snapshot.getWindow(), false);
+        }
+
+        MetricsSnapshot.Builder delta = null;
+        for (Metric metric : Metric.ALL) {
+            int m = metric.ordinal();
+            if (metric == Metric.DELTA_SUPPRESSION || keyframeOnly[m] || !snapshot.has(metric)) {
+                continue;
+            }
+            double value = snapshot.get(metric);
+            if (!changed(m, value)) {
+                continue;
+            }
+            if (delta == null) {
+                delta = new MetricsSnapshot.Builder();
+            }
+            delta.set(metric, value);
+            lastSent[m] = value;
+            fieldsSent++;
+        }
+        if (delta == null) {
+            recordsSuppressed++;
+            return null;
+        }
+        return delta.build(now, snapshot.getWindow(), true);
+    }
+
+    private boolean changed(int m, double value) {
+        double last = lastSent[m];
+        if (Double.isNaN(last)) {
+            return true;
+        }
+        double band = Math.max(absoluteBands[m], relativeBands[m] * Math.abs(last));
+        double difference = Math.abs(value - last);
+        return band == 0 ? difference != 0 : difference > band;
+    }
+
+    /** Fraction of offered metric values that were not sent, from 0 to 1. */
+    public double getSuppressionRatio() {
+        return fieldsOffered == 0 ? 0 : 1 - (double) fieldsSent / fieldsOffered;
+    }
+
+    public long getFieldsOffered() {
+        return fieldsOffered;
+    }
+
+    public long getFieldsSent() {
+        return fieldsSent;
+    }
+
+    /** Records dropped entirely because no metric changed. */
+    public long getRecordsSuppressed() {
+        return recordsSuppressed;
+    }
+
+    @Override
+    public String toString() {
+        return "DeltaFilter{offered=" + fieldsOffered
+                + ", sent=" + fieldsSent
+                + ", recordsSuppressed=" + recordsSuppressed
+                + ", suppression=" + String.format(Locale.US, "%.1f%%", getSuppressionRatio() * 100)
+                + '}';
+    }
+}
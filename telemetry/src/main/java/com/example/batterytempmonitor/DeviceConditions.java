@@ -0,0 +1,42 @@
+package com.example.batterytempmonitor;
+
+/**
+ * The device state a {@link SamplingPolicy} decides on. Unknown readings are NaN.
+ */
+public final class DeviceConditions {
+    private final double batteryLevel;
+    private final boolean charging;
+    private final double temperature;
+    private final LinkQuality link;
+
+    public DeviceConditions(double batteryLevel, boolean charging, double temperature, LinkQuality link) {
+        this.batteryLevel = batteryLevel;
+        this.charging = charging;
+        this.temperature = temperature;
+        this.link = link;
+    }
+
+    /** Battery level in percent. */
+    public double getBatteryLevel() {
+        return batteryLevel;
+    }
+
+    public boolean isCharging() {
+        return charging;
+    }
+
+    /** Battery temperature in degrees Celsius. */
+    public double getTemperature() {
+        return temperature;
+    }
+
+    public LinkQuality getLink() {
+        return link;
+    }
+
+    @Override
+    public String toString() {
+        return "DeviceConditions{battery=" + batteryLevel + (charging ? "% charging" : "%")
+                + ", temperature=" + temperature + ", link=" + link + '}';
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.batterytempmonitor;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Exponential backoff with full jitter: the delay before retry {@code n} is drawn
+ * uniformly from {@code [0, min(max, base * 2^n))}.
+ *
+ * Randomising the whole delay, rather than adding a little noise to a fixed one,
+ * spreads clients that failed at the same moment (a broker restart, a cell outage)
+ * across the entire window, so they do not come back in lockstep.
+ */
+public final class ExponentialBackoff {
+    private final long baseMillis;
+    private final long maxMillis;
+    private final DoubleSupplier random;
+
+    public ExponentialBackoff(long baseMillis, long maxMillis) {
+        this(baseMillis, maxMillis, () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    /** @param random returns values in {@code [0, 1)} */
+    ExponentialBackoff(long baseMillis, long maxMillis, DoubleSupplier random) {
+        if (baseMillis <= 0 || maxMillis < baseMillis) {
+            throw new IllegalArgumentException("Invalid backoff: base " + baseMillis + " ms, max " + maxMillis + " ms");
+        }
+        this.baseMillis = baseMillis;
+        this.maxMillis = maxMillis;
+        this.random = random;
+    }
+
+    /** Upper bound of the delay before retry {@code attempt} (0 for the first retry). */
+    public long getCeilingMillis(int attempt) {
+        if (attempt < 0) {
+            throw new IllegalArgumentException("attempt must not be negative: " + attempt);
+        }
+        long ceiling = baseMillis;
+        for (int i = 0; i < attempt && ceiling < maxMillis; i++) {
+            ceiling <<= 1;
+        }
+        return Math.min(ceiling, maxMillis);
+    }
+
+    /** Draws the delay before retry {@code attempt}. */
+    public long nextDelayMillis(int attempt) {
+        return (long) (random.getAsDouble() * getCeilingMillis(attempt));
+    }
+}
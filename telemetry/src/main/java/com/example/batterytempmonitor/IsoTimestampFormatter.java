@@ -0,0 +1,63 @@
+package com.example.batterytempmonitor;
+
+/**
+ * Formats epoch milliseconds as {@code yyyy-MM-dd'T'HH:mm:ss'Z'} in UTC without
+ * allocating. The date part is recomputed only when the day changes.
+ * Not thread-safe; keep one instance per encoder.
+ */
+public final class IsoTimestampFormatter {
+    public static final int LENGTH = 20;
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    private final byte[] dateBytes = new byte[11];
+    private long cachedDay = Long.MIN_VALUE;
+
+    /** Writes exactly {@link #LENGTH} ASCII bytes into {@code out} at {@code offset}. */
+    public void format(long epochMillis, byte[] out, int offset) {
+        long day = Math.floorDiv(epochMillis, MILLIS_PER_DAY);
+        if (day != cachedDay) {
+            formatDate(day);
+            cachedDay = day;
+        }
+        System.arraycopy(dateBytes, 0, out, offset, dateBytes.length);
+
+        int secondOfDay = (int) (Math.floorMod(epochMillis, MILLIS_PER_DAY) / 1000);
+        int pos = offset + dateBytes.length;
+        pos = twoDigits(secondOfDay / 3600, out, pos);
+        out[pos++] = ':';
+        pos = twoDigits(secondOfDay / 60 % 60, out, pos);
+        out[pos++] = ':';
+        pos = twoDigits(secondOfDay % 60, out, pos);
+        out[pos] = 'Z';
+    }
+
+    /** Converts days since 1970-01-01 to a civil date (proleptic Gregorian). */
+    private void formatDate(long epochDay) {
+        long z = epochDay + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int dayOfMonth = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+
+        dateBytes[0] = (byte) ('0' + year / 1000 % 10);
+        dateBytes[1] = (byte) ('0' + year / 100 % 10);
+        dateBytes[2] = (byte) ('0' + year / 10 % 10);
+        dateBytes[3] = (byte) ('0' + year % 10);
+        dateBytes[4] = '-';
+        twoDigits(month, dateBytes, 5);
+        dateBytes[7] = '-';
+        twoDigits(dayOfMonth, dateBytes, 8);
+        dateBytes[10] = 'T';
+    }
+
+    private static int twoDigits(int value, byte[] out, int pos) {
+        out[pos] = (byte) ('0' + value / 10);
+        out[pos + 1] = (byte) ('0' + value % 10);
+        return pos + 2;
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.batterytempmonitor;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the telemetry JSON schema straight into a reused {@link PayloadBuffer}:
+ *
+ * <pre>
+ * {"deviceId":"...","timestamp":1741910398000,"datetimeISO":"2025-03-13T23:59:58Z",
+ *  "metrics":{"cpuUsage":41.27,"batteryTemp":30.5,...}}
+ * </pre>
+ *
+ * Window snapshots from high-frequency mode add
+ * {@code "window":{"durationMs":30000,"batteryTemp":{"min":..,"max":..,"p95":..,"count":..},...}}
+ * after the metrics object, whose values are then window means. Records from
+ * {@link DeltaFilter} that hold only changed metrics have {@code "delta":true}
+ * before the metrics object.
+ *
+ * Keys, the device id and the date part of the timestamp are encoded once and
+ * cached, and numbers are written digit by digit, so encoding a snapshot does not
+ * allocate. Metrics appear in {@link Metric} order with {@link Metric#getDecimals()}
+ * decimal places; absent or non-finite values are left out.
+ * Not thread-safe; use one encoder per thread.
+ */
+public final class JsonPayloadEncoder {
+    private static final byte[] TIMESTAMP_KEY = ascii(",\"timestamp\":");
+    private static final byte[] DATETIME_KEY = ascii(",\"datetimeISO\":\"");
+    private static final byte[] METRICS_KEY = ascii("\",\"metrics\":{");
+    private static final byte[] DELTA_METRICS_KEY = ascii("\",\"delta\":true,\"metrics\":{");
+    private static final byte[] WINDOW_KEY = ascii(",\"window\":{\"durationMs\":");
+    private static final byte[] MAX_KEY = ascii(",\"max\":");
+    private static final byte[] P95_KEY = ascii(",\"p95\":");
+    private static final byte[] COUNT_KEY = ascii(",\"count\":");
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000};
+    // Beyond this a scaled value could overflow a long, so it is written as a whole number
+    private static final double MAX_SCALED = 9.0e15;
+
+    private final byte[] header;
+    private final byte[][] metricKeys = new byte[Metric.COUNT][];
+    private final byte[][] windowKeys = new byte[Metric.COUNT][];
+    private final byte[] scratch = new byte[24];
+    private final IsoTimestampFormatter timestampFormatter = new IsoTimestampFormatter();
+
+    public JsonPayloadEncoder(String deviceId) {
+        header = ("{\"deviceId\":\"" + escape(deviceId) + "\"").getBytes(StandardCharsets.UTF_8);
+        for (Metric metric : Metric.ALL) {
+            metricKeys[metric.ordinal()] = ascii("\"" + metric.getKey() + "\":");
+            windowKeys[metric.ordinal()] = ascii(",\"" + metric.getKey() + "\":{\"min\":");
+        }
+    }
+
+    /** Appends the JSON object for {@code snapshot} to {@code out}. */
+    public void encode(MetricsSnapshot snapshot, PayloadBuffer out) {
+        out.write(header, 0, header.length);
+        out.write(TIMESTAMP_KEY, 0, TIMESTAMP_KEY.length);
+        writeLong(snapshot.getTimestampMillis(), out);
+
+        out.write(DATETIME_KEY, 0, DATETIME_KEY.length);
+        timestampFormatter.format(snapshot.getTimestampMillis(), scratch, 0);
+        out.write(scratch, 0, IsoTimestampFormatter.LENGTH);
+        byte[] metricsKey = snapshot.isDelta() ? DELTA_METRICS_KEY : METRICS_KEY;
+        out.write(metricsKey, 0, metricsKey.length);
+
+        boolean first = true;
+        for (Metric metric : Metric.ALL) {
+            double value = snapshot.get(metric);
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                continue;
+            }
+            if (!first) {
+                out.write(',');
+            }
+            first = false;
+            byte[] key = metricKeys[metric.ordinal()];
+            out.write(key, 0, key.length);
+            writeDecimal(value, metric.getDecimals(), out);
+        }
+        out.write('}');
+
+        WindowStats window = snapshot.getWindow();
+        if (window != null) {
+            writeWindow(snapshot, window, out);
+        }
+        out.write('}');
+    }
+
+    private void writeWindow(MetricsSnapshot snapshot, WindowStats window, PayloadBuffer out) {
+        out.write(WINDOW_KEY, 0, WINDOW_KEY.length);
+        writeLong(window.getDurationMillis(), out);
+        for (Metric metric : Metric.ALL) {
+            // A delta keeps the window of the full snapshot; only describe what it sends
+            if (!window.has(metric) || !snapshot.has(metric)) {
+                continue;
+            }
+            byte[] key = windowKeys[metric.ordinal()];
+            out.write(key, 0, key.length);
+            writeDecimal(window.getMin(metric), metric.getDecimals(), out);
+            out.write(MAX_KEY, 0, MAX_KEY.length);
+            writeDecimal(window.getMax(metric), metric.getDecimals(), out);
+            out.write(P95_KEY, 0, P95_KEY.length);
+            writeDecimal(window.getP95(metric), metric.getDecimals(), out);
+            out.write(COUNT_KEY, 0, COUNT_KEY.length);
+            writeLong(window.getCount(metric), out);
+            out.write('}');
+        }
+        out.write('}');
+    }
+
+    private void writeDecimal(double value, int decimals, PayloadBuffer out) {
+        if (decimals == 0 || Math.abs(value) * POWERS_OF_TEN[decimals] >= MAX_SCALED) {
+            writeLong(Math.round(value), out);
+            return;
+        }
+        long scaled = Math.round(value * POWERS_OF_TEN[decimals]);
+        if (scaled < 0) {
+            out.write('-');
+            scaled = -scaled;
+        }
+        long power = POWERS_OF_TEN[decimals];
+        writeLong(scaled / power, out);
+        out.write('.');
+        long fraction = scaled % power;
+        for (long p = power / 10; p > 0; p /= 10) {
+            out.write((int) ('0' + fraction / p % 10));
+        }
+    }
+
+    private void writeLong(long value, PayloadBuffer out) {
+        if (value == Long.MIN_VALUE) {
+            byte[] min = ascii(Long.toString(value));
+            out.write(min, 0, min.length);
+            return;
+        }
+        if (value < 0) {
+            out.write('-');
+            value = -value;
+        }
+        int pos = scratch.length;
+        do {
+            scratch[--pos] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        out.write(scratch, pos, scratch.length - pos);
+    }
+
+    static String escape(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
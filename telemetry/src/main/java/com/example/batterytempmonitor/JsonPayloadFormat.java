@@ -0,0 +1,30 @@
+package com.example.batterytempmonitor;
+
+/**
+ * Batches are JSON arrays of the objects written by {@link JsonPayloadEncoder}.
+ */
+public final class JsonPayloadFormat implements PayloadFormat {
+    private final JsonPayloadEncoder encoder;
+
+    public JsonPayloadFormat(String deviceId) {
+        this.encoder = new JsonPayloadEncoder(deviceId);
+    }
+
+    @Override
+    public void beginBatch(PayloadBuffer out) {
+        out.write('[');
+    }
+
+    @Override
+    public void appendRecord(MetricsSnapshot snapshot, int index, PayloadBuffer out) {
+        if (index > 0) {
+            out.write(',');
+        }
+        encoder.encode(snapshot, out);
+    }
+
+    @Override
+    public void endBatch(PayloadBuffer out) {
+        out.write(']');
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.batterytempmonitor;
+
+import java.security.KeyStore;
+
+/**
+ * Loads the client {@link KeyStore} on first use and keeps it for every later
+ * connection attempt.
+ *
+ * Reading and decrypting the keystore file is the slowest step of a cold connect,
+ * so it is done once, on whichever thread first needs it (the connection thread,
+ * never the main thread). A failed load is not cached; the next call tries again.
+ */
+public final class KeyStoreCache {
+
+    /** Reads the keystore from wherever it is stored. */
+    public interface Loader {
+        KeyStore load() throws Exception;
+    }
+
+    private final Loader loader;
+
+    // Guarded by this
+    private KeyStore keyStore;
+    private long loadCount;
+    private long lastLoadMillis = -1;
+
+    public KeyStoreCache(Loader loader) {
+        this.loader = loader;
+    }
+
+    /** Returns the cached keystore, loading it if this is the first call or it was invalidated. */
+    public synchronized KeyStore get() throws Exception {
+        if (keyStore == null) {
+            long start = System.nanoTime();
+            KeyStore loaded = loader.load();
+            if (loaded == null) {
+                throw new IllegalStateException("Keystore loader returned nothing");
+            }
+            lastLoadMillis = (System.nanoTime() - start) / 1_000_000;
+            loadCount++;
+            keyStore = loaded;
+        }
+        return keyStore;
+    }
+
+    /** Forgets the cached keystore, e.g. after the certificate was replaced. */
+    public synchronized void invalidate() {
+        keyStore = null;
+    }
+
+    /** Number of times the keystore was actually loaded. */
+    public synchronized long getLoadCount() {
+        return loadCount;
+    }
+
+    /** Duration of the most recent load, or -1 if none has finished. */
+    public synchronized long getLastLoadMillis() {
+        return lastLoadMillis;
+    }
+}
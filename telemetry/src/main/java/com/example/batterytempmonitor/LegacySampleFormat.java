@@ -0,0 +1,33 @@
+package com.example.batterytempmonitor;
+
+/**
+ * Keys of the per-sample JSON files written by versions before the offline queue,
+ * and the metric each one really holds.
+ *
+ * Those versions reported used/total RAM under {@code "cpuUsage"}, so that key is
+ * imported as {@link Metric#MEMORY_USAGE}; reading it as CPU would put memory into
+ * the CPU history. The other keys meant what their names say.
+ */
+public final class LegacySampleFormat {
+
+    private static final Metric[] PASSTHROUGH = {
+            Metric.RX_BYTES, Metric.TX_BYTES, Metric.BATTERY_TEMP, Metric.BATTERY_LEVEL,
+            Metric.STORAGE_AVAILABLE, Metric.STORAGE_TOTAL
+    };
+
+    private LegacySampleFormat() {
+    }
+
+    /** The metric stored under {@code key} in a legacy {@code "metrics"} object, or null if none. */
+    public static Metric metricForKey(String key) {
+        if (Metric.CPU_USAGE.getKey().equals(key)) {
+            return Metric.MEMORY_USAGE;
+        }
+        for (Metric metric : PASSTHROUGH) {
+            if (metric.getKey().equals(key)) {
+                return metric;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.batterytempmonitor;
+
+/** Coarse quality of the current network link, as far as sampling decisions care. */
+public enum LinkQuality {
+    /** No network. */
+    OFFLINE,
+    /** Connected but unvalidated or weak signal; sending is expensive. */
+    POOR,
+    /** Connected over a metered link such as cellular. */
+    GOOD,
+    /** Connected over an unmetered link such as Wi-Fi. */
+    UNMETERED
+}
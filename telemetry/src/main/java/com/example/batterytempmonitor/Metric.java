@@ -0,0 +1,70 @@
+package com.example.batterytempmonitor;
+
+/**
+ * Every value the monitor can report. The key is the field name used in JSON
+ * payloads and the wire id is the bit used in binary payloads, so both must stay
+ * stable once devices are in the field; never reuse the wire id of a removed metric.
+ */
+public enum Metric {
+    CPU_USAGE("cpuUsage", 2, 0),
+    RX_BYTES("rxBytes", 0, 1),
+    TX_BYTES("txBytes", 0, 2),
+    // Wire ids 3 and 4 were rxSpeedKb/txSpeedKb, bytes per tick mislabelled as KB/s
+    STORAGE_AVAILABLE("storageAvailable", 0, 5),
+    STORAGE_TOTAL("storageTotal", 0, 6),
+    BATTERY_TEMP("batteryTemp", 1, 7),
+    BATTERY_LEVEL("batteryLevel", 1, 8),
+    /** Percentage of values {@link DeltaFilter} has not re-sent; only in keyframes. */
+    DELTA_SUPPRESSION("deltaSuppressionPct", 1, 9),
+    /** Busiest single core, in percent; one saturated core is hidden in the average. */
+    CPU_MAX_CORE_USAGE("cpuMaxCoreUsage", 2, 10),
+    /** Share of RAM in use, in percent. Reported as cpuUsage before CPU was measured. */
+    MEMORY_USAGE("memoryUsage", 2, 11),
+    /** Device receive rate in KiB/s. */
+    RX_RATE("rxRateKBps", 1, 12),
+    /** Device transmit rate in KiB/s. */
+    TX_RATE("txRateKBps", 1, 13),
+    /** This app's own receive rate in KiB/s, i.e. the monitor's network overhead. */
+    APP_RX_RATE("appRxRateKBps", 1, 14),
+    APP_TX_RATE("appTxRateKBps", 1, 15);
+
+    /** Cached copy of {@link #values()}, which allocates a new array on every call. */
+    static final Metric[] ALL = values();
+    public static final int COUNT = ALL.length;
+
+    /** Highest wire id a binary payload can carry. */
+    public static final int MAX_WIRE_ID = 63;
+
+    private final String key;
+    private final int decimals;
+    private final int wireId;
+
+    Metric(String key, int decimals, int wireId) {
+        this.key = key;
+        this.decimals = decimals;
+        this.wireId = wireId;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /** Decimal places kept when the value is encoded; 0 for whole-number metrics. */
+    public int getDecimals() {
+        return decimals;
+    }
+
+    public int getWireId() {
+        return wireId;
+    }
+
+    /** Returns the metric with the given wire id, or null if this build does not know it. */
+    public static Metric fromWireId(int wireId) {
+        for (Metric metric : ALL) {
+            if (metric.wireId == wireId) {
+                return metric;
+            }
+        }
+        return null;
+    }
+}
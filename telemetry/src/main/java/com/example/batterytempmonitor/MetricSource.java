@@ -0,0 +1,17 @@
+package com.example.batterytempmonitor;
+
+/**
+ * A producer of one or more {@link Metric} values.
+ *
+ * Each source declares how often it needs to be read; the {@link MetricsCollector}
+ * only calls {@link #sample} on ticks where the source is due and keeps the last
+ * value of every other metric in the snapshot.
+ */
+public interface MetricSource {
+
+    /** How often this source should be sampled. Must be positive. */
+    long getIntervalMillis();
+
+    /** Reads the current values and writes them into {@code out}. Called on the collector thread. */
+    void sample(MetricsSnapshot.Builder out) throws Exception;
+}
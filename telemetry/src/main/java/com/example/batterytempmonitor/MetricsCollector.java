@@ -0,0 +1,291 @@
+package com.example.batterytempmonitor;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Runs metric sampling on its own background thread at a fixed cadence.
+ *
+ * The tick period is the greatest common divisor of the source intervals, and on
+ * each tick only the sources that are due are read; every other metric keeps its
+ * last value. Ticks are scheduled at a fixed rate, so a slow sample does not push
+ * every following tick back. Sampling and all sinks (publishing, file I/O) run on
+ * the collector thread; only the finished {@link MetricsSnapshot} is handed to the
+ * listener, on whichever executor it was registered with (usually the UI thread).
+ *
+ * The whole schedule can be stretched or shrunk with {@link #setIntervalScale},
+ * which multiplies the tick period and therefore every source interval.
+ *
+ * With an aggregation window set, ticks feed a {@link WindowAggregator} instead
+ * of producing snapshots, and one snapshot of window statistics is emitted at the
+ * end of each window. This allows sampling at a high rate without publishing at it.
+ */
+public final class MetricsCollector {
+
+    /** Consumes each snapshot on the collector thread, e.g. to publish it. */
+    public interface Sink {
+        void accept(MetricsSnapshot snapshot) throws Exception;
+    }
+
+    /** Receives snapshots and failures on the listener executor. */
+    public interface Listener {
+        void onSnapshot(MetricsSnapshot snapshot);
+
+        default void onError(Exception e) {
+        }
+    }
+
+    static final String THREAD_NAME = "metrics-collector";
+
+    private final MetricSource[] sources;
+    private final long[] strides;
+    private final long periodMillis;
+    private final LongSupplier clock;
+    private final List<Sink> sinks = new CopyOnWriteArrayList<>();
+
+    // Only touched on the collector thread
+    private final MetricsSnapshot.Builder latest = new MetricsSnapshot.Builder();
+    private long tickCount;
+    private WindowAggregator aggregator;
+    private long windowTicks;
+
+    private volatile Listener listener;
+    private volatile Executor listenerExecutor;
+    private volatile SelfMetrics selfMetrics;
+
+    private ScheduledExecutorService executor;
+    // The executor released by the last shutdown, for awaitTermination
+    private ScheduledExecutorService released;
+    private ScheduledFuture<?> task;
+    private volatile long effectivePeriodMillis;
+
+    public MetricsCollector(List<? extends MetricSource> sources) {
+        this(sources, System::currentTimeMillis);
+    }
+
+    MetricsCollector(List<? extends MetricSource> sources, LongSupplier clock) {
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("At least one metric source is required");
+        }
+        this.sources = sources.toArray(new MetricSource[0]);
+        this.strides = new long[this.sources.length];
+        this.clock = clock;
+
+        long period = 0;
+        for (MetricSource source : this.sources) {
+            long interval = source.getIntervalMillis();
+            if (interval <= 0) {
+                throw new IllegalArgumentException("Source interval must be positive: " + source);
+            }
+            period = gcd(period, interval);
+        }
+        this.periodMillis = period;
+        this.effectivePeriodMillis = period;
+        for (int i = 0; i < this.sources.length; i++) {
+            strides[i] = this.sources[i].getIntervalMillis() / period;
+        }
+    }
+
+    public void addSink(Sink sink) {
+        sinks.add(sink);
+    }
+
+    public void setListener(Listener listener, Executor executor) {
+        this.listenerExecutor = executor;
+        this.listener = listener;
+    }
+
+    /** Records the time each tick spends reading sources, and source failures. */
+    public void setSelfMetrics(SelfMetrics selfMetrics) {
+        this.selfMetrics = selfMetrics;
+    }
+
+    public long getPeriodMillis() {
+        return periodMillis;
+    }
+
+    /** The tick period after {@link #setIntervalScale scaling}. */
+    public long getEffectivePeriodMillis() {
+        return effectivePeriodMillis;
+    }
+
+    /**
+     * Multiplies every sampling interval by {@code scale}, e.g. 3 to sample a third
+     * as often or 0.5 to sample twice as often. A running collector is rescheduled
+     * straight away; it is safe to call from a sink on the collector thread.
+     */
+    public synchronized void setIntervalScale(double scale) {
+        if (!(scale > 0)) {
+            throw new IllegalArgumentException("scale must be positive: " + scale);
+        }
+        long scaled = Math.max(1, Math.round(periodMillis * scale));
+        if (scaled == effectivePeriodMillis) {
+            return;
+        }
+        effectivePeriodMillis = scaled;
+        if (task != null) {
+            task.cancel(false);
+            task = ensureExecutor().scheduleAtFixedRate(this::tick, scaled, scaled, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Enables high-frequency mode: snapshots are emitted once per window and carry
+     * {@link WindowStats}. The window must be a multiple of the tick period.
+     * Pass 0 to emit every tick again. Call while the collector is stopped.
+     */
+    public synchronized void setAggregationWindow(long windowMillis) {
+        if (task != null) {
+            throw new IllegalStateException("Cannot change the aggregation window while running");
+        }
+        if (windowMillis == 0) {
+            this.aggregator = null;
+            this.windowTicks = 0;
+            return;
+        }
+        if (windowMillis < periodMillis || windowMillis % periodMillis != 0) {
+            throw new IllegalArgumentException("Window " + windowMillis
+                    + " ms is not a multiple of the " + periodMillis + " ms tick");
+        }
+        this.windowTicks = windowMillis / periodMillis;
+        this.aggregator = new WindowAggregator((int) Math.min(windowTicks, Integer.MAX_VALUE));
+        this.tickCount = 0;
+    }
+
+    public synchronized boolean isRunning() {
+        return task != null;
+    }
+
+    public synchronized void start() {
+        if (task != null) {
+            return;
+        }
+        task = ensureExecutor().scheduleAtFixedRate(this::tick, 0, effectivePeriodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs {@code work} on the collector thread, after any tick in progress.
+     * Use this for I/O that must not happen on the caller's thread.
+     */
+    public synchronized void execute(Runnable work) {
+        ensureExecutor().execute(work);
+    }
+
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    /**
+     * Stops sampling and releases the collector thread once the work already queued
+     * with {@link #execute} has run.
+     */
+    public synchronized void shutdown() {
+        stop();
+        if (executor != null) {
+            executor.shutdown();
+            released = executor;
+            executor = null;
+        }
+    }
+
+    /**
+     * Waits up to {@code timeout} for the work queued before {@link #shutdown}, e.g. a
+     * final flush, to finish. Call it from another thread than the collector's.
+     *
+     * @return true if the collector thread has finished
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        ScheduledExecutorService finishing;
+        synchronized (this) {
+            finishing = released;
+        }
+        // Not holding the lock: the queued work may call back into the collector
+        return finishing == null || finishing.awaitTermination(timeout, unit);
+    }
+
+    private ScheduledExecutorService ensureExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, THREAD_NAME);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    void tick() {
+        SelfMetrics metrics = selfMetrics;
+        long sampleStart = System.nanoTime();
+        long tick = tickCount++;
+        latest.clearSampled();
+        for (int i = 0; i < sources.length; i++) {
+            if (tick % strides[i] != 0) {
+                continue;
+            }
+            try {
+                sources[i].sample(latest);
+            } catch (Exception e) {
+                if (metrics != null) {
+                    metrics.increment(SelfMetrics.Counter.SAMPLE_ERRORS);
+                }
+                notifyError(e);
+            }
+        }
+        if (metrics != null) {
+            metrics.recordSince(SelfMetrics.Stage.SAMPLE, sampleStart);
+            metrics.increment(SelfMetrics.Counter.TICKS);
+        }
+        MetricsSnapshot snapshot;
+        if (aggregator == null) {
+            snapshot = latest.build(clock.getAsLong());
+        } else {
+            aggregator.addSampled(latest);
+            if ((tick + 1) % windowTicks != 0) {
+                return;
+            }
+            // A scaled schedule stretches the window by the same factor
+            snapshot = aggregator.closeWindow(clock.getAsLong(), windowTicks * effectivePeriodMillis);
+        }
+
+        for (Sink sink : sinks) {
+            try {
+                sink.accept(snapshot);
+            } catch (Exception e) {
+                notifyError(e);
+            }
+        }
+
+        Listener l = listener;
+        Executor ex = listenerExecutor;
+        if (l != null && ex != null) {
+            ex.execute(() -> l.onSnapshot(snapshot));
+        }
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    private void notifyError(Exception e) {
+        Listener l = listener;
+        Executor ex = listenerExecutor;
+        if (l != null && ex != null) {
+            ex.execute(() -> l.onError(e));
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.batterytempmonitor;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of readings taken in a single sampling pass.
+ * Built on the collector thread and handed to the UI for display.
+ * Metrics that have not been sampled yet are absent ({@link #has} returns false).
+ * In high-frequency mode a snapshot summarises a whole window: the values are
+ * window means and {@link #getWindow()} holds the remaining statistics.
+ * A delta snapshot from {@link DeltaFilter} holds only the metrics that changed
+ * since the last one sent; absent metrics are then unchanged rather than unknown.
+ */
+public final class MetricsSnapshot {
+    private final long timestampMillis;
+    private final double[] values;
+    private final WindowStats window;
+    private final boolean delta;
+
+    private MetricsSnapshot(long timestampMillis, double[] values, WindowStats window, boolean delta) {
+        this.timestampMillis = timestampMillis;
+        this.values = values;
+        this.window = window;
+        this.delta = delta;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    /** Statistics of the aggregation window, or null for a plain sample. */
+    public WindowStats getWindow() {
+        return window;
+    }
+
+    /** True if this holds only changed metrics; false for a full sample or keyframe. */
+    public boolean isDelta() {
+        return delta;
+    }
+
+    public boolean has(Metric metric) {
+        return !Double.isNaN(values[metric.ordinal()]);
+    }
+
+    /** Returns the value of {@code metric}, or NaN if it is absent. */
+    public double get(Metric metric) {
+        return values[metric.ordinal()];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("MetricsSnapshot{timestamp=").append(timestampMillis);
+        if (delta) {
+            sb.append(", delta");
+        }
+        for (Metric metric : Metric.ALL) {
+            if (has(metric)) {
+                sb.append(", ").append(metric.getKey()).append('=').append(get(metric));
+            }
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Mutable accumulator for the latest value of each metric. The collector keeps
+     * one builder alive so that metrics sampled on earlier ticks carry over.
+     */
+    public static final class Builder {
+        private final double[] values = new double[Metric.COUNT];
+        private long sampledMask;
+
+        public Builder() {
+            Arrays.fill(values, Double.NaN);
+        }
+
+        public Builder set(Metric metric, double value) {
+            values[metric.ordinal()] = value;
+            sampledMask |= 1L << metric.ordinal();
+            return this;
+        }
+
+        public double get(Metric metric) {
+            return values[metric.ordinal()];
+        }
+
+        /** True if {@code metric} was set since the last {@link #clearSampled()}. */
+        public boolean wasSampled(Metric metric) {
+            return (sampledMask & (1L << metric.ordinal())) != 0;
+        }
+
+        public void clearSampled() {
+            sampledMask = 0;
+        }
+
+        public MetricsSnapshot build(long timestampMillis) {
+            return new MetricsSnapshot(timestampMillis, values.clone(), null, false);
+        }
+
+        public MetricsSnapshot build(long timestampMillis, WindowStats window) {
+            return new MetricsSnapshot(timestampMillis, values.clone(), window, false);
+        }
+
+        public MetricsSnapshot build(long timestampMillis, WindowStats window, boolean delta) {
+            return new MetricsSnapshot(timestampMillis, values.clone(), window, delta);
+        }
+    }
+}
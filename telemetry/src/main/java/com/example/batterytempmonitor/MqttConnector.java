@@ -0,0 +1,23 @@
+package com.example.batterytempmonitor;
+
+/**
+ * Connection-side view of an MQTT client, so {@link ConnectionManager} can drive
+ * the AWS IoT client on a device and a scripted broker in tests.
+ * The client must not retry on its own; retries are the manager's job.
+ */
+public interface MqttConnector {
+
+    /** Outcome of a connection attempt; may be reported on any thread. */
+    interface Callback {
+        void onConnected();
+
+        /** The attempt failed, or an established connection was lost. */
+        void onDisconnected(Throwable cause);
+    }
+
+    /** Starts connecting and returns; the result is reported to {@code callback}. */
+    void connect(Callback callback) throws Exception;
+
+    /** Closes the connection or abandons an attempt in progress. Must not throw. */
+    void disconnect();
+}
@@ -0,0 +1,30 @@
+package com.example.batterytempmonitor;
+
+/**
+ * Minimal publish-side view of an MQTT connection, so the publishing pipeline
+ * can run against the AWS IoT client on a device and a fake in tests.
+ */
+public interface MqttTransport {
+
+    boolean isConnected();
+
+    /** Publishes {@code length} bytes of {@code payload} starting at {@code offset}. */
+    void publish(String topic, byte[] payload, int offset, int length) throws Exception;
+
+    /**
+     * Publishes like {@link #publish(String, byte[], int, int)} and then reports, once,
+     * whether the message was delivered: for QoS 1, whether the broker acknowledged it.
+     * The callback may run on any thread. Transports that deliver before returning,
+     * like this default, report success straight away.
+     */
+    default void publish(String topic, byte[] payload, int offset, int length, DeliveryCallback callback)
+            throws Exception {
+        publish(topic, payload, offset, length);
+        callback.onDelivery(true);
+    }
+
+    /** Outcome of a {@link #publish(String, byte[], int, int, DeliveryCallback)}. */
+    interface DeliveryCallback {
+        void onDelivery(boolean delivered);
+    }
+}
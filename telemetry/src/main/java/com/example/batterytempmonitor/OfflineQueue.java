@@ -0,0 +1,520 @@
+package com.example.batterytempmonitor;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * Durable, append-only FIFO of opaque records, used to hold samples while the
+ * device is offline.
+ *
+ * Records are written to numbered segment files as {@code [length][crc32][payload]}.
+ * When the active segment reaches {@code maxSegmentBytes} a new one is started, and
+ * when the queue exceeds {@code maxTotalBytes} the oldest segment is dropped. A small
+ * cursor file remembers how far {@link #drain} got, so drained records are not sent
+ * again after a restart. On open, a record torn by a crash at the end of the last
+ * segment is detected by its length or checksum and truncated away.
+ *
+ * All methods are synchronized; the queue is normally used from the collector thread.
+ */
+public final class OfflineQueue implements Closeable {
+
+    /** When appended records are forced to disk. */
+    public enum FsyncPolicy {
+        /** fsync after every record; slowest, loses nothing on power loss. */
+        ALWAYS,
+        /** fsync when a segment is completed and on close. */
+        ON_ROLLOVER,
+        /** Leave flushing to the OS. */
+        NEVER
+    }
+
+    /** Receives drained records; return false to stop draining and keep the record queued. */
+    public interface RecordHandler {
+        boolean accept(byte[] record, int offset, int length);
+    }
+
+    static final int HEADER_BYTES = 8;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CURSOR_FILE = "cursor";
+    private static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+
+    private final File directory;
+    private final long maxSegmentBytes;
+    private final long maxTotalBytes;
+    private final FsyncPolicy fsyncPolicy;
+
+    private final List<Long> segments = new ArrayList<>();
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+    private final CRC32 crc = new CRC32();
+    private byte[] readBuffer = new byte[1024];
+
+    private FileChannel writeChannel;
+    private long writeSegment;
+    // The completed segment being read, kept open across reads until the queue moves past it
+    private FileChannel readChannel;
+    private long readChannelSegment = -1;
+    private long totalBytes;
+
+    private long readSegment;
+    private long readPosition;
+    private long pendingRecords;
+    private long droppedRecords;
+
+    // Where the last peek stopped, so that skip removes exactly the records it handed out.
+    // peekCount is -1 once the head has moved since that peek.
+    private int peekCount = -1;
+    private long peekDropped;
+    private long peekEndSegment;
+    private long peekEndPosition;
+
+    private OfflineQueue(File directory, long maxSegmentBytes, long maxTotalBytes, FsyncPolicy fsyncPolicy) {
+        this.directory = directory;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.maxTotalBytes = maxTotalBytes;
+        this.fsyncPolicy = fsyncPolicy;
+    }
+
+    /**
+     * Opens the queue in {@code directory}, creating it if needed and recovering
+     * from any partially written record left by a crash.
+     */
+    public static OfflineQueue open(File directory, long maxSegmentBytes, long maxTotalBytes,
+                                    FsyncPolicy fsyncPolicy) throws IOException {
+        if (maxSegmentBytes <= HEADER_BYTES || maxTotalBytes < maxSegmentBytes) {
+            throw new IllegalArgumentException("Invalid segment or retention size");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create queue directory " + directory);
+        }
+        OfflineQueue queue = new OfflineQueue(directory, maxSegmentBytes, maxTotalBytes, fsyncPolicy);
+        queue.recover();
+        return queue;
+    }
+
+    public synchronized void append(byte[] record) throws IOException {
+        append(record, 0, record.length);
+    }
+
+    public synchronized void append(byte[] record, int offset, int length) throws IOException {
+        if (length > MAX_RECORD_BYTES) {
+            throw new IOException("Record too large: " + length + " bytes");
+        }
+        if (writeChannel.position() > 0 && writeChannel.position() + HEADER_BYTES + length > maxSegmentBytes) {
+            rollSegment();
+        }
+
+        crc.reset();
+        crc.update(record, offset, length);
+        header.clear();
+        header.putInt(length).putInt((int) crc.getValue()).flip();
+        ByteBuffer body = ByteBuffer.wrap(record, offset, length);
+        while (header.hasRemaining() || body.hasRemaining()) {
+            writeChannel.write(new ByteBuffer[]{header, body});
+        }
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            writeChannel.force(false);
+        }
+
+        totalBytes += HEADER_BYTES + length;
+        pendingRecords++;
+        enforceRetention();
+    }
+
+    /**
+     * Hands up to {@code maxRecords} queued records to {@code handler} in append order.
+     * Records the handler accepts are removed; the first rejected record stays at the
+     * head of the queue. Fully drained segments are deleted.
+     *
+     * @return the number of records accepted
+     */
+    public synchronized int drain(int maxRecords, RecordHandler handler) throws IOException {
+        return consume(maxRecords, handler);
+    }
+
+    private int consume(int maxRecords, RecordHandler handler) throws IOException {
+        peekCount = -1;
+        int drained = 0;
+        try {
+            while (drained < maxRecords && pendingRecords > 0) {
+                int length = readRecordAt(readSegment, readPosition);
+                if (length < 0) {
+                    // End or corruption of a completed segment: move on to the next one
+                    if (!advanceReadSegment()) {
+                        break;
+                    }
+                    continue;
+                }
+                if (!handler.accept(readBuffer, 0, length)) {
+                    break;
+                }
+                readPosition += HEADER_BYTES + length;
+                pendingRecords--;
+                drained++;
+            }
+        } finally {
+            if (drained > 0) {
+                saveCursor();
+                deleteConsumedSegments();
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * Hands up to {@code maxRecords} queued records to {@code handler} in append order
+     * without removing them; the first rejected record ends the peek. Once the records
+     * are safely delivered, remove them with {@link #skip}. The array passed to the
+     * handler is reused, so copy what must outlive the call.
+     *
+     * @return the number of records accepted
+     */
+    public synchronized int peek(int maxRecords, RecordHandler handler) throws IOException {
+        int peeked = 0;
+        long dropped = 0;
+        long segment = readSegment;
+        long position = readPosition;
+        while (peeked < maxRecords && peeked + dropped < pendingRecords) {
+            int length = readRecordAt(segment, position);
+            if (length < 0) {
+                // Same as drain: the rest of the segment is lost, continue with the next one
+                int index = segments.indexOf(segment);
+                if (index < 0 || index + 1 >= segments.size()) {
+                    break;
+                }
+                dropped += countRecords(segment, position);
+                segment = segments.get(index + 1);
+                position = 0;
+                continue;
+            }
+            if (!handler.accept(readBuffer, 0, length)) {
+                break;
+            }
+            position += HEADER_BYTES + length;
+            peeked++;
+        }
+        peekCount = peeked;
+        peekDropped = dropped;
+        peekEndSegment = segment;
+        peekEndPosition = position;
+        return peeked;
+    }
+
+    /**
+     * Removes the first {@code count} records, e.g. after a {@link #peek} was delivered.
+     * Right after a peek of {@code count} records this moves the head to where the peek
+     * stopped without reading anything, so records the peek passed over as corrupt are
+     * dropped rather than counted. Otherwise it removes records as {@link #drain} would.
+     */
+    public synchronized int skip(int count) throws IOException {
+        if (count <= 0 || count != peekCount) {
+            return consume(count, (record, offset, length) -> true);
+        }
+        droppedRecords += peekDropped;
+        pendingRecords -= count + peekDropped;
+        readSegment = peekEndSegment;
+        readPosition = peekEndPosition;
+        peekCount = -1;
+        saveCursor();
+        deleteConsumedSegments();
+        return count;
+    }
+
+    public synchronized long getPendingRecords() {
+        return pendingRecords;
+    }
+
+    /** Records lost to the retention cap or to corruption since the queue was opened. */
+    public synchronized long getDroppedRecords() {
+        return droppedRecords;
+    }
+
+    /** Bytes on disk, including records that have already been drained from the head segment. */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closeReadChannel();
+        if (writeChannel != null) {
+            if (fsyncPolicy != FsyncPolicy.NEVER) {
+                writeChannel.force(false);
+            }
+            writeChannel.close();
+            writeChannel = null;
+        }
+    }
+
+    private void recover() throws IOException {
+        File[] files = directory.listFiles((dir, name) ->
+                name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                String id = file.getName().substring(SEGMENT_PREFIX.length(),
+                        file.getName().length() - SEGMENT_SUFFIX.length());
+                try {
+                    segments.add(Long.parseLong(id));
+                } catch (NumberFormatException ignored) {
+                    // Not one of ours
+                }
+            }
+        }
+        segments.sort(null);
+
+        if (segments.isEmpty()) {
+            segments.add(0L);
+        }
+        writeSegment = segments.get(segments.size() - 1);
+        truncateTornTail(segmentFile(writeSegment));
+        // The write segment is read through the write channel from here on
+        closeReadChannel();
+        writeChannel = new RandomAccessFile(segmentFile(writeSegment), "rw").getChannel();
+        writeChannel.position(writeChannel.size());
+
+        loadCursor();
+        for (long segment : segments) {
+            totalBytes += segmentFile(segment).length();
+            pendingRecords += countRecords(segment, segment == readSegment ? readPosition : 0);
+        }
+    }
+
+    /** Cuts the segment at the end of its last complete, checksum-valid record. */
+    private void truncateTornTail(File file) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        long segment = idOf(file);
+        long position = 0;
+        int length;
+        while ((length = readRecordAt(segment, position)) >= 0) {
+            position += HEADER_BYTES + length;
+        }
+        if (position < file.length()) {
+            closeReadChannel();
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(position);
+                raf.getFD().sync();
+            }
+        }
+    }
+
+    private long countRecords(long segment, long from) throws IOException {
+        FileChannel channel = channelFor(segment);
+        if (channel == null) {
+            return 0;
+        }
+        long count = 0;
+        long position = from;
+        int length;
+        while ((length = readLength(channel, position)) >= 0) {
+            position += HEADER_BYTES + length;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Reads and verifies the record at {@code position} into {@link #readBuffer}.
+     *
+     * @return the record length, or -1 at end of segment or on a torn/corrupt record
+     */
+    private int readRecordAt(long segment, long position) throws IOException {
+        FileChannel channel = channelFor(segment);
+        return channel != null ? readRecord(channel, position) : -1;
+    }
+
+    /** The write channel, or the cached read channel of a completed segment; null if it is gone. */
+    private FileChannel channelFor(long segment) throws IOException {
+        if (segment == writeSegment && writeChannel != null) {
+            return writeChannel;
+        }
+        if (segment != readChannelSegment) {
+            closeReadChannel();
+            File file = segmentFile(segment);
+            if (!file.exists()) {
+                return null;
+            }
+            readChannel = new RandomAccessFile(file, "r").getChannel();
+            readChannelSegment = segment;
+        }
+        return readChannel;
+    }
+
+    private void closeReadChannel() throws IOException {
+        if (readChannel != null) {
+            readChannel.close();
+            readChannel = null;
+            readChannelSegment = -1;
+        }
+    }
+
+    /** Reads the header at {@code position} into {@link #header}; -1 if it or its payload is cut off. */
+    private int readLength(FileChannel channel, long position) throws IOException {
+        long size = channel.size();
+        if (position + HEADER_BYTES > size) {
+            return -1;
+        }
+        header.clear();
+        while (header.hasRemaining()) {
+            if (channel.read(header, position + header.position()) < 0) {
+                return -1;
+            }
+        }
+        int length = header.getInt(0);
+        if (length < 0 || length > MAX_RECORD_BYTES || position + HEADER_BYTES + length > size) {
+            return -1;
+        }
+        return length;
+    }
+
+    private int readRecord(FileChannel channel, long position) throws IOException {
+        int length = readLength(channel, position);
+        if (length < 0) {
+            return -1;
+        }
+        int checksum = header.getInt(4);
+        if (readBuffer.length < length) {
+            readBuffer = new byte[Math.max(length, readBuffer.length * 2)];
+        }
+        ByteBuffer body = ByteBuffer.wrap(readBuffer, 0, length);
+        while (body.hasRemaining()) {
+            if (channel.read(body, position + HEADER_BYTES + body.position()) < 0) {
+                return -1;
+            }
+        }
+        crc.reset();
+        crc.update(readBuffer, 0, length);
+        return (int) crc.getValue() == checksum ? length : -1;
+    }
+
+    private boolean advanceReadSegment() throws IOException {
+        int index = segments.indexOf(readSegment);
+        if (index < 0 || index + 1 >= segments.size()) {
+            // Nothing readable is left; whatever was counted as pending is corrupt
+            droppedRecords += pendingRecords;
+            pendingRecords = 0;
+            return false;
+        }
+        long skipped = countRecords(readSegment, readPosition);
+        droppedRecords += skipped;
+        pendingRecords -= skipped;
+        readSegment = segments.get(index + 1);
+        readPosition = 0;
+        return true;
+    }
+
+    private void rollSegment() throws IOException {
+        if (fsyncPolicy != FsyncPolicy.NEVER) {
+            writeChannel.force(false);
+        }
+        writeChannel.close();
+        writeSegment++;
+        segments.add(writeSegment);
+        writeChannel = new RandomAccessFile(segmentFile(writeSegment), "rw").getChannel();
+    }
+
+    private void enforceRetention() throws IOException {
+        while (totalBytes > maxTotalBytes && segments.size() > 1) {
+            long oldest = segments.get(0);
+            long unread = oldest == readSegment ? countRecords(oldest, readPosition)
+                    : oldest > readSegment ? countRecords(oldest, 0) : 0;
+            droppedRecords += unread;
+            pendingRecords -= unread;
+            peekCount = -1;
+            deleteSegment(oldest);
+            if (readSegment <= oldest) {
+                readSegment = segments.get(0);
+                readPosition = 0;
+                saveCursor();
+            }
+        }
+    }
+
+    private void deleteConsumedSegments() throws IOException {
+        while (segments.size() > 1 && segments.get(0) < readSegment) {
+            deleteSegment(segments.get(0));
+        }
+        // Start a fresh segment once everything written so far has been drained
+        if (pendingRecords == 0 && readSegment == writeSegment && readPosition > 0) {
+            rollSegment();
+            deleteSegment(segments.get(0));
+            readSegment = writeSegment;
+            readPosition = 0;
+            saveCursor();
+        }
+    }
+
+    private void deleteSegment(long segment) throws IOException {
+        if (segment == readChannelSegment) {
+            closeReadChannel();
+        }
+        File file = segmentFile(segment);
+        totalBytes -= file.length();
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot delete segment " + file);
+        }
+        segments.remove(Long.valueOf(segment));
+    }
+
+    private void loadCursor() throws IOException {
+        readSegment = segments.get(0);
+        readPosition = 0;
+        File file = new File(directory, CURSOR_FILE);
+        if (!file.exists()) {
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long segment = raf.readLong();
+            long position = raf.readLong();
+            if (segments.contains(segment) && position <= segmentFile(segment).length()) {
+                readSegment = segment;
+                readPosition = position;
+            }
+        } catch (IOException e) {
+            // A damaged cursor only means some records may be delivered twice
+        }
+    }
+
+    private void saveCursor() throws IOException {
+        File tmp = new File(directory, CURSOR_FILE + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+            raf.setLength(0);
+            raf.writeLong(readSegment);
+            raf.writeLong(readPosition);
+            if (fsyncPolicy != FsyncPolicy.NEVER) {
+                raf.getFD().sync();
+            }
+        }
+        if (!tmp.renameTo(new File(directory, CURSOR_FILE))) {
+            throw new IOException("Cannot update queue cursor in " + directory);
+        }
+    }
+
+    private File segmentFile(long segment) {
+        return new File(directory, String.format(Locale.US, "%s%020d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    private static long idOf(File segmentFile) {
+        String name = segmentFile.getName();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "OfflineQueue{pending=" + pendingRecords + ", bytes=" + totalBytes
+                + ", segments=" + segments.size() + ", dropped=" + droppedRecords + '}';
+    }
+}
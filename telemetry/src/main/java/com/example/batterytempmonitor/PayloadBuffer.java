@@ -0,0 +1,57 @@
+package com.example.batterytempmonitor;
+
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer that is reset and reused instead of reallocated.
+ * Not thread-safe.
+ */
+public final class PayloadBuffer {
+    private byte[] data;
+    private int length;
+
+    public PayloadBuffer(int initialCapacity) {
+        data = new byte[Math.max(16, initialCapacity)];
+    }
+
+    public byte[] array() {
+        return data;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public void reset() {
+        length = 0;
+    }
+
+    /** Discards everything after the first {@code newLength} bytes. */
+    public void truncate(int newLength) {
+        if (newLength < 0 || newLength > length) {
+            throw new IndexOutOfBoundsException("length " + newLength + " of " + length);
+        }
+        length = newLength;
+    }
+
+    public void write(int b) {
+        ensureCapacity(length + 1);
+        data[length++] = (byte) b;
+    }
+
+    public void write(byte[] src, int offset, int count) {
+        ensureCapacity(length + count);
+        System.arraycopy(src, offset, data, length, count);
+        length += count;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(data, length);
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > data.length) {
+            data = Arrays.copyOf(data, Math.max(required, data.length * 2));
+        }
+    }
+}
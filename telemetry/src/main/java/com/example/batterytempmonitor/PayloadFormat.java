@@ -0,0 +1,18 @@
+package com.example.batterytempmonitor;
+
+/**
+ * Wire encoding for a batch of snapshots. {@link BatchingPublisher} calls
+ * {@link #beginBatch}, then {@link #appendRecord} for each snapshot, then
+ * {@link #endBatch}, all into the same buffer. Implementations may keep state
+ * between records of one batch (e.g. the previous timestamp for delta encoding),
+ * which is reset by {@link #beginBatch}. Not thread-safe.
+ */
+public interface PayloadFormat {
+
+    void beginBatch(PayloadBuffer out);
+
+    /** Appends one record; {@code index} is its position in the current batch. */
+    void appendRecord(MetricsSnapshot snapshot, int index, PayloadBuffer out);
+
+    void endBatch(PayloadBuffer out);
+}
@@ -0,0 +1,47 @@
+package com.example.batterytempmonitor;
+
+/**
+ * Settings of the data path that {@code TelemetryService} runs on a phone and the
+ * fleet simulator reproduces: the data topic, each source's sampling interval,
+ * the batch limits and the delta encoding. Keeping them here means a tuning change
+ * is simulated exactly as it will ship.
+ */
+public final class PipelineDefaults {
+    public static final String DATA_TOPIC = "device/metrics/data";
+
+    // Sampling interval of each metric source; storage and battery level change slowly
+    public static final long CPU_INTERVAL_MS = 5000;
+    public static final long MEMORY_INTERVAL_MS = 5000;
+    public static final long NETWORK_INTERVAL_MS = 5000;
+    public static final long BATTERY_TEMP_INTERVAL_MS = 5000;
+    public static final long BATTERY_LEVEL_INTERVAL_MS = 30000;
+    public static final long STORAGE_INTERVAL_MS = 60000;
+
+    // Batch up to a minute of samples into one MQTT message
+    public static final int BATCH_MAX_SAMPLES = 12;
+    public static final int BATCH_MAX_BYTES = 32 * 1024;
+    public static final long BATCH_MAX_LATENCY_MS = 60000;
+
+    // Only changed metrics are published between full keyframes sent every heartbeat
+    public static final long DELTA_HEARTBEAT_MS = 5 * 60 * 1000;
+
+    private PipelineDefaults() {
+    }
+
+    /** A delta filter with the deadbands the data topic is published with. */
+    public static DeltaFilter newDeltaFilter() {
+        return new DeltaFilter(DELTA_HEARTBEAT_MS)
+                .setDeadband(Metric.CPU_USAGE, 1.0, 0)
+                .setDeadband(Metric.CPU_MAX_CORE_USAGE, 5.0, 0)
+                .setDeadband(Metric.MEMORY_USAGE, 1.0, 0)
+                .setDeadband(Metric.RX_RATE, 1, 0.05)
+                .setDeadband(Metric.TX_RATE, 1, 0.05)
+                .setDeadband(Metric.APP_RX_RATE, 0.5, 0.05)
+                .setDeadband(Metric.APP_TX_RATE, 0.5, 0.05)
+                .setDeadband(Metric.STORAGE_AVAILABLE, 1024 * 1024, 0)
+                .setDeadband(Metric.BATTERY_TEMP, 0.2, 0)
+                // Cumulative counters change on every tick; the rates above carry the changes
+                .setKeyframeOnly(Metric.RX_BYTES)
+                .setKeyframeOnly(Metric.TX_BYTES);
+    }
+}
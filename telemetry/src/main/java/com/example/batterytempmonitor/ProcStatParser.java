@@ -0,0 +1,131 @@
+package com.example.batterytempmonitor;
+
+import java.util.Arrays;
+
+/**
+ * Parses the {@code cpu} lines at the top of {@code /proc/stat} without allocating.
+ *
+ * For the aggregate line (row 0) and each {@code cpuN} line (row N + 1) it records
+ * total and busy jiffies, where idle time is {@code idle + iowait} and busy time is
+ * everything else among user, nice, system, idle, iowait, irq, softirq and steal.
+ * Guest time is already included in user time, so it is not added again. Offline
+ * cores have no line and are reported as not present.
+ * Not thread-safe; reuse one parser per sampler.
+ */
+final class ProcStatParser {
+    /** Columns summed into the total: user nice system idle iowait irq softirq steal. */
+    private static final int COUNTED_FIELDS = 8;
+    private static final int IDLE = 3;
+    private static final int IOWAIT = 4;
+
+    private long[] busy;
+    private long[] total;
+    private boolean[] present;
+    private int rowCount;
+
+    ProcStatParser(int expectedCores) {
+        int rows = Math.max(expectedCores, 1) + 1;
+        busy = new long[rows];
+        total = new long[rows];
+        present = new boolean[rows];
+    }
+
+    /**
+     * Parses the first {@code length} bytes of {@code data}.
+     *
+     * @return false if the cpu block may continue past {@code length}, in which case
+     *         the caller should read more of the file and parse again
+     */
+    boolean parse(byte[] data, int length) {
+        Arrays.fill(present, false);
+        rowCount = 0;
+        int pos = 0;
+        while (pos < length) {
+            int lineEnd = pos;
+            while (lineEnd < length && data[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            if (lineEnd == length) {
+                // Last line is not terminated; it may have been cut off
+                return false;
+            }
+            if (!isCpuLine(data, pos, lineEnd)) {
+                return true;
+            }
+            parseCpuLine(data, pos + 3, lineEnd);
+            pos = lineEnd + 1;
+        }
+        return false;
+    }
+
+    private static boolean isCpuLine(byte[] data, int start, int end) {
+        return end - start > 3 && data[start] == 'c' && data[start + 1] == 'p' && data[start + 2] == 'u'
+                && (data[start + 3] == ' ' || isDigit(data[start + 3]));
+    }
+
+    private void parseCpuLine(byte[] data, int pos, int end) {
+        int row = 0;
+        if (isDigit(data[pos])) {
+            int core = 0;
+            while (pos < end && isDigit(data[pos])) {
+                core = core * 10 + (data[pos++] - '0');
+            }
+            row = core + 1;
+        }
+        ensureRows(row + 1);
+
+        long sum = 0;
+        long idle = 0;
+        for (int field = 0; field < COUNTED_FIELDS; field++) {
+            while (pos < end && data[pos] == ' ') {
+                pos++;
+            }
+            if (pos >= end) {
+                // Older kernels have fewer columns
+                break;
+            }
+            long value = 0;
+            while (pos < end && isDigit(data[pos])) {
+                value = value * 10 + (data[pos++] - '0');
+            }
+            sum += value;
+            if (field == IDLE || field == IOWAIT) {
+                idle += value;
+            }
+        }
+        total[row] = sum;
+        busy[row] = sum - idle;
+        present[row] = true;
+        rowCount = Math.max(rowCount, row + 1);
+    }
+
+    private void ensureRows(int rows) {
+        if (rows > total.length) {
+            int size = Math.max(rows, total.length * 2);
+            busy = Arrays.copyOf(busy, size);
+            total = Arrays.copyOf(total, size);
+            present = Arrays.copyOf(present, size);
+        }
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /** Rows seen in the last parse: 1 for the aggregate line plus the highest core index + 1. */
+    int getRowCount() {
+        return rowCount;
+    }
+
+    boolean isPresent(int row) {
+        return row < rowCount && present[row];
+    }
+
+    long getBusy(int row) {
+        return busy[row];
+    }
+
+    long getTotal(int row) {
+        return total[row];
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.batterytempmonitor;
+
+/**
+ * Turns readings of a monotonically increasing counter, such as transferred bytes,
+ * into a per-second rate.
+ *
+ * Each rate is the counter delta divided by the time actually elapsed between the
+ * two readings on a monotonic nanosecond clock, so scheduling jitter does not
+ * skew it. The first reading only sets the baseline. A counter that goes
+ * backwards (reboot, interface removed) is treated as a reset: that interval is
+ * skipped and measuring restarts from the new value. A negative reading means
+ * the counter is unsupported and also gives no rate.
+ *
+ * With a smoothing time constant, rates are combined in an exponentially weighted
+ * moving average whose weight follows the elapsed time, so uneven intervals are
+ * weighted correctly. Not thread-safe.
+ */
+public final class RateEstimator {
+    private final double smoothingNanos;
+
+    private boolean primed;
+    private long previousCount;
+    private long previousNanos;
+    private double rate = Double.NaN;
+    private long resets;
+
+    /** @param smoothingMillis EWMA time constant, or 0 to report every interval as measured */
+    public RateEstimator(long smoothingMillis) {
+        if (smoothingMillis < 0) {
+            throw new IllegalArgumentException("smoothingMillis must not be negative: " + smoothingMillis);
+        }
+        this.smoothingNanos = smoothingMillis * 1_000_000.0;
+    }
+
+    /**
+     * Records a counter reading taken at {@code nowNanos}.
+     *
+     * @return the rate per second, or NaN if there is none yet
+     */
+    public double update(long count, long nowNanos) {
+        if (count < 0) {
+            primed = false;
+            rate = Double.NaN;
+            return rate;
+        }
+        if (!primed) {
+            primed = true;
+            previousCount = count;
+            previousNanos = nowNanos;
+            return rate;
+        }
+        long elapsed = nowNanos - previousNanos;
+        if (elapsed <= 0) {
+            // No time has passed; keep the baseline and the last rate
+            return rate;
+        }
+        long delta = count - previousCount;
+        previousCount = count;
+        previousNanos = nowNanos;
+        if (delta < 0) {
+            resets++;
+            rate = Double.NaN;
+            return rate;
+        }
+
+        double measured = delta * 1e9 / elapsed;
+        if (smoothingNanos == 0 || Double.isNaN(rate)) {
+            rate = measured;
+        } else {
+            double alpha = 1 - Math.exp(-elapsed / smoothingNanos);
+            rate += alpha * (measured - rate);
+        }
+        return rate;
+    }
+
+    /** The last rate per second, or NaN. */
+    public double getRate() {
+        return rate;
+    }
+
+    /** Number of times the counter went backwards. */
+    public long getResetCount() {
+        return resets;
+    }
+
+    /** Forgets the baseline and the rate. */
+    public void reset() {
+        primed = false;
+        rate = Double.NaN;
+    }
+}
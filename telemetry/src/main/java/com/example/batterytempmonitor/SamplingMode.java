@@ -0,0 +1,33 @@
+package com.example.batterytempmonitor;
+
+/**
+ * Sampling cadence chosen by a {@link SamplingPolicy}, from most to least eager.
+ * Each mode scales the configured sampling intervals and the batch flush latency.
+ */
+public enum SamplingMode {
+    /** Charging on an unmetered link: sample and flush twice as often. */
+    FAST(0.5, 0.5),
+    NORMAL(1, 1),
+    /** Low battery, warm device or poor link: sample less, batch longer. */
+    SAVER(3, 5),
+    /** Nearly empty or hot: keep only a trickle of samples. */
+    CRITICAL(10, 10);
+
+    private final double samplingScale;
+    private final double flushScale;
+
+    SamplingMode(double samplingScale, double flushScale) {
+        this.samplingScale = samplingScale;
+        this.flushScale = flushScale;
+    }
+
+    /** Factor applied to every sampling interval. */
+    public double getSamplingScale() {
+        return samplingScale;
+    }
+
+    /** Factor applied to the batch flush latency. */
+    public double getFlushScale() {
+        return flushScale;
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.batterytempmonitor;
+
+/**
+ * Chooses the sampling mode for the current device conditions. Implementations
+ * must be deterministic: the same conditions and current mode give the same
+ * answer. The current mode is passed in so that a policy can use different
+ * thresholds for entering and leaving a mode (hysteresis).
+ */
+public interface SamplingPolicy {
+    SamplingMode select(DeviceConditions conditions, SamplingMode current);
+}
@@ -0,0 +1,279 @@
+package com.example.batterytempmonitor;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry of the monitor's own costs: a {@link LatencyHistogram} per pipeline
+ * stage and a set of event counters.
+ *
+ * Recording is lock-free and allocation-free, cheap enough to stay on in
+ * production: a stage costs two {@link System#nanoTime()} calls and two atomic
+ * adds, a counter one {@link LongAdder} increment. Gauges are read only when a
+ * {@link Report} is taken, so they cost nothing in between; use them for values
+ * other classes already keep, such as queue depth or connection attempts.
+ *
+ * Reports are cumulative since the registry was created. Subtract an earlier
+ * report with {@link Report#minus} to get the activity of one interval, e.g.
+ * for the periodic self topic.
+ */
+public final class SelfMetrics {
+
+    /** Pipeline stages with a latency histogram. */
+    public enum Stage {
+        /** Reading the due metric sources on one tick. */
+        SAMPLE("sample"),
+        /** Encoding one sample into the batch payload. */
+        ENCODE("encode"),
+        /** Encoding and appending one sample to the offline queue. */
+        ENQUEUE("enqueue"),
+        /** Handing one batch to the MQTT client. */
+        PUBLISH("publish"),
+        /** Writing and flushing one batch of log lines. */
+        DISK_WRITE("diskWrite"),
+        /** Appending one sample to the on-device history. */
+        HISTORY("history");
+
+        private final String key;
+
+        Stage(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    /** Events counted by the pipeline. */
+    public enum Counter {
+        TICKS("ticks"),
+        SAMPLE_ERRORS("sampleErrors"),
+        BATCHES_PUBLISHED("batchesPublished"),
+        SAMPLES_PUBLISHED("samplesPublished"),
+        PUBLISH_FAILURES("publishFailures"),
+        LOCAL_SAVES("localSaves"),
+        LOCAL_SAVE_FAILURES("localSaveFailures"),
+        LOG_WRITES("logWrites");
+
+        private final String key;
+
+        Counter(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final Counter[] COUNTERS = Counter.values();
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[STAGES.length];
+    private final LongAdder[] counters = new LongAdder[COUNTERS.length];
+    private final List<Gauge> gauges = new CopyOnWriteArrayList<>();
+    private final long startNanos = System.nanoTime();
+
+    public SelfMetrics() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    public void record(Stage stage, long nanos) {
+        histograms[stage.ordinal()].record(nanos);
+    }
+
+    /** Records the time elapsed since {@code startNanos}, a {@link System#nanoTime()} reading. */
+    public void recordSince(Stage stage, long startNanos) {
+        histograms[stage.ordinal()].recordSince(startNanos);
+    }
+
+    public void increment(Counter counter) {
+        counters[counter.ordinal()].increment();
+    }
+
+    public void add(Counter counter, long amount) {
+        counters[counter.ordinal()].add(amount);
+    }
+
+    public long get(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    public LatencyHistogram getHistogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    /** Adds a value read at report time, such as a queue depth. Names should be unique. */
+    public void addGauge(String name, LongSupplier value) {
+        gauges.add(new Gauge(name, value));
+    }
+
+    /** Everything recorded so far, with the current gauge values. */
+    public Report report(long timestampMillis) {
+        LatencyHistogram.Snapshot[] stages = new LatencyHistogram.Snapshot[histograms.length];
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = histograms[i].snapshot();
+        }
+        long[] counts = new long[counters.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = counters[i].sum();
+        }
+        Gauge[] currentGauges = gauges.toArray(new Gauge[0]);
+        String[] gaugeNames = new String[currentGauges.length];
+        long[] gaugeValues = new long[currentGauges.length];
+        for (int i = 0; i < currentGauges.length; i++) {
+            gaugeNames[i] = currentGauges[i].name;
+            gaugeValues[i] = currentGauges[i].value.getAsLong();
+        }
+        long uptimeMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        return new Report(timestampMillis, uptimeMillis, stages, counts, gaugeNames, gaugeValues);
+    }
+
+    private static final class Gauge {
+        final String name;
+        final LongSupplier value;
+
+        Gauge(String name, LongSupplier value) {
+            this.name = name;
+            this.value = value;
+        }
+    }
+
+    /** Immutable view of the registry at one point, or of the interval between two. */
+    public static final class Report {
+        private final long timestampMillis;
+        private final long durationMillis;
+        private final LatencyHistogram.Snapshot[] stages;
+        private final long[] counters;
+        private final String[] gaugeNames;
+        private final long[] gaugeValues;
+
+        Report(long timestampMillis, long durationMillis, LatencyHistogram.Snapshot[] stages, long[] counters,
+               String[] gaugeNames, long[] gaugeValues) {
+            this.timestampMillis = timestampMillis;
+            this.durationMillis = durationMillis;
+            this.stages = stages;
+            this.counters = counters;
+            this.gaugeNames = gaugeNames;
+            this.gaugeValues = gaugeValues;
+        }
+
+        /** The activity since {@code earlier}; gauges keep their current values. */
+        public Report minus(Report earlier) {
+            LatencyHistogram.Snapshot[] deltaStages = new LatencyHistogram.Snapshot[stages.length];
+            for (int i = 0; i < stages.length; i++) {
+                deltaStages[i] = stages[i].minus(earlier.stages[i]);
+            }
+            long[] deltaCounters = new long[counters.length];
+            for (int i = 0; i < counters.length; i++) {
+                deltaCounters[i] = counters[i] - earlier.counters[i];
+            }
+            return new Report(timestampMillis, durationMillis - earlier.durationMillis, deltaStages,
+                    deltaCounters, gaugeNames, gaugeValues);
+        }
+
+        public long getTimestampMillis() {
+            return timestampMillis;
+        }
+
+        /** Time covered: uptime of the registry, or the length of the interval. */
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        public LatencyHistogram.Snapshot get(Stage stage) {
+            return stages[stage.ordinal()];
+        }
+
+        public long get(Counter counter) {
+            return counters[counter.ordinal()];
+        }
+
+        /** The value of the named gauge, or -1 if there is none. */
+        public long getGauge(String name) {
+            for (int i = 0; i < gaugeNames.length; i++) {
+                if (gaugeNames[i].equals(name)) {
+                    return gaugeValues[i];
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Encodes the report for the self topic. Latencies are in microseconds:
+         * {@code {"deviceId":..,"timestamp":..,"durationMs":..,"stages":{"sample":
+         * {"count":..,"meanUs":..,"p50Us":..,"p95Us":..,"p99Us":..,"maxUs":..},..},
+         * "counters":{..},"gauges":{..}}}
+         */
+        public String toJson(String deviceId) {
+            StringBuilder json = new StringBuilder(1024);
+            json.append("{\"deviceId\":\"").append(JsonPayloadEncoder.escape(deviceId))
+                    .append("\",\"timestamp\":").append(timestampMillis)
+                    .append(",\"durationMs\":").append(durationMillis)
+                    .append(",\"stages\":{");
+            for (int i = 0; i < stages.length; i++) {
+                LatencyHistogram.Snapshot s = stages[i];
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append('"').append(STAGES[i].getKey()).append("\":{\"count\":").append(s.getCount())
+                        .append(",\"meanUs\":").append(micros((long) s.getMeanNanos()))
+                        .append(",\"p50Us\":").append(micros(s.getPercentileNanos(50)))
+                        .append(",\"p95Us\":").append(micros(s.getPercentileNanos(95)))
+                        .append(",\"p99Us\":").append(micros(s.getPercentileNanos(99)))
+                        .append(",\"maxUs\":").append(micros(s.getMaxNanos()))
+                        .append('}');
+            }
+            json.append("},\"counters\":{");
+            for (int i = 0; i < counters.length; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append('"').append(COUNTERS[i].getKey()).append("\":").append(counters[i]);
+            }
+            json.append("},\"gauges\":{");
+            for (int i = 0; i < gaugeNames.length; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append('"').append(JsonPayloadEncoder.escape(gaugeNames[i])).append("\":").append(gaugeValues[i]);
+            }
+            return json.append("}}").toString();
+        }
+
+        private static long micros(long nanos) {
+            return (nanos + 500) / 1000;
+        }
+
+        /** Multi-line table for the debug screen. */
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(1024);
+            text.append(String.format(Locale.US, "%-10s %8s %8s %8s %8s %8s%n",
+                    "stage (us)", "count", "p50", "p95", "p99", "max"));
+            for (int i = 0; i < stages.length; i++) {
+                LatencyHistogram.Snapshot s = stages[i];
+                text.append(String.format(Locale.US, "%-10s %8d %8d %8d %8d %8d%n", STAGES[i].getKey(),
+                        s.getCount(), micros(s.getPercentileNanos(50)), micros(s.getPercentileNanos(95)),
+                        micros(s.getPercentileNanos(99)), micros(s.getMaxNanos())));
+            }
+            text.append('\n');
+            for (int i = 0; i < counters.length; i++) {
+                text.append(String.format(Locale.US, "%-20s %10d%n", COUNTERS[i].getKey(), counters[i]));
+            }
+            for (int i = 0; i < gaugeNames.length; i++) {
+                text.append(String.format(Locale.US, "%-20s %10d%n", gaugeNames[i], gaugeValues[i]));
+            }
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.batterytempmonitor;
+
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * Records how long after start each phase of bringing the pipeline up first
+ * completed. The start is construction, or the last {@link #restart}, e.g. when
+ * the user actually starts the pipeline. Only the first occurrence of a phase counts, so reconnects do not
+ * overwrite the startup figures. Safe to use from any thread.
+ *
+ * The phases can be published as {@link SelfMetrics} gauges, so time to first
+ * publish is reported from the field along with the rest of the pipeline.
+ */
+public final class StartupTimer {
+
+    public enum Phase {
+        CREDENTIALS_LOADED("credentials"),
+        CONNECTED("connected"),
+        FIRST_PUBLISH("firstPublish");
+
+        private final String key;
+
+        Phase(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    private final LongSupplier nanoClock;
+    private long startNanos;
+    private final long[] elapsedMillis = new long[Phase.values().length];
+
+    /** Starts timing now, on the monotonic clock. */
+    public StartupTimer() {
+        this(System::nanoTime);
+    }
+
+    StartupTimer(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.startNanos = nanoClock.getAsLong();
+        Arrays.fill(elapsedMillis, -1);
+    }
+
+    /** Starts timing again from now and forgets every phase completed so far. */
+    public synchronized void restart() {
+        startNanos = nanoClock.getAsLong();
+        Arrays.fill(elapsedMillis, -1);
+    }
+
+    /**
+     * Records that {@code phase} has completed.
+     *
+     * @return true if this was its first completion
+     */
+    public synchronized boolean mark(Phase phase) {
+        if (elapsedMillis[phase.ordinal()] >= 0) {
+            return false;
+        }
+        elapsedMillis[phase.ordinal()] = (nanoClock.getAsLong() - startNanos) / 1_000_000;
+        return true;
+    }
+
+    /** Milliseconds from start until {@code phase} first completed, or -1 if it has not. */
+    public synchronized long getMillis(Phase phase) {
+        return elapsedMillis[phase.ordinal()];
+    }
+
+    /**
+     * Adds one gauge per phase to {@code metrics}, named after the phase key, e.g.
+     * {@code startupFirstPublishMs}. A gauge reads -1 until its phase completes.
+     */
+    public void addGauges(SelfMetrics metrics) {
+        for (Phase phase : Phase.values()) {
+            String key = phase.getKey();
+            metrics.addGauge("startup" + Character.toUpperCase(key.charAt(0)) + key.substring(1) + "Ms",
+                    () -> getMillis(phase));
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder("StartupTimer{");
+        for (Phase phase : Phase.values()) {
+            if (phase.ordinal() > 0) {
+                sb.append(", ");
+            }
+            sb.append(phase.getKey()).append('=');
+            long millis = elapsedMillis[phase.ordinal()];
+            sb.append(millis >= 0 ? millis + "ms" : "pending");
+        }
+        return sb.append('}').toString();
+    }
+}
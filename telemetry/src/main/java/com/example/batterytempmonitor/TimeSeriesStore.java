@@ -0,0 +1,529 @@
+package com.example.batterytempmonitor;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * On-device metric history at three resolutions: raw samples, one-minute and
+ * one-hour rollups.
+ *
+ * Each resolution is a fixed-size ring in a memory-mapped file laid out by
+ * column: one column of timestamps, then one column per metric (raw) or four per
+ * metric (rollups: mean, min, max, sample count). Disk usage is therefore fixed
+ * when the store is opened, and once a ring is full the oldest rows are
+ * overwritten. Appending writes straight into the mapping without allocating.
+ *
+ * Rollups are computed as samples arrive: a minute row is written when the first
+ * sample of the next minute comes in, and minute rows roll up into hour rows the
+ * same way, so queries see completed buckets only. The bucket in progress is
+ * rebuilt from the finer ring when the store is reopened. Timestamps must not go
+ * backwards; older samples are rejected and counted.
+ *
+ * The files record which metrics they hold. If that differs from the current
+ * {@link Metric} set, or the ring sizes change, the history is started afresh.
+ *
+ * All methods are synchronized; the store is normally written from the collector
+ * thread.
+ */
+public final class TimeSeriesStore implements Closeable {
+
+    public enum Resolution {
+        RAW(0, "raw"),
+        MINUTE(60_000L, "1m"),
+        HOUR(3_600_000L, "1h");
+
+        private final long bucketMillis;
+        private final String fileName;
+
+        Resolution(long bucketMillis, String fileName) {
+            this.bucketMillis = bucketMillis;
+            this.fileName = fileName;
+        }
+
+        /** Length of one rollup bucket; 0 for raw samples. */
+        public long getBucketMillis() {
+            return bucketMillis;
+        }
+    }
+
+    /** Rows of one metric returned by {@link #query}, oldest first. */
+    public static final class Series {
+        private static final Series EMPTY = new Series(0);
+
+        private final long[] timestamps;
+        private final double[] mean;
+        private final double[] min;
+        private final double[] max;
+        private final long[] counts;
+        private int size;
+
+        Series(int capacity) {
+            timestamps = new long[capacity];
+            mean = new double[capacity];
+            min = new double[capacity];
+            max = new double[capacity];
+            counts = new long[capacity];
+        }
+
+        /** A series without rows, e.g. while the store is not open yet. */
+        public static Series empty() {
+            return EMPTY;
+        }
+
+        void add(long timestampMillis, double mean, double min, double max, long count) {
+            this.timestamps[size] = timestampMillis;
+            this.mean[size] = mean;
+            this.min[size] = min;
+            this.max[size] = max;
+            this.counts[size] = count;
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /** Sample time, or the start of the bucket for rollups. */
+        public long getTimestampMillis(int index) {
+            return timestamps[index];
+        }
+
+        /** The sample value, or the mean over the bucket for rollups. */
+        public double getMean(int index) {
+            return mean[index];
+        }
+
+        public double getMin(int index) {
+            return min[index];
+        }
+
+        public double getMax(int index) {
+            return max[index];
+        }
+
+        /** Samples behind this row; 1 for a raw sample. */
+        public long getCount(int index) {
+            return counts[index];
+        }
+    }
+
+    static final int HEADER_BYTES = 512;
+    private static final int MAGIC = 0x54535331; // "TSS1"
+    private static final int VERSION = 1;
+    private static final int ROW_COUNT_OFFSET = 20;
+    private static final int WIRE_IDS_OFFSET = 28;
+
+    private static final int MEAN = 0;
+    private static final int MIN = 1;
+    private static final int MAX = 2;
+    private static final int COUNT = 3;
+    private static final int ROLLUP_STATS = 4;
+
+    private final Tier raw;
+    private final Tier minute;
+    private final Tier hour;
+    private final Accumulator minuteBucket;
+    private final Accumulator hourBucket;
+
+    // Scratch for raw samples, so appending does not allocate
+    private final double[] values = new double[Metric.COUNT];
+    private final long[] ones = new long[Metric.COUNT];
+
+    private long lastTimestampMillis = Long.MIN_VALUE;
+    private long rejected;
+    private boolean closed;
+
+    private TimeSeriesStore(Tier raw, Tier minute, Tier hour) {
+        this.raw = raw;
+        this.minute = minute;
+        this.hour = hour;
+        this.hourBucket = new Accumulator(hour, null);
+        this.minuteBucket = new Accumulator(minute, hourBucket);
+    }
+
+    /**
+     * Opens the store in {@code directory}, keeping at most the given number of rows
+     * per resolution. For example 17280 raw rows hold a day of 5 s samples.
+     */
+    public static TimeSeriesStore open(File directory, int rawRows, int minuteRows, int hourRows)
+            throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create history directory " + directory);
+        }
+        TimeSeriesStore store = new TimeSeriesStore(
+                Tier.open(directory, Resolution.RAW, rawRows, 1),
+                Tier.open(directory, Resolution.MINUTE, minuteRows, ROLLUP_STATS),
+                Tier.open(directory, Resolution.HOUR, hourRows, ROLLUP_STATS));
+        store.recover();
+        return store;
+    }
+
+    /**
+     * Records every metric present in {@code snapshot}.
+     *
+     * @return false if the snapshot is older than the last one and was rejected
+     */
+    public synchronized boolean append(MetricsSnapshot snapshot) {
+        checkOpen();
+        long timestamp = snapshot.getTimestampMillis();
+        if (timestamp < lastTimestampMillis) {
+            rejected++;
+            return false;
+        }
+        lastTimestampMillis = timestamp;
+        for (Metric metric : Metric.ALL) {
+            double value = snapshot.get(metric);
+            values[metric.ordinal()] = value;
+            ones[metric.ordinal()] = Double.isNaN(value) ? 0 : 1;
+        }
+        raw.appendRaw(timestamp, values);
+        minuteBucket.add(timestamp, values, values, values, ones);
+        return true;
+    }
+
+    /**
+     * Returns the rows of {@code metric} at {@code resolution} whose timestamps
+     * fall in {@code [fromMillis, toMillis]}. Rows where the metric was absent are
+     * left out.
+     */
+    public synchronized Series query(Metric metric, long fromMillis, long toMillis, Resolution resolution) {
+        checkOpen();
+        Tier tier = tier(resolution);
+        long first = tier.lowerBound(fromMillis);
+        int maxRows = (int) Math.max(0, tier.rowCount - first);
+        Series series = new Series(maxRows);
+        for (long row = first; row < tier.rowCount; row++) {
+            long timestamp = tier.timestampAt(row);
+            if (timestamp > toMillis) {
+                break;
+            }
+            if (tier.stats == 1) {
+                double value = tier.valueAt(row, metric.ordinal(), MEAN);
+                if (!Double.isNaN(value)) {
+                    series.add(timestamp, value, value, value, 1);
+                }
+            } else {
+                long count = (long) tier.valueAt(row, metric.ordinal(), COUNT);
+                if (count > 0) {
+                    series.add(timestamp, tier.valueAt(row, metric.ordinal(), MEAN),
+                            tier.valueAt(row, metric.ordinal(), MIN),
+                            tier.valueAt(row, metric.ordinal(), MAX), count);
+                }
+            }
+        }
+        return series;
+    }
+
+    /** Rows currently held at {@code resolution}. */
+    public synchronized int getRowCount(Resolution resolution) {
+        Tier tier = tier(resolution);
+        return (int) (tier.rowCount - tier.firstRow());
+    }
+
+    /** Timestamp of the oldest row still held at {@code resolution}, or -1 if empty. */
+    public synchronized long getOldestMillis(Resolution resolution) {
+        Tier tier = tier(resolution);
+        return tier.rowCount == 0 ? -1 : tier.timestampAt(tier.firstRow());
+    }
+
+    /** Samples rejected because their timestamp went backwards. */
+    public synchronized long getRejectedCount() {
+        return rejected;
+    }
+
+    /** Size of the store on disk; fixed once opened. */
+    public long getDiskBytes() {
+        return raw.fileBytes + minute.fileBytes + hour.fileBytes;
+    }
+
+    /** Forces the mapped files to disk. */
+    public synchronized void flush() {
+        checkOpen();
+        raw.buffer.force();
+        minute.buffer.force();
+        hour.buffer.force();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            flush();
+            closed = true;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "TimeSeriesStore{raw=" + getRowCount(Resolution.RAW) + ", 1m=" + getRowCount(Resolution.MINUTE)
+                + ", 1h=" + getRowCount(Resolution.HOUR) + ", rejected=" + rejected
+                + ", diskBytes=" + getDiskBytes() + '}';
+    }
+
+    private Tier tier(Resolution resolution) {
+        switch (resolution) {
+            case RAW:
+                return raw;
+            case MINUTE:
+                return minute;
+            default:
+                return hour;
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("History store is closed");
+        }
+    }
+
+    /**
+     * Rebuilds the buckets in progress: the current hour from minute rows newer
+     * than the last hour row, then the current minute from raw rows newer than the
+     * last minute row. A crash between writing a sample and its rollup loses nothing.
+     */
+    private void recover() {
+        hourBucket.replay(minute, after(hour));
+        minuteBucket.replay(raw, after(minute));
+        if (raw.rowCount > 0) {
+            lastTimestampMillis = raw.timestampAt(raw.rowCount - 1);
+        }
+    }
+
+    /** First timestamp not yet covered by the last row of a rollup tier. */
+    private static long after(Tier tier) {
+        if (tier.rowCount == 0) {
+            return Long.MIN_VALUE;
+        }
+        return tier.timestampAt(tier.rowCount - 1) + tier.resolution.bucketMillis;
+    }
+
+    /** Statistics of the bucket in progress for one rollup tier. */
+    private static final class Accumulator {
+        private final Tier tier;
+        private final Accumulator next;
+        private final long bucketMillis;
+        private final double[] sum = new double[Metric.COUNT];
+        private final double[] min = new double[Metric.COUNT];
+        private final double[] max = new double[Metric.COUNT];
+        private final long[] count = new long[Metric.COUNT];
+        private final double[] mean = new double[Metric.COUNT];
+        private long bucketStart = Long.MIN_VALUE;
+
+        Accumulator(Tier tier, Accumulator next) {
+            this.tier = tier;
+            this.next = next;
+            this.bucketMillis = tier.resolution.bucketMillis;
+            reset();
+        }
+
+        /** Adds one row of per-metric statistics; a sample is a row with count 1. */
+        void add(long timestampMillis, double[] means, double[] mins, double[] maxs, long[] counts) {
+            long bucket = Math.floorDiv(timestampMillis, bucketMillis) * bucketMillis;
+            if (bucket != bucketStart) {
+                if (bucketStart != Long.MIN_VALUE) {
+                    emit();
+                }
+                bucketStart = bucket;
+            }
+            for (int i = 0; i < Metric.COUNT; i++) {
+                long n = counts[i];
+                if (n == 0) {
+                    continue;
+                }
+                sum[i] += means[i] * n;
+                min[i] = Math.min(min[i], mins[i]);
+                max[i] = Math.max(max[i], maxs[i]);
+                count[i] += n;
+            }
+        }
+
+        private void emit() {
+            for (int i = 0; i < Metric.COUNT; i++) {
+                mean[i] = count[i] > 0 ? sum[i] / count[i] : Double.NaN;
+                if (count[i] == 0) {
+                    min[i] = Double.NaN;
+                    max[i] = Double.NaN;
+                }
+            }
+            tier.appendRollup(bucketStart, mean, min, max, count);
+            if (next != null) {
+                next.add(bucketStart, mean, min, max, count);
+            }
+            reset();
+        }
+
+        private void reset() {
+            Arrays.fill(sum, 0);
+            Arrays.fill(min, Double.POSITIVE_INFINITY);
+            Arrays.fill(max, Double.NEGATIVE_INFINITY);
+            Arrays.fill(count, 0);
+        }
+
+        /** Feeds the rows of {@code source} from {@code fromMillis} on through this accumulator. */
+        void replay(Tier source, long fromMillis) {
+            double[] means = new double[Metric.COUNT];
+            double[] mins = new double[Metric.COUNT];
+            double[] maxs = new double[Metric.COUNT];
+            long[] counts = new long[Metric.COUNT];
+            for (long row = source.lowerBound(fromMillis); row < source.rowCount; row++) {
+                for (int i = 0; i < Metric.COUNT; i++) {
+                    if (source.stats == 1) {
+                        double value = source.valueAt(row, i, MEAN);
+                        means[i] = value;
+                        mins[i] = value;
+                        maxs[i] = value;
+                        counts[i] = Double.isNaN(value) ? 0 : 1;
+                    } else {
+                        means[i] = source.valueAt(row, i, MEAN);
+                        mins[i] = source.valueAt(row, i, MIN);
+                        maxs[i] = source.valueAt(row, i, MAX);
+                        counts[i] = (long) source.valueAt(row, i, COUNT);
+                    }
+                }
+                add(source.timestampAt(row), means, mins, maxs, counts);
+            }
+        }
+    }
+
+    /**
+     * One resolution: a ring of {@code capacity} rows in a mapped file. After the
+     * header come the timestamp column and then {@code stats} columns per metric,
+     * each {@code capacity} 8-byte slots long.
+     */
+    private static final class Tier {
+        final Resolution resolution;
+        final int capacity;
+        final int stats;
+        final MappedByteBuffer buffer;
+        final long fileBytes;
+        long rowCount;
+
+        private Tier(Resolution resolution, int capacity, int stats, MappedByteBuffer buffer, long fileBytes,
+                     long rowCount) {
+            this.resolution = resolution;
+            this.capacity = capacity;
+            this.stats = stats;
+            this.buffer = buffer;
+            this.fileBytes = fileBytes;
+            this.rowCount = rowCount;
+        }
+
+        static Tier open(File directory, Resolution resolution, int capacity, int stats) throws IOException {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("Row capacity must be positive: " + capacity);
+            }
+            long columns = 1 + (long) Metric.COUNT * stats;
+            long fileBytes = HEADER_BYTES + columns * capacity * 8;
+            if (fileBytes > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many rows for one file: " + capacity);
+            }
+            File file = new File(directory, resolution.fileName + ".tss");
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                boolean compatible = raf.length() == fileBytes;
+                if (!compatible) {
+                    raf.setLength(0);
+                    raf.setLength(fileBytes);
+                }
+                // The mapping stays valid after the channel is closed
+                MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileBytes);
+                long rowCount = 0;
+                if (compatible && headerMatches(buffer, capacity, stats)) {
+                    rowCount = buffer.getLong(ROW_COUNT_OFFSET);
+                } else {
+                    writeHeader(buffer, capacity, stats);
+                }
+                return new Tier(resolution, capacity, stats, buffer, fileBytes, rowCount);
+            }
+        }
+
+        private static boolean headerMatches(MappedByteBuffer buffer, int capacity, int stats) {
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != capacity
+                    || buffer.getInt(12) != stats || buffer.getInt(16) != Metric.COUNT
+                    || buffer.getLong(ROW_COUNT_OFFSET) < 0) {
+                return false;
+            }
+            for (Metric metric : Metric.ALL) {
+                if (buffer.getInt(WIRE_IDS_OFFSET + 4 * metric.ordinal()) != metric.getWireId()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static void writeHeader(MappedByteBuffer buffer, int capacity, int stats) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, capacity);
+            buffer.putInt(12, stats);
+            buffer.putInt(16, Metric.COUNT);
+            buffer.putLong(ROW_COUNT_OFFSET, 0);
+            for (Metric metric : Metric.ALL) {
+                buffer.putInt(WIRE_IDS_OFFSET + 4 * metric.ordinal(), metric.getWireId());
+            }
+        }
+
+        long firstRow() {
+            return Math.max(0, rowCount - capacity);
+        }
+
+        private int slotOffset(int column, long row) {
+            return HEADER_BYTES + (column * capacity + (int) (row % capacity)) * 8;
+        }
+
+        long timestampAt(long row) {
+            return buffer.getLong(slotOffset(0, row));
+        }
+
+        double valueAt(long row, int metricIndex, int stat) {
+            return buffer.getDouble(slotOffset(1 + metricIndex * stats + stat, row));
+        }
+
+        void appendRaw(long timestampMillis, double[] values) {
+            long row = rowCount;
+            buffer.putLong(slotOffset(0, row), timestampMillis);
+            for (int i = 0; i < Metric.COUNT; i++) {
+                buffer.putDouble(slotOffset(1 + i, row), values[i]);
+            }
+            commit();
+        }
+
+        void appendRollup(long timestampMillis, double[] mean, double[] min, double[] max, long[] count) {
+            long row = rowCount;
+            buffer.putLong(slotOffset(0, row), timestampMillis);
+            for (int i = 0; i < Metric.COUNT; i++) {
+                int column = 1 + i * stats;
+                buffer.putDouble(slotOffset(column + MEAN, row), mean[i]);
+                buffer.putDouble(slotOffset(column + MIN, row), min[i]);
+                buffer.putDouble(slotOffset(column + MAX, row), max[i]);
+                buffer.putDouble(slotOffset(column + COUNT, row), count[i]);
+            }
+            commit();
+        }
+
+        /** Publishes the row just written; the count is stored after the row's data. */
+        private void commit() {
+            rowCount++;
+            buffer.putLong(ROW_COUNT_OFFSET, rowCount);
+        }
+
+        /** First row whose timestamp is at least {@code timestampMillis}. */
+        long lowerBound(long timestampMillis) {
+            long low = firstRow();
+            long high = rowCount;
+            while (low < high) {
+                long mid = (low + high) >>> 1;
+                if (timestampAt(mid) < timestampMillis) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.batterytempmonitor;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket rate limiter: tokens accrue at a fixed rate up to a burst size,
+ * and work may only proceed while enough tokens are available. Time comes from
+ * a monotonic clock. Not thread-safe.
+ */
+public final class TokenBucket {
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final double tokensPerNano;
+    private final long burst;
+    private final LongSupplier nanoClock;
+    private double tokens;
+    private long lastNanos;
+
+    /** Starts full, so the first {@code burst} tokens are available at once. */
+    public TokenBucket(long tokensPerSecond, long burst) {
+        this(tokensPerSecond, burst, System::nanoTime);
+    }
+
+    TokenBucket(long tokensPerSecond, long burst, LongSupplier nanoClock) {
+        if (tokensPerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("Rate and burst must be positive");
+        }
+        this.tokensPerNano = tokensPerSecond / NANOS_PER_SECOND;
+        this.burst = burst;
+        this.nanoClock = nanoClock;
+        this.tokens = burst;
+        this.lastNanos = nanoClock.getAsLong();
+    }
+
+    public long getBurst() {
+        return burst;
+    }
+
+    /** Whole tokens available now. */
+    public long available() {
+        refill();
+        return (long) tokens;
+    }
+
+    /** Takes {@code count} tokens if that many are available. */
+    public boolean tryAcquire(long count) {
+        refill();
+        if (tokens < count) {
+            return false;
+        }
+        tokens -= count;
+        return true;
+    }
+
+    private void refill() {
+        long now = nanoClock.getAsLong();
+        long elapsed = now - lastNanos;
+        if (elapsed > 0) {
+            tokens = Math.min(burst, tokens + elapsed * tokensPerNano);
+            lastNanos = now;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.batterytempmonitor;
+
+/**
+ * Cumulative byte counters for the device and per app UID, as provided by
+ * {@code TrafficStats} on Android. A negative value means the counter is not
+ * available (e.g. another app's UID on Android 7 and later).
+ */
+public interface TrafficCounters {
+    long getTotalRxBytes();
+
+    long getTotalTxBytes();
+
+    long getUidRxBytes(int uid);
+
+    long getUidTxBytes(int uid);
+}
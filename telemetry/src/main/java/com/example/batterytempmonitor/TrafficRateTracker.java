@@ -0,0 +1,98 @@
+package com.example.batterytempmonitor;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Receive and transmit rates for the whole device and for a fixed set of UIDs,
+ * read from {@link TrafficCounters} against a monotonic nanosecond clock.
+ * Not thread-safe; used on the collector thread.
+ */
+public final class TrafficRateTracker {
+    private final TrafficCounters counters;
+    private final LongSupplier nanoClock;
+    private final int[] uids;
+    private final RateEstimator totalRx;
+    private final RateEstimator totalTx;
+    private final RateEstimator[] uidRx;
+    private final RateEstimator[] uidTx;
+    private long lastTotalRxBytes = -1;
+    private long lastTotalTxBytes = -1;
+
+    /**
+     * @param nanoClock monotonic clock that keeps counting in deep sleep, e.g.
+     *                  {@code SystemClock.elapsedRealtimeNanos}
+     * @param uids      UIDs to break traffic down by
+     */
+    public TrafficRateTracker(TrafficCounters counters, LongSupplier nanoClock, long smoothingMillis, int... uids) {
+        this.counters = counters;
+        this.nanoClock = nanoClock;
+        this.uids = uids.clone();
+        this.totalRx = new RateEstimator(smoothingMillis);
+        this.totalTx = new RateEstimator(smoothingMillis);
+        this.uidRx = new RateEstimator[uids.length];
+        this.uidTx = new RateEstimator[uids.length];
+        for (int i = 0; i < uids.length; i++) {
+            uidRx[i] = new RateEstimator(smoothingMillis);
+            uidTx[i] = new RateEstimator(smoothingMillis);
+        }
+    }
+
+    /** Reads every counter once and updates all rates. */
+    public void update() {
+        long now = nanoClock.getAsLong();
+        lastTotalRxBytes = counters.getTotalRxBytes();
+        lastTotalTxBytes = counters.getTotalTxBytes();
+        totalRx.update(lastTotalRxBytes, now);
+        totalTx.update(lastTotalTxBytes, now);
+        for (int i = 0; i < uids.length; i++) {
+            uidRx[i].update(counters.getUidRxBytes(uids[i]), now);
+            uidTx[i].update(counters.getUidTxBytes(uids[i]), now);
+        }
+    }
+
+    /** Device receive rate in bytes per second, or NaN. */
+    public double getRxRate() {
+        return totalRx.getRate();
+    }
+
+    /** Device transmit rate in bytes per second, or NaN. */
+    public double getTxRate() {
+        return totalTx.getRate();
+    }
+
+    /** Device receive total from the last update, or -1 if unsupported. */
+    public long getTotalRxBytes() {
+        return lastTotalRxBytes;
+    }
+
+    /** Device transmit total from the last update, or -1 if unsupported. */
+    public long getTotalTxBytes() {
+        return lastTotalTxBytes;
+    }
+
+    /** Receive rate of {@code uid} in bytes per second, or NaN if it is not tracked or unknown. */
+    public double getUidRxRate(int uid) {
+        int i = indexOf(uid);
+        return i < 0 ? Double.NaN : uidRx[i].getRate();
+    }
+
+    /** Transmit rate of {@code uid} in bytes per second, or NaN if it is not tracked or unknown. */
+    public double getUidTxRate(int uid) {
+        int i = indexOf(uid);
+        return i < 0 ? Double.NaN : uidTx[i].getRate();
+    }
+
+    /** Counter resets seen on the device totals. */
+    public long getResetCount() {
+        return totalRx.getResetCount() + totalTx.getResetCount();
+    }
+
+    private int indexOf(int uid) {
+        for (int i = 0; i < uids.length; i++) {
+            if (uids[i] == uid) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
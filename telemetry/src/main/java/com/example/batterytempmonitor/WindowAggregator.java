@@ -0,0 +1,170 @@
+package com.example.batterytempmonitor;
+
+import java.util.Arrays;
+
+/**
+ * Accumulates high-rate samples per metric and reduces each window to
+ * count, min, max, mean and 95th percentile.
+ *
+ * Every metric has a primitive ring holding the last {@code capacity} samples of
+ * the window, used for the percentile; count, min, max and sum are kept exactly
+ * for all samples. {@link #add} and {@link #computeWindow} do not allocate; only
+ * {@link #closeWindow} allocates, once per window, for the snapshot it returns.
+ * Not thread-safe; used on the collector thread.
+ */
+public final class WindowAggregator {
+    private final int capacity;
+    private final double[][] rings = new double[Metric.COUNT][];
+    private final int[] counts = new int[Metric.COUNT];
+    private final double[] sums = new double[Metric.COUNT];
+    private final double[] mins = new double[Metric.COUNT];
+    private final double[] maxs = new double[Metric.COUNT];
+    private final double[] p95s = new double[Metric.COUNT];
+    private final double[] scratch;
+
+    public WindowAggregator(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        for (int i = 0; i < Metric.COUNT; i++) {
+            rings[i] = new double[capacity];
+        }
+        scratch = new double[capacity];
+        reset();
+    }
+
+    public void add(Metric metric, double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        int m = metric.ordinal();
+        rings[m][counts[m] % capacity] = value;
+        counts[m]++;
+        sums[m] += value;
+        if (value < mins[m]) {
+            mins[m] = value;
+        }
+        if (value > maxs[m]) {
+            maxs[m] = value;
+        }
+    }
+
+    /** Adds every metric the builder marked as sampled since its last {@code clearSampled()}. */
+    public void addSampled(MetricsSnapshot.Builder builder) {
+        for (Metric metric : Metric.ALL) {
+            if (builder.wasSampled(metric)) {
+                add(metric, builder.get(metric));
+            }
+        }
+    }
+
+    public int getCount(Metric metric) {
+        return counts[metric.ordinal()];
+    }
+
+    public double getMin(Metric metric) {
+        return counts[metric.ordinal()] == 0 ? Double.NaN : mins[metric.ordinal()];
+    }
+
+    public double getMax(Metric metric) {
+        return counts[metric.ordinal()] == 0 ? Double.NaN : maxs[metric.ordinal()];
+    }
+
+    public double getMean(Metric metric) {
+        int m = metric.ordinal();
+        return counts[m] == 0 ? Double.NaN : sums[m] / counts[m];
+    }
+
+    /** Valid after {@link #computeWindow()}. */
+    public double getP95(Metric metric) {
+        return p95s[metric.ordinal()];
+    }
+
+    /** Computes the percentiles of the current window without allocating. */
+    public void computeWindow() {
+        for (int m = 0; m < Metric.COUNT; m++) {
+            int n = Math.min(counts[m], capacity);
+            if (n == 0) {
+                p95s[m] = Double.NaN;
+                continue;
+            }
+            System.arraycopy(rings[m], 0, scratch, 0, n);
+            // Nearest-rank percentile
+            int rank = (int) Math.ceil(0.95 * n) - 1;
+            p95s[m] = select(scratch, n, rank);
+        }
+    }
+
+    /**
+     * Computes the window, returns it as a snapshot whose values are the window
+     * means, and starts a new window.
+     */
+    public MetricsSnapshot closeWindow(long timestampMillis, long durationMillis) {
+        computeWindow();
+        MetricsSnapshot.Builder builder = new MetricsSnapshot.Builder();
+        int[] windowCounts = new int[Metric.COUNT];
+        double[] windowMins = new double[Metric.COUNT];
+        double[] windowMaxs = new double[Metric.COUNT];
+        double[] windowP95s = new double[Metric.COUNT];
+        Arrays.fill(windowMins, Double.NaN);
+        Arrays.fill(windowMaxs, Double.NaN);
+        Arrays.fill(windowP95s, Double.NaN);
+        for (Metric metric : Metric.ALL) {
+            int m = metric.ordinal();
+            if (counts[m] == 0) {
+                continue;
+            }
+            builder.set(metric, sums[m] / counts[m]);
+            windowCounts[m] = counts[m];
+            windowMins[m] = mins[m];
+            windowMaxs[m] = maxs[m];
+            windowP95s[m] = p95s[m];
+        }
+        reset();
+        return builder.build(timestampMillis,
+                new WindowStats(durationMillis, windowCounts, windowMins, windowMaxs, windowP95s));
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        Arrays.fill(sums, 0);
+        Arrays.fill(mins, Double.POSITIVE_INFINITY);
+        Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+        Arrays.fill(p95s, Double.NaN);
+    }
+
+    /** Returns the k-th smallest of the first n values, reordering them in place (Hoare quickselect). */
+    static double select(double[] values, int n, int k) {
+        int left = 0;
+        int right = n - 1;
+        while (left < right) {
+            double pivot = values[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    double t = values[i];
+                    values[i] = values[j];
+                    values[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                break;
+            }
+        }
+        return values[k];
+    }
+}
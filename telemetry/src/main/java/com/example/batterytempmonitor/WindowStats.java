@@ -0,0 +1,45 @@
+package com.example.batterytempmonitor;
+
+/**
+ * Per-metric statistics over one aggregation window. The window mean is the
+ * snapshot value itself; this holds the rest. Immutable once built.
+ */
+public final class WindowStats {
+    private final long durationMillis;
+    private final int[] counts;
+    private final double[] mins;
+    private final double[] maxs;
+    private final double[] p95s;
+
+    WindowStats(long durationMillis, int[] counts, double[] mins, double[] maxs, double[] p95s) {
+        this.durationMillis = durationMillis;
+        this.counts = counts;
+        this.mins = mins;
+        this.maxs = maxs;
+        this.p95s = p95s;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public boolean has(Metric metric) {
+        return counts[metric.ordinal()] > 0;
+    }
+
+    public int getCount(Metric metric) {
+        return counts[metric.ordinal()];
+    }
+
+    public double getMin(Metric metric) {
+        return mins[metric.ordinal()];
+    }
+
+    public double getMax(Metric metric) {
+        return maxs[metric.ordinal()];
+    }
+
+    public double getP95(Metric metric) {
+        return p95s[metric.ordinal()];
+    }
+}
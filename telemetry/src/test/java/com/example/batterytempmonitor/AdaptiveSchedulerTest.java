@@ -0,0 +1,114 @@
+package com.example.batterytempmonitor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveSchedulerTest {
+    private static final long MINUTE = 60_000;
+    private static final long BASE_INTERVAL_MS = 5000;
+
+    private final DefaultSamplingPolicy policy = new DefaultSamplingPolicy();
+
+    @Test
+    public void policyUsesSeparateEnterAndExitThresholds() {
+        assertEquals(SamplingMode.NORMAL, policy.select(battery(21), SamplingMode.NORMAL));
+        assertEquals(SamplingMode.SAVER, policy.select(battery(20), SamplingMode.NORMAL));
+        assertEquals(SamplingMode.SAVER, policy.select(battery(24), SamplingMode.SAVER));
+        assertEquals(SamplingMode.NORMAL, policy.select(battery(26), SamplingMode.SAVER));
+
+        assertEquals(SamplingMode.CRITICAL, policy.select(battery(10), SamplingMode.SAVER));
+        assertEquals(SamplingMode.CRITICAL, policy.select(battery(14), SamplingMode.CRITICAL));
+        assertEquals(SamplingMode.SAVER, policy.select(battery(16), SamplingMode.CRITICAL));
+    }
+
+    @Test
+    public void policyReactsToChargingHeatAndLink() {
+        DeviceConditions chargingOnWifi = new DeviceConditions(5, true, 30, LinkQuality.UNMETERED);
+        assertEquals(SamplingMode.FAST, policy.select(chargingOnWifi, SamplingMode.NORMAL));
+
+        DeviceConditions hot = new DeviceConditions(90, true, 45, LinkQuality.UNMETERED);
+        assertEquals(SamplingMode.CRITICAL, policy.select(hot, SamplingMode.FAST));
+
+        DeviceConditions weakSignal = new DeviceConditions(90, false, 30, LinkQuality.POOR);
+        assertEquals(SamplingMode.SAVER, policy.select(weakSignal, SamplingMode.NORMAL));
+
+        DeviceConditions unknown = new DeviceConditions(Double.NaN, false, Double.NaN, LinkQuality.GOOD);
+        assertEquals(SamplingMode.NORMAL, policy.select(unknown, SamplingMode.NORMAL));
+    }
+
+    @Test
+    public void conservativeModesApplyAtOnceButRelaxingWaitsForDwell() {
+        List<SamplingMode> changes = new ArrayList<>();
+        AdaptiveScheduler scheduler = new AdaptiveScheduler(policy, 5 * MINUTE,
+                (previous, mode, conditions) -> changes.add(mode));
+
+        scheduler.update(battery(50), 0);
+        assertEquals(SamplingMode.SAVER, scheduler.update(battery(18), MINUTE));
+        // Plugged in a minute later: still saving until the dwell time has passed
+        DeviceConditions charging = new DeviceConditions(18, true, 30, LinkQuality.GOOD);
+        assertEquals(SamplingMode.SAVER, scheduler.update(charging, 2 * MINUTE));
+        assertEquals(SamplingMode.NORMAL, scheduler.update(charging, 6 * MINUTE));
+
+        assertEquals(List.of(SamplingMode.SAVER, SamplingMode.NORMAL), changes);
+    }
+
+    @Test
+    public void simulatedDaySavesSamplesWithoutFlapping() {
+        AdaptiveScheduler scheduler = new AdaptiveScheduler(policy, 2 * MINUTE, (previous, mode, conditions) -> { });
+        double[] result = simulateDay(scheduler);
+
+        // Fewer samples overall even though charging on Wi-Fi samples twice as often
+        assertTrue("saving " + result[0], result[0] > 0.15);
+        assertTrue(result[1] > 0);
+        assertTrue("transitions " + scheduler.getTransitionCount(), scheduler.getTransitionCount() <= 6);
+
+        // The same thresholds without hysteresis or dwell time flap on the noisy readings
+        AdaptiveScheduler naive = new AdaptiveScheduler(
+                (conditions, current) -> policy.select(conditions, SamplingMode.NORMAL), 0,
+                (previous, mode, conditions) -> { });
+        simulateDay(naive);
+        assertTrue("naive transitions " + naive.getTransitionCount(),
+                naive.getTransitionCount() > 3 * scheduler.getTransitionCount());
+    }
+
+    /**
+     * Replays 24 h in one-minute steps: discharge, a warm afternoon and an evening
+     * charge on Wi-Fi, with noisy level and temperature readings.
+     *
+     * @return the fraction of samples saved against a fixed schedule, and the minutes spent in critical mode
+     */
+    private static double[] simulateDay(AdaptiveScheduler scheduler) {
+        Random noise = new Random(99);
+        double level = 100;
+        double fixedSamples = 0;
+        double adaptiveSamples = 0;
+        long minutesInCritical = 0;
+
+        for (long minute = 0; minute < 24 * 60; minute++) {
+            boolean charging = minute >= 20 * 60 && minute < 22 * 60;
+            level = charging ? Math.min(100, level + 0.6) : Math.max(1, level - 0.11);
+            double temperature = (minute >= 13 * 60 && minute < 16 * 60 ? 39.5 : 31) + noise.nextGaussian() * 0.8;
+            LinkQuality link = charging ? LinkQuality.UNMETERED : LinkQuality.GOOD;
+            // Level readings jitter by a percent, as they do around a threshold on real devices
+            double reportedLevel = Math.round(level + noise.nextGaussian() * 0.7);
+
+            SamplingMode mode = scheduler.update(
+                    new DeviceConditions(reportedLevel, charging, temperature, link), minute * MINUTE);
+            fixedSamples += (double) MINUTE / BASE_INTERVAL_MS;
+            adaptiveSamples += MINUTE / (BASE_INTERVAL_MS * mode.getSamplingScale());
+            if (mode == SamplingMode.CRITICAL) {
+                minutesInCritical++;
+            }
+        }
+        return new double[] {1 - adaptiveSamples / fixedSamples, minutesInCritical};
+    }
+
+    private static DeviceConditions battery(double level) {
+        return new DeviceConditions(level, false, 30, LinkQuality.GOOD);
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.batterytempmonitor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class AsyncLoggerTest {
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    // 2025-03-13T23:59:58Z
+    private static final long BEFORE_MIDNIGHT = 1741910398000L;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void writesTimestampedLinesAndRotatesAtMidnight() throws IOException {
+        File dir = tmp.getRoot();
+        AsyncLogger logger = new AsyncLogger(dir, 64, 1024 * 1024, 8 * 1024 * 1024,
+                AsyncLogger.BackpressurePolicy.BLOCK, UTC);
+        logger.log(BEFORE_MIDNIGHT, "first");
+        logger.log(BEFORE_MIDNIGHT + 1000, "second");
+        logger.log(BEFORE_MIDNIGHT + 3000, "next day");
+        logger.close();
+
+        assertEquals(Arrays.asList("[23:59:58] first", "[23:59:59] second"),
+                readLines(new File(dir, "log_20250313.txt")));
+        assertEquals(Arrays.asList("[00:00:01] next day"),
+                readLines(new File(dir, "log_20250314.txt")));
+        assertEquals(3, logger.getWrittenCount());
+    }
+
+    @Test
+    public void rollsToNumberedFileAtSizeCapAndDeletesOldestPastTotalCap() throws IOException {
+        File dir = tmp.getRoot();
+        AsyncLogger logger = new AsyncLogger(dir, 1024, 100, 300,
+                AsyncLogger.BackpressurePolicy.BLOCK, UTC);
+        for (int i = 0; i < 100; i++) {
+            logger.log(BEFORE_MIDNIGHT - 60_000, String.format("message %03d", i));
+        }
+        logger.close();
+
+        File[] files = dir.listFiles();
+        long total = 0;
+        for (File file : files) {
+            assertTrue(file.getName(), file.getName().startsWith("log_20250313"));
+            total += file.length();
+        }
+        assertTrue(files.length > 1);
+        // Each file may overshoot by one line before rolling
+        assertTrue("total " + total, total <= 300 + 100 + 22);
+    }
+
+    @Test
+    public void concurrentProducersLoseNothingWhenBlocking() throws Exception {
+        File dir = tmp.getRoot();
+        AsyncLogger logger = new AsyncLogger(dir, 16, 1024 * 1024, 8 * 1024 * 1024,
+                AsyncLogger.BackpressurePolicy.BLOCK, UTC);
+        Thread[] producers = new Thread[4];
+        for (int p = 0; p < producers.length; p++) {
+            int id = p;
+            producers[p] = new Thread(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    logger.log(BEFORE_MIDNIGHT - 60_000, id + ":" + i);
+                }
+            });
+            producers[p].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        logger.close();
+
+        assertEquals(8000, logger.getWrittenCount());
+        assertEquals(0, logger.getDroppedCount());
+        assertEquals(8000, readLines(new File(dir, "log_20250313.txt")).size());
+    }
+
+    @Test
+    public void dropPolicyAccountsForEveryMessage() throws Exception {
+        AsyncLogger logger = new AsyncLogger(tmp.getRoot(), 4, 1024 * 1024, 8 * 1024 * 1024,
+                AsyncLogger.BackpressurePolicy.DROP, UTC);
+        int accepted = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (logger.log(BEFORE_MIDNIGHT - 60_000, "burst " + i)) {
+                accepted++;
+            }
+        }
+        logger.close();
+
+        assertEquals(accepted, logger.getWrittenCount());
+        assertEquals(10_000 - accepted, logger.getDroppedCount());
+        assertFalse(logger.log("after close"));
+    }
+
+    private static List<String> readLines(File file) throws IOException {
+        return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    }
+}
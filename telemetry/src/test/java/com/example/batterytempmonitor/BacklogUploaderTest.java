@@ -0,0 +1,264 @@
+package com.example.batterytempmonitor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.*;
+
+public class BacklogUploaderTest {
+    private static final String TOPIC = "device/metrics/backlog";
+    private static final int CHUNK_BYTES = 4096;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final FakeMqttTransport broker = new FakeMqttTransport();
+    private long nowNanos;
+
+    @Test
+    public void packsBacklogIntoChunksThatFitAndDecodeInOrder() throws Exception {
+        List<byte[]> records = records(2000);
+        try (OfflineQueue queue = queueOf(records);
+             BacklogUploader uploader = newUploader(queue, CHUNK_BYTES, null, unlimited())) {
+
+            assertEquals(2000, uploader.upload(Integer.MAX_VALUE));
+            assertEquals(0, queue.getPendingRecords());
+
+            List<byte[]> received = new ArrayList<>();
+            for (byte[] message : broker.messages) {
+                assertTrue("chunk of " + message.length + " bytes", message.length <= CHUNK_BYTES);
+                received.addAll(BacklogUploader.decodeChunk(message, 0, message.length, null));
+            }
+            assertEquals(records.size(), received.size());
+            for (int i = 0; i < records.size(); i++) {
+                assertArrayEquals("record " + i, records.get(i), received.get(i));
+            }
+            assertEquals(TOPIC, broker.topics.get(0));
+            assertEquals(broker.messages.size(), uploader.getChunksSent());
+            // Consecutive samples share most of their bytes
+            assertTrue("ratio " + uploader.getCompressionRatio(), uploader.getCompressionRatio() > 3);
+            assertTrue(broker.messages.size() < records.size() / 50);
+            assertTrue(uploader.getRecordsPerSecond() > 0);
+        }
+    }
+
+    @Test
+    public void failedPublishLeavesRecordsQueued() throws Exception {
+        try (OfflineQueue queue = queueOf(records(300));
+             BacklogUploader uploader = newUploader(queue, CHUNK_BYTES, null, unlimited())) {
+            broker.failPublish = true;
+            assertEquals(0, uploader.upload(10));
+            assertEquals(300, queue.getPendingRecords());
+            assertEquals(1, uploader.getPublishFailures());
+
+            broker.connected = false;
+            broker.failPublish = false;
+            assertEquals(0, uploader.upload(10));
+
+            broker.connected = true;
+            assertEquals(300, uploader.upload(10));
+            assertEquals(0, queue.getPendingRecords());
+        }
+    }
+
+    @Test
+    public void recordsStayQueuedUntilTheChunkIsAcknowledged() throws Exception {
+        broker.holdDeliveries = true;
+        try (OfflineQueue queue = queueOf(records(300));
+             BacklogUploader uploader = newUploader(queue, 1024, null, unlimited())) {
+            // The broker took the chunk but has not acknowledged it: nothing leaves the queue
+            assertEquals(0, uploader.upload(10));
+            assertEquals(1, broker.messages.size());
+            assertEquals(300, queue.getPendingRecords());
+            assertTrue(uploader.isAwaitingDelivery());
+
+            // Only one unacknowledged chunk at a time
+            assertEquals(0, uploader.upload(10));
+            assertEquals(1, broker.messages.size());
+
+            byte[] first = broker.messages.get(0);
+            int inFirst = BacklogUploader.decodeChunk(first, 0, first.length, null).size();
+            broker.acknowledge(0, true);
+            assertEquals(inFirst, uploader.upload(10));
+            assertEquals(300 - inFirst, queue.getPendingRecords());
+            assertEquals(2, broker.messages.size());
+
+            // No acknowledgement for the second chunk, e.g. the link dropped: it is sent again
+            nowNanos += BacklogUploader.ACK_TIMEOUT_MILLIS * 1_000_000;
+            assertEquals(0, uploader.upload(10));
+            assertEquals(1, uploader.getPublishFailures());
+            assertEquals(3, broker.messages.size());
+            assertArrayEquals(broker.messages.get(1), broker.messages.get(2));
+            assertEquals(300 - inFirst, queue.getPendingRecords());
+
+            // A failed delivery also leaves the records for the next attempt
+            broker.acknowledge(2, false);
+            assertEquals(0, uploader.upload(1));
+            assertEquals(2, uploader.getPublishFailures());
+            assertEquals(300 - inFirst, queue.getPendingRecords());
+            assertEquals(4, broker.messages.size());
+        }
+    }
+
+    @Test
+    public void rateLimitLeavesRoomForTheLiveStream() throws Exception {
+        // One chunk's worth of bytes per second
+        TokenBucket bucket = new TokenBucket(1024, 1024, () -> nowNanos);
+        try (OfflineQueue queue = queueOf(records(2000));
+             BacklogUploader uploader = newUploader(queue, 1024, null, bucket)) {
+
+            int first = uploader.upload(100);
+            assertTrue(first > 0);
+            assertEquals(1, broker.messages.size());
+            assertEquals(1, uploader.getThrottledCount());
+
+            nowNanos += 500_000_000;
+            assertEquals(0, uploader.upload(100));
+            nowNanos += 1_000_000_000;
+            assertTrue(uploader.upload(100) > 0);
+            assertEquals(2, broker.messages.size());
+        }
+    }
+
+    @Test
+    public void rateLimitChargesTheChunkActuallySent() throws Exception {
+        List<byte[]> records = records(5);
+        int length;
+        try (OfflineQueue queue = queueOf(records);
+             BacklogUploader uploader = newUploader(queue, 1024, null, unlimited())) {
+            uploader.upload(1);
+            length = broker.messages.get(0).length;
+        }
+        broker.messages.clear();
+        broker.topics.clear();
+
+        // One byte per second, and one byte short of the small chunk left in the bucket
+        TokenBucket bucket = new TokenBucket(1, 1024, () -> nowNanos);
+        assertTrue(bucket.tryAcquire(1024 - length + 1));
+        try (OfflineQueue queue = queueOf(records);
+             BacklogUploader uploader = newUploader(queue, 1024, null, bucket)) {
+            assertEquals(0, uploader.upload(1));
+            assertEquals(1, uploader.getThrottledCount());
+            assertTrue(broker.messages.isEmpty());
+
+            // The kept chunk goes out as soon as its own size is covered, not a full chunk's worth
+            nowNanos += 1_000_000_000;
+            assertEquals(5, uploader.upload(1));
+            assertEquals(length, broker.messages.get(0).length);
+            assertEquals(0, bucket.available());
+            assertEquals(0, queue.getPendingRecords());
+        }
+    }
+
+    @Test
+    public void presetDictionaryShrinksSmallChunks() throws Exception {
+        List<byte[]> records = records(400);
+        byte[] dictionary = dictionaryFrom(records(8));
+
+        double plain;
+        try (OfflineQueue queue = queueOf(records);
+             BacklogUploader uploader = newUploader(queue, 256, null, unlimited())) {
+            uploader.upload(Integer.MAX_VALUE);
+            plain = uploader.getCompressionRatio();
+        }
+        broker.messages.clear();
+        broker.topics.clear();
+        try (OfflineQueue queue = queueOf(records);
+             BacklogUploader uploader = newUploader(queue, 256, dictionary, unlimited())) {
+            uploader.upload(Integer.MAX_VALUE);
+            assertTrue(uploader.getCompressionRatio() + " vs " + plain, uploader.getCompressionRatio() > plain * 1.1);
+
+            byte[] first = broker.messages.get(0);
+            assertFalse(BacklogUploader.decodeChunk(first, 0, first.length, dictionary).isEmpty());
+            try {
+                BacklogUploader.decodeChunk(first, 0, first.length, null);
+                fail("Decoding without the dictionary should fail");
+            } catch (DataFormatException expected) {
+                // The zlib header names the dictionary it needs
+            }
+        }
+    }
+
+    @Test
+    public void oversizedRecordIsDroppedInsteadOfBlockingTheQueue() throws Exception {
+        List<byte[]> records = new ArrayList<>(records(3));
+        byte[] huge = new byte[2000];
+        new Random(7).nextBytes(huge);
+        records.add(0, huge);
+        try (OfflineQueue queue = queueOf(records);
+             BacklogUploader uploader = newUploader(queue, 1024, null, unlimited())) {
+            assertEquals(3, uploader.upload(10));
+            assertEquals(1, uploader.getOversizedDropped());
+        }
+    }
+
+    @Test
+    public void tokenBucketRefillsAtRateUpToBurst() {
+        TokenBucket bucket = new TokenBucket(100, 50, () -> nowNanos);
+        assertTrue(bucket.tryAcquire(50));
+        assertFalse(bucket.tryAcquire(1));
+        nowNanos += 200_000_000;
+        assertEquals(20, bucket.available());
+        nowNanos += 10_000_000_000L;
+        assertEquals(50, bucket.available());
+    }
+
+    private BacklogUploader newUploader(OfflineQueue queue, int chunkBytes, byte[] dictionary, TokenBucket bucket) {
+        return new BacklogUploader(queue, broker, TOPIC, chunkBytes, Deflater.DEFAULT_COMPRESSION, dictionary, bucket,
+                () -> nowNanos);
+    }
+
+    private TokenBucket unlimited() {
+        return new TokenBucket(Long.MAX_VALUE / 2, 1 << 30, () -> nowNanos);
+    }
+
+    private OfflineQueue queueOf(List<byte[]> records) throws IOException {
+        OfflineQueue queue = OfflineQueue.open(tmp.newFolder(), 64 * 1024, 16 * 1024 * 1024,
+                OfflineQueue.FsyncPolicy.NEVER);
+        for (byte[] record : records) {
+            queue.append(record);
+        }
+        return queue;
+    }
+
+    /** Single-sample binary frames, as the service queues them while offline. */
+    private static List<byte[]> records(int count) {
+        BinaryPayloadFormat format = new BinaryPayloadFormat("Pixel 7");
+        PayloadBuffer buffer = new PayloadBuffer(256);
+        Random random = new Random(count);
+        List<byte[]> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            MetricsSnapshot snapshot = new MetricsSnapshot.Builder()
+                    .set(Metric.CPU_USAGE, 20 + random.nextInt(10))
+                    .set(Metric.MEMORY_USAGE, 61.5)
+                    .set(Metric.RX_RATE, random.nextInt(4) * 0.5)
+                    .set(Metric.TX_RATE, 0.2)
+                    .set(Metric.BATTERY_TEMP, 31.4)
+                    .set(Metric.BATTERY_LEVEL, 80 - i / 200)
+                    .build(1_700_000_000_000L + i * 5000L);
+            buffer.reset();
+            format.beginBatch(buffer);
+            format.appendRecord(snapshot, 0, buffer);
+            format.endBatch(buffer);
+            records.add(buffer.toByteArray());
+        }
+        return records;
+    }
+
+    private static byte[] dictionaryFrom(List<byte[]> records) {
+        PayloadBuffer buffer = new PayloadBuffer(1024);
+        for (byte[] record : records) {
+            buffer.write(record, 0, record.length);
+        }
+        return Arrays.copyOf(buffer.array(), buffer.length());
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.batterytempmonitor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BatchingPublisherTest {
+    private static final String TOPIC = "device/metrics/data";
+
+    private FakeMqttTransport transport;
+    private long now;
+    private List<String> undelivered;
+
+    @Before
+    public void setUp() {
+        transport = new FakeMqttTransport();
+        now = 0;
+        undelivered = new ArrayList<>();
+    }
+
+    @Test
+    public void flushesWhenRecordLimitIsReached() {
+        BatchingPublisher publisher = newPublisher(3, 4096, 60_000);
+
+        publisher.publish(record(1));
+        publisher.publish(record(2));
+        assertTrue(transport.messages.isEmpty());
+        publisher.publish(record(3));
+
+        assertEquals(1, transport.messages.size());
+        assertEquals(TOPIC, transport.topics.get(0));
+        assertEquals("[{\"n\":1},{\"n\":2},{\"n\":3}]", transport.messageAsString(0));
+        assertEquals(0, publisher.getPendingCount());
+    }
+
+    @Test
+    public void flushesBeforeExceedingByteLimit() {
+        // Each record is 7 bytes; "[r,r]" is 16 bytes, a third record would make 24
+        BatchingPublisher publisher = newPublisher(100, 20, 60_000);
+
+        publisher.publish(record(1));
+        publisher.publish(record(2));
+        publisher.publish(record(3));
+
+        assertEquals(1, transport.messages.size());
+        assertEquals("[{\"n\":1},{\"n\":2}]", transport.messageAsString(0));
+        assertEquals(1, publisher.getPendingCount());
+    }
+
+    @Test
+    public void flushesWhenOldestSampleExceedsLatency() {
+        BatchingPublisher publisher = newPublisher(100, 4096, 10_000);
+
+        publisher.publish(record(1));
+        now = 5_000;
+        publisher.flushIfDue();
+        assertTrue(transport.messages.isEmpty());
+
+        now = 10_000;
+        publisher.flushIfDue();
+        assertEquals(1, transport.messages.size());
+        assertEquals("[{\"n\":1}]", transport.messageAsString(0));
+    }
+
+    @Test
+    public void suppressedSamplesStillFlushAStaleBatch() {
+        BatchingPublisher publisher = newPublisher(100, 4096, 10_000);
+        DeltaFilter filter = new DeltaFilter(300_000).setDeadband(Metric.BATTERY_TEMP, 0.5, 0);
+
+        assertNotNull(publisher.publish(temperature(0, 30.0), filter));
+        // Nothing changes after that, so every later tick is suppressed
+        now = 5_000;
+        assertNull(publisher.publish(temperature(now, 30.1), filter));
+        assertTrue(transport.messages.isEmpty());
+
+        now = 10_000;
+        assertNull(publisher.publish(temperature(now, 30.1), filter));
+        assertEquals(1, transport.messages.size());
+        assertEquals("[{\"n\":0}]", transport.messageAsString(0));
+        assertEquals(0, publisher.getPendingCount());
+    }
+
+    @Test
+    public void undeliveredSamplesAreHandedBackIndividually() {
+        BatchingPublisher publisher = newPublisher(2, 4096, 60_000);
+        transport.connected = false;
+
+        publisher.publish(record(1));
+        publisher.publish(record(2));
+
+        assertTrue(transport.messages.isEmpty());
+        assertEquals(2, undelivered.size());
+        assertEquals("{\"n\":1}", undelivered.get(0));
+        assertEquals("{\"n\":2}", undelivered.get(1));
+        assertEquals(2, publisher.getSamplesUndelivered());
+
+        transport.connected = true;
+        transport.failPublish = true;
+        publisher.publish(record(3));
+        publisher.flush();
+        assertEquals(3, undelivered.size());
+    }
+
+    @Test
+    public void jsonFormatProducesArrayOfSampleObjects() {
+        BatchingPublisher publisher = new BatchingPublisher(transport, TOPIC, new JsonPayloadFormat("dev"),
+                2, 4096, 60_000, () -> now);
+
+        publisher.publish(new MetricsSnapshot.Builder().set(Metric.BATTERY_LEVEL, 50).build(0));
+        publisher.publish(new MetricsSnapshot.Builder().set(Metric.BATTERY_LEVEL, 49).build(5000));
+
+        String item = "{\"deviceId\":\"dev\",\"timestamp\":%d,\"datetimeISO\":\"1970-01-01T00:00:0%dZ\","
+                + "\"metrics\":{\"batteryLevel\":%s}}";
+        assertEquals("[" + String.format(item, 0, 0, "50.0") + "," + String.format(item, 5000, 5, "49.0") + "]",
+                transport.messageAsString(0));
+    }
+
+    @Test
+    public void countersReportMessageRateAndBytesPerSample() {
+        BatchingPublisher publisher = newPublisher(2, 4096, 60_000);
+
+        for (int i = 0; i < 6; i++) {
+            now = i * 5_000L;
+            publisher.publish(record(i));
+        }
+
+        // Three messages of "[{"n":x},{"n":y}]" (17 bytes) at t=5s, 15s and 25s
+        assertEquals(3, publisher.getMessagesPublished());
+        assertEquals(6, publisher.getSamplesPublished());
+        assertEquals(51, publisher.getBytesPublished());
+        assertEquals(8.5, publisher.getBytesPerSample(), 1e-9);
+        assertEquals(0.1, publisher.getMessagesPerSecond(), 1e-9);
+    }
+
+    private BatchingPublisher newPublisher(int maxRecords, int maxBytes, long maxLatencyMillis) {
+        BatchingPublisher publisher = new BatchingPublisher(transport, TOPIC, new TimestampFormat(),
+                maxRecords, maxBytes, maxLatencyMillis, () -> now);
+        publisher.setUndeliveredHandler(snapshot ->
+                undelivered.add("{\"n\":" + snapshot.getTimestampMillis() + "}"));
+        return publisher;
+    }
+
+    private static MetricsSnapshot record(int n) {
+        return new MetricsSnapshot.Builder().build(n);
+    }
+
+    private static MetricsSnapshot temperature(long timestamp, double value) {
+        return new MetricsSnapshot.Builder().set(Metric.BATTERY_TEMP, value).build(timestamp);
+    }
+
+    /** JSON array of {"n":timestamp} objects, so sizes in these tests are easy to count. */
+    private static final class TimestampFormat implements PayloadFormat {
+        @Override
+        public void beginBatch(PayloadBuffer out) {
+            out.write('[');
+        }
+
+        @Override
+        public void appendRecord(MetricsSnapshot snapshot, int index, PayloadBuffer out) {
+            if (index > 0) {
+                out.write(',');
+            }
+            byte[] bytes = ("{\"n\":" + snapshot.getTimestampMillis() + "}").getBytes(StandardCharsets.UTF_8);
+            out.write(bytes, 0, bytes.length);
+        }
+
+        @Override
+        public void endBatch(PayloadBuffer out) {
+            out.write(']');
+        }
+    }
+}
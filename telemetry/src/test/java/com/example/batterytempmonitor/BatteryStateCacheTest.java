@@ -0,0 +1,113 @@
+package com.example.batterytempmonitor;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class BatteryStateCacheTest {
+
+    @Test
+    public void sourcesReportNothingUntilFirstUpdate() throws Exception {
+        BatteryStateCache cache = new BatteryStateCache();
+        MetricsSnapshot.Builder out = new MetricsSnapshot.Builder();
+        new BatteryTemperatureSource(cache, 5000).sample(out);
+        new BatteryLevelSource(cache, 30000).sample(out);
+        assertFalse(out.build(0).has(Metric.BATTERY_TEMP));
+        assertFalse(out.build(0).has(Metric.BATTERY_LEVEL));
+
+        // Extras as delivered with ACTION_BATTERY_CHANGED
+        new FakeBatteryEvents(cache).changed(-52, 77, 100);
+        new BatteryTemperatureSource(cache, 5000).sample(out);
+        new BatteryLevelSource(cache, 30000).sample(out);
+
+        assertEquals(-5.2, out.get(Metric.BATTERY_TEMP), 1e-9);
+        assertEquals(77.0, out.get(Metric.BATTERY_LEVEL), 1e-9);
+    }
+
+    @Test
+    public void levelIsScaledAndKeptWhenMissing() {
+        BatteryStateCache cache = new BatteryStateCache();
+        FakeBatteryEvents events = new FakeBatteryEvents(cache);
+
+        events.changed(301, 3, 8);
+        assertEquals(37.5, cache.getLevelPercent(), 1e-9);
+
+        events.changed(305, -1, -1);
+        assertEquals(37.5, cache.getLevelPercent(), 1e-9);
+        assertEquals(30.5, cache.getTemperatureCelsius(), 1e-9);
+    }
+
+    @Test
+    public void missingTemperatureKeepsThePreviousReading() throws Exception {
+        BatteryStateCache cache = new BatteryStateCache();
+        MetricsSnapshot.Builder out = new MetricsSnapshot.Builder();
+
+        // An update without EXTRA_TEMPERATURE before any reading: no temperature at all, not 0 C
+        cache.update(BatteryStateCache.UNKNOWN_TEMPERATURE, 50, 100, false);
+        new BatteryTemperatureSource(cache, 5000).sample(out);
+        assertFalse(out.build(0).has(Metric.BATTERY_TEMP));
+        assertTrue(Double.isNaN(cache.getTemperatureCelsius()));
+        assertEquals(50.0, cache.getLevelPercent(), 1e-9);
+
+        cache.update(312, 49, 100, false);
+        cache.update(BatteryStateCache.UNKNOWN_TEMPERATURE, 48, 100, true);
+        new BatteryTemperatureSource(cache, 5000).sample(out);
+        assertEquals(31.2, out.get(Metric.BATTERY_TEMP), 1e-9);
+        assertEquals(48.0, cache.getLevelPercent(), 1e-9);
+        assertTrue(cache.isCharging());
+    }
+
+    @Test
+    public void missingLevelBeforeAnyReadingIsNotReportedAsZero() throws Exception {
+        BatteryStateCache cache = new BatteryStateCache();
+        MetricsSnapshot.Builder out = new MetricsSnapshot.Builder();
+
+        cache.update(300, -1, -1, false);
+        new BatteryLevelSource(cache, 30000).sample(out);
+        assertFalse(out.build(0).has(Metric.BATTERY_LEVEL));
+        assertTrue(cache.hasTemperature());
+        assertFalse(cache.hasLevel());
+    }
+
+    @Test
+    public void readersNeverSeeTornUpdates() throws Exception {
+        BatteryStateCache cache = new BatteryStateCache();
+        FakeBatteryEvents events = new FakeBatteryEvents(cache);
+        events.changed(0, 0, 1000);
+        AtomicBoolean done = new AtomicBoolean();
+
+        // Every event carries the same number as temperature and level, so a mixed read shows up
+        Thread broadcaster = new Thread(() -> {
+            for (int i = 0; i < 2_000_000; i++) {
+                int value = i % 1000;
+                events.changed(value, value, 1000);
+            }
+            done.set(true);
+        });
+        broadcaster.start();
+        long reads = 0;
+        while (!done.get()) {
+            long state = cache.getState();
+            assertEquals(BatteryStateCache.temperatureOf(state), BatteryStateCache.levelOf(state), 1e-9);
+            reads++;
+        }
+        broadcaster.join();
+        assertTrue(reads > 0);
+        assertEquals(99.9, cache.getTemperatureCelsius(), 1e-9);
+    }
+
+    /** Stands in for the broadcast receiver, delivering battery-changed extras to the cache. */
+    private static final class FakeBatteryEvents {
+        private final BatteryStateCache cache;
+
+        FakeBatteryEvents(BatteryStateCache cache) {
+            this.cache = cache;
+        }
+
+        void changed(int temperatureTenths, int level, int scale) {
+            cache.update(temperatureTenths, level, scale, false);
+        }
+    }
+}
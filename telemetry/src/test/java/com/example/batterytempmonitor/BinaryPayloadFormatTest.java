@@ -0,0 +1,126 @@
+package com.example.batterytempmonitor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BinaryPayloadFormatTest {
+    private static final long START = 1741910398000L;
+
+    @Test
+    public void roundTripsBatchWithinMetricPrecision() {
+        List<MetricsSnapshot> samples = trace(20, new Random(7));
+        BinaryPayloadDecoder.Frame frame = BinaryPayloadDecoder.decode(encode(new BinaryPayloadFormat("Pixel 7"), samples));
+
+        assertEquals("Pixel 7", frame.getDeviceId());
+        assertEquals(samples.size(), frame.getRecords().size());
+        for (int i = 0; i < samples.size(); i++) {
+            MetricsSnapshot expected = samples.get(i);
+            MetricsSnapshot actual = frame.getRecords().get(i);
+            assertEquals(expected.getTimestampMillis(), actual.getTimestampMillis());
+            for (Metric metric : Metric.ALL) {
+                assertEquals(metric.name(), expected.has(metric), actual.has(metric));
+                if (expected.has(metric)) {
+                    double tolerance = 0.5 / BinaryPayloadFormat.POWERS_OF_TEN[metric.getDecimals()];
+                    assertEquals(metric.name(), expected.get(metric), actual.get(metric), tolerance + 1e-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void handlesOutOfOrderTimestampsAndNegativeValues() {
+        List<MetricsSnapshot> samples = new ArrayList<>();
+        samples.add(new MetricsSnapshot.Builder().set(Metric.BATTERY_TEMP, -12.3).build(START));
+        samples.add(new MetricsSnapshot.Builder().build(START - 60_000));
+
+        List<MetricsSnapshot> decoded = BinaryPayloadDecoder.decode(
+                encode(new BinaryPayloadFormat(""), samples)).getRecords();
+
+        assertEquals(-12.3, decoded.get(0).get(Metric.BATTERY_TEMP), 1e-9);
+        assertEquals(START - 60_000, decoded.get(1).getTimestampMillis());
+        assertFalse(decoded.get(1).has(Metric.BATTERY_TEMP));
+    }
+
+    @Test
+    public void binaryBatchIsMuchSmallerThanJson() {
+        List<MetricsSnapshot> samples = trace(12, new Random(11));
+        int json = encode(new JsonPayloadFormat("Pixel 7"), samples).length;
+        int binary = encode(new BinaryPayloadFormat("Pixel 7"), samples).length;
+
+        assertTrue("binary " + binary + " vs json " + json, binary * 5 < json);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTruncatedFrame() {
+        byte[] frame = encode(new BinaryPayloadFormat("Pixel 7"), trace(2, new Random(3)));
+        BinaryPayloadDecoder.decode(frame, 0, frame.length - 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownVersion() {
+        BinaryPayloadDecoder.decode(new byte[]{(byte) 99, 0, 0});
+    }
+
+    @Test
+    public void roundTripsWindowStatistics() {
+        WindowAggregator aggregator = new WindowAggregator(30);
+        for (int i = 0; i < 30; i++) {
+            aggregator.add(Metric.CPU_USAGE, 10 + i * 1.25);
+            aggregator.add(Metric.BATTERY_TEMP, 30 + i * 0.1);
+        }
+        List<MetricsSnapshot> samples = new ArrayList<>();
+        samples.add(trace(1, new Random(1)).get(0));
+        samples.add(aggregator.closeWindow(START + 30000, 30000));
+
+        List<MetricsSnapshot> records = BinaryPayloadDecoder.decode(
+                encode(new BinaryPayloadFormat("Pixel 7"), samples)).getRecords();
+
+        assertNull(records.get(0).getWindow());
+        WindowStats expected = samples.get(1).getWindow();
+        WindowStats actual = records.get(1).getWindow();
+        assertNotNull(actual);
+        assertEquals(30000, actual.getDurationMillis());
+        for (Metric metric : Metric.ALL) {
+            assertEquals(metric.name(), expected.has(metric), actual.has(metric));
+            if (expected.has(metric)) {
+                double tolerance = 0.5 / BinaryPayloadFormat.POWERS_OF_TEN[metric.getDecimals()] + 1e-9;
+                assertEquals(expected.getCount(metric), actual.getCount(metric));
+                assertEquals(expected.getMin(metric), actual.getMin(metric), tolerance);
+                assertEquals(expected.getMax(metric), actual.getMax(metric), tolerance);
+                assertEquals(expected.getP95(metric), actual.getP95(metric), tolerance);
+                assertEquals(samples.get(1).get(metric), records.get(1).get(metric), tolerance);
+            }
+        }
+    }
+
+    static List<MetricsSnapshot> trace(int count, Random random) {
+        List<MetricsSnapshot> samples = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            samples.add(new MetricsSnapshot.Builder()
+                    .set(Metric.CPU_USAGE, 20 + random.nextDouble() * 60)
+                    .set(Metric.RX_BYTES, 1_000_000_000L + i * 50_000L)
+                    .set(Metric.TX_BYTES, 200_000_000L + i * 8_000L)
+                    .set(Metric.STORAGE_AVAILABLE, 12_345_678_901L)
+                    .set(Metric.STORAGE_TOTAL, 64_000_000_000L)
+                    .set(Metric.BATTERY_TEMP, 28 + random.nextDouble() * 8)
+                    .set(Metric.BATTERY_LEVEL, 90 - i * 0.5)
+                    .build(START + i * 5000L + random.nextInt(40)));
+        }
+        return samples;
+    }
+
+    private static byte[] encode(PayloadFormat format, List<MetricsSnapshot> samples) {
+        PayloadBuffer out = new PayloadBuffer(256);
+        format.beginBatch(out);
+        for (int i = 0; i < samples.size(); i++) {
+            format.appendRecord(samples.get(i), i, out);
+        }
+        format.endBatch(out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.batterytempmonitor;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ConnectionManagerTest {
+    private static final long TIMEOUT_MS = 5000;
+
+    private final FakeMqttBroker broker = new FakeMqttBroker();
+    private final List<ConnectionManager.State> states = new ArrayList<>();
+    private final AtomicInteger drains = new AtomicInteger();
+    private ConnectionManager manager;
+
+    @After
+    public void tearDown() {
+        if (manager != null) {
+            manager.shutdown();
+        }
+        broker.shutdown();
+    }
+
+    @Test
+    public void backoffCeilingDoublesUpToMaximum() {
+        ExponentialBackoff backoff = new ExponentialBackoff(1000, 60_000, () -> 0.5);
+
+        assertEquals(1000, backoff.getCeilingMillis(0));
+        assertEquals(2000, backoff.getCeilingMillis(1));
+        assertEquals(32_000, backoff.getCeilingMillis(5));
+        assertEquals(60_000, backoff.getCeilingMillis(6));
+        assertEquals(60_000, backoff.getCeilingMillis(Integer.MAX_VALUE));
+        assertEquals(16_000, backoff.nextDelayMillis(5));
+    }
+
+    @Test
+    public void fullJitterSpreadsClientsThatFailTogether() {
+        // A thousand phones lose the broker at the same moment and retry for the fourth time
+        Random random = new Random(42);
+        ExponentialBackoff backoff = new ExponentialBackoff(1000, 60_000, random::nextDouble);
+        int[] perSecond = new int[8];
+        for (int i = 0; i < 1000; i++) {
+            long delay = backoff.nextDelayMillis(3);
+            assertTrue(delay >= 0 && delay < 8000);
+            perSecond[(int) (delay / 1000)]++;
+        }
+        // Evenly spread over the 8 s window instead of all arriving together
+        for (int count : perSecond) {
+            assertTrue("per second " + count, count > 90 && count < 160);
+        }
+    }
+
+    @Test
+    public void retriesWithGrowingBackoffUntilBrokerAccepts() throws Exception {
+        broker.then(FakeMqttBroker.Outcome.REFUSE, 2).then(FakeMqttBroker.Outcome.THROW, 1);
+        manager = newManager(5, 1000, 0.999);
+
+        manager.start();
+        awaitDrains(1);
+
+        assertTrue(manager.isConnected());
+        assertEquals(4, manager.getAttemptCount());
+        assertEquals(3, manager.getFailureCount());
+        assertEquals(1, manager.getConnectCount());
+        assertEquals(0, manager.getConsecutiveFailures());
+        // Ceilings of 5, 10 and 20 ms, each scaled by the injected jitter
+        assertEquals(4 + 9 + 19, manager.getTotalRetryDelayMillis());
+        assertTrue(manager.getLastConnectMillis() >= 0);
+        // Every failed attempt is cleaned up before the next one
+        assertEquals(3, broker.disconnectCalls);
+    }
+
+    @Test
+    public void teardownRunsBeforeAZeroDelayRetry() throws Exception {
+        broker.then(FakeMqttBroker.Outcome.REFUSE, 3);
+        // Full jitter can draw a delay of 0 ms
+        manager = newManager(5, 1000, 0.0);
+
+        manager.start();
+        awaitDrains(1);
+
+        String connect = "connect@" + ConnectionManager.THREAD_NAME;
+        String disconnect = "disconnect@" + ConnectionManager.THREAD_NAME;
+        synchronized (broker) {
+            // Torn down on the manager's thread, never from the broker's callback, before each retry
+            assertEquals(List.of(connect, disconnect, connect, disconnect, connect, disconnect, connect),
+                    broker.calls);
+        }
+    }
+
+    @Test
+    public void lostConnectionReconnectsAndDrainsAgain() throws Exception {
+        manager = newManager(5, 1000, 0.5);
+
+        manager.start();
+        awaitDrains(1);
+        broker.dropConnection();
+        awaitDrains(2);
+
+        assertEquals(1, manager.getLossCount());
+        assertEquals(0, manager.getFailureCount());
+        assertEquals(2, manager.getConnectCount());
+        awaitStates(ConnectionManager.State.CONNECTING, ConnectionManager.State.CONNECTED,
+                ConnectionManager.State.WAITING_TO_RETRY, ConnectionManager.State.CONNECTING,
+                ConnectionManager.State.CONNECTED);
+    }
+
+    @Test
+    public void hungAttemptTimesOutAndLateAnswerIsIgnored() throws Exception {
+        broker.then(FakeMqttBroker.Outcome.HANG, 1);
+        manager = newManager(5, 1000, 0.5, 50);
+
+        manager.start();
+        awaitDrains(1);
+        assertEquals(1, manager.getFailureCount());
+
+        broker.answerHungAttempt();
+        Thread.sleep(50);
+        assertEquals(1, drains.get());
+        assertEquals(1, manager.getConnectCount());
+        assertTrue(manager.isConnected());
+    }
+
+    @Test
+    public void connectNowSkipsRemainingBackoff() throws Exception {
+        broker.then(FakeMqttBroker.Outcome.REFUSE, 1);
+        // The first retry would wait half a minute
+        manager = newManager(60_000, 60_000, 0.5);
+
+        manager.start();
+        awaitState(ConnectionManager.State.WAITING_TO_RETRY);
+        manager.connectNow();
+        awaitDrains(1);
+
+        assertEquals(2, manager.getAttemptCount());
+        assertEquals(0, manager.getConsecutiveFailures());
+    }
+
+    @Test
+    public void stopDisconnectsAndStopsRetrying() throws Exception {
+        manager = newManager(5, 1000, 0.5);
+        manager.start();
+        awaitDrains(1);
+
+        manager.stop();
+        broker.dropConnection();
+        Thread.sleep(50);
+
+        assertEquals(ConnectionManager.State.DISCONNECTED, manager.getState());
+        assertEquals(1, broker.connectCalls);
+        assertEquals(0, manager.getLossCount());
+
+        manager.connectNow();
+        assertEquals(ConnectionManager.State.DISCONNECTED, manager.getState());
+        manager.start();
+        awaitDrains(2);
+    }
+
+    private ConnectionManager newManager(long baseMillis, long maxMillis, double jitter) {
+        return newManager(baseMillis, maxMillis, jitter, TIMEOUT_MS);
+    }
+
+    private ConnectionManager newManager(long baseMillis, long maxMillis, double jitter, long connectTimeoutMillis) {
+        return new ConnectionManager(broker, new ExponentialBackoff(baseMillis, maxMillis, () -> jitter),
+                connectTimeoutMillis, new ConnectionManager.Listener() {
+            @Override
+            public void onStateChanged(ConnectionManager.State state, Throwable cause) {
+                synchronized (states) {
+                    states.add(state);
+                }
+            }
+
+            @Override
+            public void onConnected() {
+                drains.incrementAndGet();
+            }
+        });
+    }
+
+    private void awaitDrains(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (drains.get() < count) {
+            assertTrue("timed out waiting for connect " + count + ": " + manager,
+                    System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private void awaitState(ConnectionManager.State state) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (manager.getState() != state) {
+            assertTrue("timed out waiting for " + state + ": " + manager, System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private void awaitStates(ConnectionManager.State... expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (true) {
+            synchronized (states) {
+                if (states.equals(List.of(expected))) {
+                    return;
+                }
+                assertTrue("states " + states, System.currentTimeMillis() < deadline);
+            }
+            Thread.sleep(1);
+        }
+    }
+}
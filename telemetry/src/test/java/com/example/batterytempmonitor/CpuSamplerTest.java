@@ -0,0 +1,140 @@
+package com.example.batterytempmonitor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class CpuSamplerTest {
+    private File statFile;
+    private CpuSampler sampler;
+
+    @Before
+    public void setUp() throws IOException {
+        statFile = File.createTempFile("stat", ".txt");
+        sampler = new CpuSampler(statFile);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        sampler.close();
+        statFile.delete();
+    }
+
+    @Test
+    public void parsesAggregateAndPerCoreLines() throws IOException {
+        byte[] data = fixture("stat-4core-a.txt");
+        ProcStatParser parser = new ProcStatParser(1);
+
+        assertTrue(parser.parse(data, data.length));
+        assertEquals(5, parser.getRowCount());
+        // cpu0: user nice system idle iowait irq softirq steal; guest is not counted twice
+        long total = 1393280 + 32966 + 572056 + 13343292 + 6130 + 17875;
+        assertEquals(total, parser.getTotal(1));
+        assertEquals(total - 13343292 - 6130, parser.getBusy(1));
+        // A line cut off mid-way is not trusted
+        assertFalse(parser.parse(data, 40));
+    }
+
+    @Test
+    public void usageIsComputedFromDeltasBetweenReads() throws IOException {
+        write(fixture("stat-4core-a.txt"));
+        sampler.sample();
+        assertTrue(Double.isNaN(sampler.getUsage()));
+
+        write(fixture("stat-4core-b.txt"));
+        sampler.sample();
+
+        assertEquals(4, sampler.getCoreCount());
+        assertEquals(100.0 * 1550 / 3450, sampler.getUsage(), 1e-9);
+        assertEquals(60.0, sampler.getCoreUsage(0), 1e-9);
+        assertEquals(100.0 * 300 / 1050, sampler.getCoreUsage(1), 1e-9);
+        // Core 2 went offline
+        assertTrue(Double.isNaN(sampler.getCoreUsage(2)));
+        assertEquals(100.0 * 650 / 1400, sampler.getCoreUsage(3), 1e-9);
+        assertEquals(60.0, sampler.getMaxCoreUsage(), 1e-9);
+    }
+
+    @Test
+    public void countersGoingBackwardsGiveNoValue() throws IOException {
+        write(fixture("stat-4core-b.txt"));
+        sampler.sample();
+        write(fixture("stat-4core-a.txt"));
+        sampler.sample();
+
+        assertTrue(Double.isNaN(sampler.getUsage()));
+        // Core 2 came back online; it has no previous reading to compare with
+        assertTrue(Double.isNaN(sampler.getCoreUsage(2)));
+    }
+
+    @Test
+    public void growsBufferForManyCores() throws IOException {
+        StringBuilder stat = new StringBuilder("cpu  256000 0 0 2560000 0 0 0 0 0 0\n");
+        for (int core = 0; core < 256; core++) {
+            stat.append("cpu").append(core).append(" 1000 0 0 10000 0 0 0 0 0 0\n");
+        }
+        stat.append("intr 0\n");
+        write(stat.toString().getBytes(StandardCharsets.US_ASCII));
+
+        sampler.sample();
+
+        assertEquals(256, sampler.getCoreCount());
+    }
+
+    @Test
+    public void readsLiveProcStat() throws IOException, InterruptedException {
+        File procStat = new File("/proc/stat");
+        assumeTrue(procStat.canRead());
+        try (CpuSampler live = new CpuSampler(procStat)) {
+            live.sample();
+            Thread.sleep(50);
+            live.sample();
+            assertTrue(live.getCoreCount() >= 1);
+            double usage = live.getUsage();
+            // Can be NaN if no jiffy elapsed in between
+            assertTrue(String.valueOf(usage), Double.isNaN(usage) || usage >= 0 && usage <= 100);
+        }
+    }
+
+    @Test
+    public void steadyStateSamplingDoesNotAllocate() throws IOException {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        write(fixture("stat-4core-a.txt"));
+
+        for (int i = 0; i < 10_000; i++) {
+            sampler.sample();
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 10_000; i++) {
+            sampler.sample();
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue("allocated " + allocated + " bytes", allocated < 4096);
+    }
+
+    private void write(byte[] data) throws IOException {
+        // Overwrites in place, so the sampler's open file sees the new contents like procfs
+        Files.write(statFile.toPath(), data);
+    }
+
+    private static byte[] fixture(String name) throws IOException {
+        try (InputStream in = CpuSamplerTest.class.getClassLoader().getResourceAsStream("proc/" + name)) {
+            assertNotNull("missing test resource " + name, in);
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.batterytempmonitor;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DeltaFilterTest {
+    private static final long HEARTBEAT_MS = 60_000;
+
+    @Test
+    public void replayedTraceKeepsTwinWithinDeadbands() throws IOException {
+        List<MetricsSnapshot> trace = loadTrace("delta-trace.csv");
+        DeltaFilter filter = newFilter();
+        double[] twin = new double[Metric.COUNT];
+        Arrays.fill(twin, Double.NaN);
+        int keyframes = 0;
+        long lastKeyframe = 0;
+
+        for (MetricsSnapshot sample : trace) {
+            MetricsSnapshot sent = filter.filter(sample);
+            if (sent != null) {
+                if (!sent.isDelta()) {
+                    keyframes++;
+                    assertTrue(sent.getTimestampMillis() - lastKeyframe >= HEARTBEAT_MS || lastKeyframe == 0);
+                    lastKeyframe = sent.getTimestampMillis();
+                    assertTrue(sent.has(Metric.DELTA_SUPPRESSION));
+                    assertTrue(sent.has(Metric.RX_BYTES) && sent.has(Metric.TX_BYTES));
+                } else {
+                    assertFalse(sent.has(Metric.STORAGE_TOTAL));
+                    // Cumulative counters change every tick; deltas must not carry them
+                    assertFalse(sent.has(Metric.RX_BYTES) || sent.has(Metric.TX_BYTES));
+                }
+                for (Metric metric : Metric.ALL) {
+                    if (sent.has(metric)) {
+                        twin[metric.ordinal()] = sent.get(metric);
+                    }
+                }
+            }
+            // What the twin believes never drifts further than the deadband from reality
+            assertEquals(sample.get(Metric.CPU_USAGE), twin[Metric.CPU_USAGE.ordinal()], 1.0);
+            assertEquals(sample.get(Metric.BATTERY_TEMP), twin[Metric.BATTERY_TEMP.ordinal()], 0.2 + 1e-9);
+            assertEquals(sample.get(Metric.BATTERY_LEVEL), twin[Metric.BATTERY_LEVEL.ordinal()], 0.0);
+            assertEquals(sample.get(Metric.STORAGE_TOTAL), twin[Metric.STORAGE_TOTAL.ordinal()], 0.0);
+        }
+
+        long duration = trace.get(trace.size() - 1).getTimestampMillis() - trace.get(0).getTimestampMillis();
+        assertEquals(duration / HEARTBEAT_MS + 1, keyframes);
+        assertEquals(trace.size() * 9L, filter.getFieldsOffered());
+        assertTrue(filter.toString(), filter.getSuppressionRatio() > 0.6);
+        assertTrue(filter.getRecordsSuppressed() > 0);
+    }
+
+    @Test
+    public void slowDriftIsSentOnceItLeavesTheDeadband() {
+        DeltaFilter filter = new DeltaFilter(HEARTBEAT_MS).setDeadband(Metric.BATTERY_TEMP, 0.5, 0);
+        assertNotNull(filter.filter(temperature(0, 30.0)));
+
+        assertNull(filter.filter(temperature(1000, 30.2)));
+        assertNull(filter.filter(temperature(2000, 30.4)));
+        MetricsSnapshot delta = filter.filter(temperature(3000, 30.6));
+        assertTrue(delta.isDelta());
+        assertEquals(30.6, delta.get(Metric.BATTERY_TEMP), 0.0);
+        assertNull(filter.filter(temperature(4000, 30.8)));
+    }
+
+    @Test
+    public void relativeDeadbandScalesWithValue() {
+        DeltaFilter filter = new DeltaFilter(HEARTBEAT_MS).setDeadband(Metric.RX_RATE, 0, 0.1);
+        filter.filter(new MetricsSnapshot.Builder().set(Metric.RX_RATE, 1000).build(0));
+
+        assertNull(filter.filter(new MetricsSnapshot.Builder().set(Metric.RX_RATE, 1090).build(1000)));
+        assertNotNull(filter.filter(new MetricsSnapshot.Builder().set(Metric.RX_RATE, 1110).build(2000)));
+    }
+
+    @Test
+    public void keyframeOnlyCountersDoNotDefeatSuppression() {
+        DeltaFilter filter = new DeltaFilter(HEARTBEAT_MS).setKeyframeOnly(Metric.RX_BYTES);
+        MetricsSnapshot keyframe = filter.filter(new MetricsSnapshot.Builder()
+                .set(Metric.RX_BYTES, 1000).set(Metric.BATTERY_TEMP, 30.0).build(0));
+        assertEquals(1000, keyframe.get(Metric.RX_BYTES), 0.0);
+
+        assertNull(filter.filter(new MetricsSnapshot.Builder()
+                .set(Metric.RX_BYTES, 5000).set(Metric.BATTERY_TEMP, 30.0).build(5000)));
+        MetricsSnapshot next = filter.filter(new MetricsSnapshot.Builder()
+                .set(Metric.RX_BYTES, 9000).set(Metric.BATTERY_TEMP, 30.0).build(HEARTBEAT_MS));
+        assertFalse(next.isDelta());
+        assertEquals(9000, next.get(Metric.RX_BYTES), 0.0);
+    }
+
+    @Test
+    public void requestedKeyframeResendsEverything() {
+        DeltaFilter filter = new DeltaFilter(HEARTBEAT_MS);
+        filter.filter(temperature(0, 30.0));
+        assertNull(filter.filter(temperature(1000, 30.0)));
+
+        filter.requestKeyframe();
+        MetricsSnapshot keyframe = filter.filter(temperature(2000, 30.0));
+        assertFalse(keyframe.isDelta());
+        assertEquals(30.0, keyframe.get(Metric.BATTERY_TEMP), 0.0);
+    }
+
+    @Test
+    public void deltaFlagSurvivesBothWireFormats() {
+        DeltaFilter filter = new DeltaFilter(HEARTBEAT_MS);
+        filter.filter(temperature(0, 30.0));
+        MetricsSnapshot delta = filter.filter(temperature(1000, 31.0));
+
+        PayloadBuffer out = new PayloadBuffer(64);
+        BinaryPayloadFormat format = new BinaryPayloadFormat("d");
+        format.beginBatch(out);
+        format.appendRecord(delta, 0, out);
+        format.endBatch(out);
+        assertTrue(BinaryPayloadDecoder.decode(out.toByteArray()).getRecords().get(0).isDelta());
+
+        out.reset();
+        new JsonPayloadEncoder("d").encode(delta, out);
+        String json = new String(out.array(), 0, out.length(), StandardCharsets.UTF_8);
+        assertTrue(json, json.contains("\"delta\":true,\"metrics\":{\"batteryTemp\":31.0}"));
+    }
+
+    private static DeltaFilter newFilter() {
+        return new DeltaFilter(HEARTBEAT_MS)
+                .setDeadband(Metric.CPU_USAGE, 1.0, 0)
+                .setDeadband(Metric.RX_RATE, 1, 0.05)
+                .setDeadband(Metric.TX_RATE, 1, 0.05)
+                .setDeadband(Metric.STORAGE_AVAILABLE, 1024 * 1024, 0)
+                .setDeadband(Metric.BATTERY_TEMP, 0.2, 0)
+                .setKeyframeOnly(Metric.RX_BYTES)
+                .setKeyframeOnly(Metric.TX_BYTES);
+    }
+
+    private static MetricsSnapshot temperature(long timestamp, double value) {
+        return new MetricsSnapshot.Builder().set(Metric.BATTERY_TEMP, value).build(timestamp);
+    }
+
+    /** Reads a CSV trace whose header row names the timestamp column and metric keys. */
+    static List<MetricsSnapshot> loadTrace(String resource) throws IOException {
+        InputStream in = DeltaFilterTest.class.getClassLoader().getResourceAsStream(resource);
+        assertNotNull("missing test resource " + resource, in);
+        List<MetricsSnapshot> trace = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            Metric[] columns = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                if (columns == null) {
+                    columns = new Metric[fields.length];
+                    for (int i = 1; i < fields.length; i++) {
+                        for (Metric metric : Metric.ALL) {
+                            if (metric.getKey().equals(fields[i])) {
+                                columns[i] = metric;
+                            }
+                        }
+                        assertNotNull("unknown column " + fields[i], columns[i]);
+                    }
+                    continue;
+                }
+                MetricsSnapshot.Builder builder = new MetricsSnapshot.Builder();
+                for (int i = 1; i < fields.length; i++) {
+                    builder.set(columns[i], Double.parseDouble(fields[i]));
+                }
+                trace.add(builder.build(Long.parseLong(fields[0])));
+            }
+        }
+        return trace;
+    }
+}
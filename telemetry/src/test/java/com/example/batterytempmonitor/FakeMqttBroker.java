@@ -0,0 +1,92 @@
+package com.example.batterytempmonitor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local stand-in for an MQTT broker. Each connection attempt takes the next
+ * scripted outcome; once the script runs out, attempts are accepted. Outcomes are
+ * reported on the broker's own thread, like a real client library would.
+ */
+class FakeMqttBroker implements MqttConnector {
+    enum Outcome {
+        ACCEPT,
+        REFUSE,
+        /** Never answer, so the attempt has to time out. */
+        HANG,
+        /** Throw from {@link #connect} itself. */
+        THROW
+    }
+
+    private final Deque<Outcome> script = new ArrayDeque<>();
+    static final String THREAD_NAME = "fake-broker";
+
+    private final ExecutorService thread = Executors.newSingleThreadExecutor(r -> new Thread(r, THREAD_NAME));
+    private Callback current;
+    private Callback hung;
+    int connectCalls;
+    int disconnectCalls;
+    /** "connect" and "disconnect" calls in order, each with the calling thread's name. */
+    final List<String> calls = new ArrayList<>();
+
+    synchronized FakeMqttBroker then(Outcome outcome, int times) {
+        for (int i = 0; i < times; i++) {
+            script.add(outcome);
+        }
+        return this;
+    }
+
+    @Override
+    public synchronized void connect(Callback callback) throws Exception {
+        connectCalls++;
+        calls.add("connect@" + Thread.currentThread().getName());
+        Outcome outcome = script.isEmpty() ? Outcome.ACCEPT : script.poll();
+        switch (outcome) {
+            case ACCEPT:
+                current = callback;
+                thread.execute(callback::onConnected);
+                break;
+            case REFUSE:
+                thread.execute(() -> callback.onDisconnected(new Exception("Injected refusal")));
+                break;
+            case HANG:
+                hung = callback;
+                break;
+            case THROW:
+                throw new Exception("Injected connect failure");
+        }
+    }
+
+    @Override
+    public synchronized void disconnect() {
+        disconnectCalls++;
+        calls.add("disconnect@" + Thread.currentThread().getName());
+        current = null;
+    }
+
+    /** Drops the established connection, as a network outage would. */
+    synchronized void dropConnection() {
+        Callback callback = current;
+        current = null;
+        if (callback != null) {
+            thread.execute(() -> callback.onDisconnected(new Exception("Injected connection loss")));
+        }
+    }
+
+    /** Finally answers a hung attempt, long after the client gave up on it. */
+    synchronized void answerHungAttempt() {
+        Callback callback = hung;
+        hung = null;
+        if (callback != null) {
+            thread.execute(callback::onConnected);
+        }
+    }
+
+    void shutdown() {
+        thread.shutdown();
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.batterytempmonitor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * In-memory stand-in for an MQTT connection that records every published message.
+ */
+class FakeMqttTransport implements MqttTransport {
+    final List<String> topics = new ArrayList<>();
+    final List<byte[]> messages = new ArrayList<>();
+    volatile boolean connected = true;
+    volatile boolean failPublish = false;
+    // When set, publishes with a delivery callback wait for acknowledge() instead of succeeding
+    volatile boolean holdDeliveries = false;
+    final List<DeliveryCallback> heldDeliveries = new ArrayList<>();
+
+    @Override
+    public boolean isConnected() {
+        return connected;
+    }
+
+    @Override
+    public synchronized void publish(String topic, byte[] payload, int offset, int length) throws Exception {
+        if (failPublish) {
+            throw new Exception("Injected publish failure");
+        }
+        topics.add(topic);
+        messages.add(Arrays.copyOfRange(payload, offset, offset + length));
+    }
+
+    @Override
+    public synchronized void publish(String topic, byte[] payload, int offset, int length,
+                                     DeliveryCallback callback) throws Exception {
+        publish(topic, payload, offset, length);
+        if (holdDeliveries) {
+            heldDeliveries.add(callback);
+        } else {
+            callback.onDelivery(true);
+        }
+    }
+
+    /** Reports the outcome of the {@code index}th held delivery. */
+    synchronized void acknowledge(int index, boolean delivered) {
+        heldDeliveries.get(index).onDelivery(delivered);
+    }
+
+    synchronized String messageAsString(int index) {
+        return new String(messages.get(index), StandardCharsets.UTF_8);
+    }
+}
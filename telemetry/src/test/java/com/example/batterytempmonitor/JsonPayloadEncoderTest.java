@@ -0,0 +1,118 @@
+package com.example.batterytempmonitor;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class JsonPayloadEncoderTest {
+    // 2025-03-13T23:59:58Z
+    private static final long TIMESTAMP = 1741910398000L;
+
+    @Test
+    public void encodesFixedSchemaWithMetricPrecision() {
+        MetricsSnapshot snapshot = new MetricsSnapshot.Builder()
+                .set(Metric.CPU_USAGE, 41.2679)
+                .set(Metric.RX_BYTES, 123456789)
+                .set(Metric.STORAGE_TOTAL, 64_000_000_000L)
+                .set(Metric.BATTERY_TEMP, -3.04)
+                .set(Metric.BATTERY_LEVEL, 80)
+                .build(TIMESTAMP);
+
+        assertEquals("{\"deviceId\":\"Pixel 7\",\"timestamp\":1741910398000,"
+                        + "\"datetimeISO\":\"2025-03-13T23:59:58Z\",\"metrics\":{"
+                        + "\"cpuUsage\":41.27,\"rxBytes\":123456789,\"storageTotal\":64000000000,"
+                        + "\"batteryTemp\":-3.0,\"batteryLevel\":80.0}}",
+                encode(new JsonPayloadEncoder("Pixel 7"), snapshot));
+    }
+
+    @Test
+    public void escapesDeviceIdAndSkipsNonFiniteValues() {
+        MetricsSnapshot snapshot = new MetricsSnapshot.Builder()
+                .set(Metric.CPU_USAGE, Double.POSITIVE_INFINITY)
+                .set(Metric.BATTERY_TEMP, 0.05)
+                .build(0);
+
+        assertEquals("{\"deviceId\":\"a\\\"b\\\\c\",\"timestamp\":0,"
+                        + "\"datetimeISO\":\"1970-01-01T00:00:00Z\",\"metrics\":{\"batteryTemp\":0.1}}",
+                encode(new JsonPayloadEncoder("a\"b\\c"), snapshot));
+    }
+
+    @Test
+    public void encodesWindowStatisticsAfterMetrics() {
+        WindowAggregator aggregator = new WindowAggregator(4);
+        for (double value : new double[] {30.0, 31.0, 33.0, 34.0}) {
+            aggregator.add(Metric.BATTERY_TEMP, value);
+        }
+        MetricsSnapshot snapshot = aggregator.closeWindow(0, 4000);
+
+        assertEquals("{\"deviceId\":\"d\",\"timestamp\":0,"
+                        + "\"datetimeISO\":\"1970-01-01T00:00:00Z\",\"metrics\":{\"batteryTemp\":32.0},"
+                        + "\"window\":{\"durationMs\":4000,"
+                        + "\"batteryTemp\":{\"min\":30.0,\"max\":34.0,\"p95\":34.0,\"count\":4}}}",
+                encode(new JsonPayloadEncoder("d"), snapshot));
+    }
+
+    @Test
+    public void isoTimestampsMatchSimpleDateFormat() {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+        IsoTimestampFormatter formatter = new IsoTimestampFormatter();
+        byte[] out = new byte[IsoTimestampFormatter.LENGTH];
+        Random random = new Random(42);
+
+        for (int i = 0; i < 10_000; i++) {
+            // Anywhere from 1970 to roughly 2100, including leap days
+            long millis = (long) (random.nextDouble() * 4_102_444_800_000L);
+            formatter.format(millis, out, 0);
+            assertEquals(sdf.format(new Date(millis)), new String(out, StandardCharsets.US_ASCII));
+        }
+        formatter.format(951_782_400_000L, out, 0);
+        assertEquals("2000-02-29T00:00:00Z", new String(out, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void steadyStateEncodingDoesNotAllocate() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+
+        JsonPayloadEncoder encoder = new JsonPayloadEncoder("Pixel 7");
+        PayloadBuffer buffer = new PayloadBuffer(512);
+        MetricsSnapshot.Builder builder = new MetricsSnapshot.Builder();
+        for (Metric metric : Metric.ALL) {
+            builder.set(metric, 1234.5678);
+        }
+        MetricsSnapshot snapshot = builder.build(TIMESTAMP);
+
+        for (int i = 0; i < 20_000; i++) {
+            buffer.reset();
+            encoder.encode(snapshot, buffer);
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 20_000; i++) {
+            buffer.reset();
+            encoder.encode(snapshot, buffer);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        // A single allocation per encode would already be 20000 * 16 bytes
+        assertTrue("allocated " + allocated + " bytes", allocated < 4096);
+    }
+
+    private static String encode(JsonPayloadEncoder encoder, MetricsSnapshot snapshot) {
+        PayloadBuffer buffer = new PayloadBuffer(64);
+        encoder.encode(snapshot, buffer);
+        return new String(buffer.array(), 0, buffer.length(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.batterytempmonitor;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.security.KeyStore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class KeyStoreCacheTest {
+
+    @Test
+    public void loadsOnceAndReusesAcrossReconnects() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        KeyStoreCache cache = new KeyStoreCache(() -> {
+            loads.incrementAndGet();
+            return emptyKeyStore();
+        });
+        assertEquals(-1, cache.getLastLoadMillis());
+
+        KeyStore first = cache.get();
+        for (int i = 0; i < 10; i++) {
+            assertSame(first, cache.get());
+        }
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getLoadCount());
+        assertTrue(cache.getLastLoadMillis() >= 0);
+
+        cache.invalidate();
+        assertNotSame(first, cache.get());
+        assertEquals(2, cache.getLoadCount());
+    }
+
+    @Test
+    public void failedLoadIsRetriedNextTime() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        KeyStoreCache cache = new KeyStoreCache(() -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new IOException("Injected read failure");
+            }
+            return emptyKeyStore();
+        });
+
+        try {
+            cache.get();
+            fail("Expected the injected failure");
+        } catch (IOException expected) {
+            assertEquals(0, cache.getLoadCount());
+        }
+        assertNotNull(cache.get());
+        assertEquals(1, cache.getLoadCount());
+    }
+
+    @Test
+    public void startupTimerKeepsFirstCompletionOnly() {
+        long[] now = {5_000_000_000L};
+        StartupTimer timer = new StartupTimer(() -> now[0]);
+        assertEquals(-1, timer.getMillis(StartupTimer.Phase.CONNECTED));
+
+        now[0] += 120_000_000;
+        assertTrue(timer.mark(StartupTimer.Phase.CREDENTIALS_LOADED));
+        now[0] += 300_000_000;
+        assertTrue(timer.mark(StartupTimer.Phase.CONNECTED));
+        // A reconnect later on does not move the startup figure
+        now[0] += 60_000_000_000L;
+        assertFalse(timer.mark(StartupTimer.Phase.CONNECTED));
+
+        assertEquals(120, timer.getMillis(StartupTimer.Phase.CREDENTIALS_LOADED));
+        assertEquals(420, timer.getMillis(StartupTimer.Phase.CONNECTED));
+        assertEquals("StartupTimer{credentials=120ms, connected=420ms, firstPublish=pending}", timer.toString());
+    }
+
+    private static KeyStore emptyKeyStore() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        keyStore.load(null, null);
+        return keyStore;
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.batterytempmonitor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LegacySampleFormatTest {
+
+    @Test
+    public void legacyCpuUsageKeyHoldsMemoryUtilisation() {
+        // The original getCpuUsage() returned (totalMem - availMem) / totalMem * 100
+        assertEquals(Metric.MEMORY_USAGE, LegacySampleFormat.metricForKey("cpuUsage"));
+    }
+
+    @Test
+    public void otherLegacyKeysKeepTheirMeaning() {
+        assertEquals(Metric.RX_BYTES, LegacySampleFormat.metricForKey("rxBytes"));
+        assertEquals(Metric.TX_BYTES, LegacySampleFormat.metricForKey("txBytes"));
+        assertEquals(Metric.BATTERY_TEMP, LegacySampleFormat.metricForKey("batteryTemp"));
+        assertEquals(Metric.BATTERY_LEVEL, LegacySampleFormat.metricForKey("batteryLevel"));
+        assertEquals(Metric.STORAGE_AVAILABLE, LegacySampleFormat.metricForKey("storageAvailable"));
+        assertEquals(Metric.STORAGE_TOTAL, LegacySampleFormat.metricForKey("storageTotal"));
+    }
+
+    @Test
+    public void keysTheOldAppNeverWroteAreIgnored() {
+        assertNull(LegacySampleFormat.metricForKey("memoryUsage"));
+        assertNull(LegacySampleFormat.metricForKey("cpuMaxCoreUsage"));
+        assertNull(LegacySampleFormat.metricForKey("error"));
+    }
+}
@@ -0,0 +1,253 @@
+package com.example.batterytempmonitor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link MetricsCollector} keeps sampling and I/O off the UI thread.
+ */
+public class MetricsCollectorTest {
+    private static final String UI_THREAD = "fake-ui";
+
+    private ExecutorService uiExecutor;
+    private MetricsCollector collector;
+
+    @Before
+    public void setUp() {
+        uiExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, UI_THREAD));
+    }
+
+    @After
+    public void tearDown() {
+        if (collector != null) {
+            collector.shutdown();
+        }
+        uiExecutor.shutdownNow();
+    }
+
+    @Test
+    public void samplingAndSinksNeverRunOnUiThread() throws Exception {
+        List<String> samplerThreads = new CopyOnWriteArrayList<>();
+        List<String> sinkThreads = new CopyOnWriteArrayList<>();
+        List<String> listenerThreads = new CopyOnWriteArrayList<>();
+        CountDownLatch delivered = new CountDownLatch(3);
+
+        collector = new MetricsCollector(Collections.singletonList(new FakeSource(10, out -> {
+            samplerThreads.add(Thread.currentThread().getName());
+            out.set(Metric.CPU_USAGE, 12.5);
+        })));
+        collector.addSink(snapshot -> sinkThreads.add(Thread.currentThread().getName()));
+        collector.setListener(snapshot -> {
+            listenerThreads.add(Thread.currentThread().getName());
+            delivered.countDown();
+        }, uiExecutor);
+
+        collector.start();
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        collector.stop();
+
+        assertFalse(samplerThreads.isEmpty());
+        for (String name : samplerThreads) {
+            assertEquals(MetricsCollector.THREAD_NAME, name);
+        }
+        for (String name : sinkThreads) {
+            assertEquals(MetricsCollector.THREAD_NAME, name);
+        }
+        for (String name : listenerThreads) {
+            assertEquals(UI_THREAD, name);
+        }
+    }
+
+    @Test
+    public void failingSampleIsReportedAndDoesNotStopTicks() throws Exception {
+        CountDownLatch errors = new CountDownLatch(1);
+        CountDownLatch snapshots = new CountDownLatch(2);
+        int[] calls = {0};
+
+        collector = new MetricsCollector(Collections.singletonList(new FakeSource(10, out -> {
+            if (calls[0]++ == 0) {
+                throw new IllegalStateException("sensor unavailable");
+            }
+            out.set(Metric.CPU_USAGE, 12.5);
+        })));
+        collector.setListener(new MetricsCollector.Listener() {
+            @Override
+            public void onSnapshot(MetricsSnapshot snapshot) {
+                snapshots.countDown();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                errors.countDown();
+            }
+        }, uiExecutor);
+
+        collector.start();
+        assertTrue(errors.await(5, TimeUnit.SECONDS));
+        assertTrue(snapshots.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void restartAfterStopResumesSampling() throws Exception {
+        CountDownLatch first = new CountDownLatch(1);
+        CountDownLatch second = new CountDownLatch(2);
+
+        collector = new MetricsCollector(Collections.singletonList(new FakeSource(10, out -> {
+            first.countDown();
+            second.countDown();
+        })));
+
+        collector.start();
+        assertTrue(first.await(5, TimeUnit.SECONDS));
+        collector.stop();
+        assertFalse(collector.isRunning());
+
+        collector.start();
+        assertTrue(collector.isRunning());
+        assertTrue(second.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void awaitTerminationWaitsForWorkQueuedBeforeShutdown() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> done = new CopyOnWriteArrayList<>();
+        collector = new MetricsCollector(Collections.singletonList(new FakeSource(10, out -> { })));
+
+        collector.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // Queued work may still use the collector, e.g. to change the sampling rate
+            collector.setIntervalScale(2);
+            done.add("flushed");
+        });
+        collector.shutdown();
+
+        assertFalse(collector.awaitTermination(50, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertTrue(collector.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("flushed"), done);
+    }
+
+    @Test
+    public void eachSourceIsSampledOnlyWhenDue() {
+        int[] fastCalls = {0};
+        int[] slowCalls = {0};
+        collector = new MetricsCollector(Arrays.asList(
+                new FakeSource(1000, out -> out.set(Metric.BATTERY_TEMP, ++fastCalls[0])),
+                new FakeSource(6000, out -> out.set(Metric.STORAGE_TOTAL, ++slowCalls[0]))),
+                () -> 0L);
+        List<MetricsSnapshot> snapshots = new ArrayList<>();
+        collector.addSink(snapshots::add);
+
+        assertEquals(1000, collector.getPeriodMillis());
+        for (int i = 0; i < 12; i++) {
+            collector.tick();
+        }
+
+        assertEquals(12, fastCalls[0]);
+        assertEquals(2, slowCalls[0]);
+        assertEquals(12, snapshots.size());
+        // The slow metric carries its last value between samples
+        assertEquals(1.0, snapshots.get(5).get(Metric.STORAGE_TOTAL), 0.0);
+        assertEquals(2.0, snapshots.get(6).get(Metric.STORAGE_TOTAL), 0.0);
+        assertFalse(snapshots.get(0).has(Metric.CPU_USAGE));
+    }
+
+    @Test
+    public void aggregationWindowEmitsOneSnapshotPerWindow() {
+        int[] calls = {0};
+        collector = new MetricsCollector(Arrays.asList(
+                new FakeSource(1000, out -> out.set(Metric.CPU_USAGE, ++calls[0])),
+                new FakeSource(5000, out -> out.set(Metric.STORAGE_TOTAL, 64))),
+                () -> 0L);
+        collector.setAggregationWindow(10000);
+        List<MetricsSnapshot> snapshots = new ArrayList<>();
+        collector.addSink(snapshots::add);
+
+        for (int i = 0; i < 25; i++) {
+            collector.tick();
+        }
+
+        assertEquals(2, snapshots.size());
+        WindowStats second = snapshots.get(1).getWindow();
+        assertEquals(10000, second.getDurationMillis());
+        assertEquals(15.5, snapshots.get(1).get(Metric.CPU_USAGE), 1e-9);
+        assertEquals(10, second.getCount(Metric.CPU_USAGE));
+        assertEquals(11.0, second.getMin(Metric.CPU_USAGE), 0.0);
+        assertEquals(20.0, second.getMax(Metric.CPU_USAGE), 0.0);
+        // Carried-over values are not counted again; only actual samples are
+        assertEquals(2, second.getCount(Metric.STORAGE_TOTAL));
+    }
+
+    @Test
+    public void aggregationWindowMustBeMultipleOfPeriod() {
+        collector = new MetricsCollector(Collections.singletonList(new FakeSource(1000, out -> { })));
+        try {
+            collector.setAggregationWindow(1500);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void intervalScaleReschedulesRunningCollector() throws Exception {
+        CountDownLatch rescaled = new CountDownLatch(3);
+        collector = new MetricsCollector(Collections.singletonList(new FakeSource(20, out -> rescaled.countDown())));
+        collector.addSink(snapshot -> collector.setIntervalScale(0.5));
+
+        collector.start();
+        assertTrue(rescaled.await(5, TimeUnit.SECONDS));
+        assertEquals(10, collector.getEffectivePeriodMillis());
+        assertEquals(20, collector.getPeriodMillis());
+        assertTrue(collector.isRunning());
+    }
+
+    @Test
+    public void tickPeriodIsGreatestCommonDivisorOfIntervals() {
+        collector = new MetricsCollector(Arrays.asList(
+                new FakeSource(4000, out -> { }),
+                new FakeSource(6000, out -> { })));
+        assertEquals(2000, collector.getPeriodMillis());
+    }
+
+    private interface SampleAction {
+        void run(MetricsSnapshot.Builder out) throws Exception;
+    }
+
+    private static final class FakeSource implements MetricSource {
+        private final long intervalMillis;
+        private final SampleAction action;
+
+        FakeSource(long intervalMillis, SampleAction action) {
+            this.intervalMillis = intervalMillis;
+            this.action = action;
+        }
+
+        @Override
+        public long getIntervalMillis() {
+            return intervalMillis;
+        }
+
+        @Override
+        public void sample(MetricsSnapshot.Builder out) throws Exception {
+            action.run(out);
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.example.batterytempmonitor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class OfflineQueueTest {
+    private static final long SEGMENT_BYTES = 1024;
+    private static final long TOTAL_BYTES = 64 * 1024;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void drainsRecordsInAppendOrder() throws IOException {
+        try (OfflineQueue queue = open(tmp.getRoot())) {
+            for (int i = 0; i < 5; i++) {
+                queue.append(record(i));
+            }
+            assertEquals(5, queue.getPendingRecords());
+
+            List<String> drained = drainAll(queue);
+            assertEquals(Arrays.asList("sample-0", "sample-1", "sample-2", "sample-3", "sample-4"), drained);
+            assertEquals(0, queue.getPendingRecords());
+        }
+    }
+
+    @Test
+    public void rejectedRecordStaysAtHead() throws IOException {
+        try (OfflineQueue queue = open(tmp.getRoot())) {
+            queue.append(record(0));
+            queue.append(record(1));
+
+            List<String> accepted = new ArrayList<>();
+            int drained = queue.drain(10, (buf, off, len) -> {
+                if (accepted.size() == 1) {
+                    return false;
+                }
+                accepted.add(new String(buf, off, len, StandardCharsets.UTF_8));
+                return true;
+            });
+
+            assertEquals(1, drained);
+            assertEquals(Arrays.asList("sample-1"), drainAll(queue));
+        }
+    }
+
+    @Test
+    public void peekLeavesRecordsQueuedUntilSkipped() throws IOException {
+        try (OfflineQueue queue = open(tmp.getRoot())) {
+            for (int i = 0; i < 100; i++) {
+                queue.append(record(i));
+            }
+            List<String> peeked = new ArrayList<>();
+            int count = queue.peek(60, (buf, off, len) -> peeked.add(new String(buf, off, len, StandardCharsets.UTF_8)));
+            assertEquals(60, count);
+            assertEquals("sample-59", peeked.get(59));
+            assertEquals(100, queue.getPendingRecords());
+
+            assertEquals(60, queue.skip(count));
+            assertEquals(40, queue.getPendingRecords());
+            assertEquals("sample-60", drainAll(queue).get(0));
+        }
+    }
+
+    @Test
+    public void skipAfterPeekDoesNotRereadRecords() throws IOException {
+        File dir = tmp.getRoot();
+        try (OfflineQueue queue = open(dir)) {
+            for (int i = 0; i < 3; i++) {
+                queue.append(record(i));
+            }
+            assertEquals(2, queue.peek(2, (buf, off, len) -> true));
+
+            // Damage the second record's payload after it was peeked; skip must not re-read it
+            File segment = dir.listFiles((d, name) -> name.startsWith("segment-"))[0];
+            try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+                raf.seek(2L * OfflineQueue.HEADER_BYTES + record(0).length + 1);
+                raf.write('X');
+            }
+
+            assertEquals(2, queue.skip(2));
+            assertEquals(0, queue.getDroppedRecords());
+            assertEquals(Arrays.asList("sample-2"), drainAll(queue));
+        }
+    }
+
+    @Test
+    public void peekAndSkipAcrossManySegments() throws IOException {
+        try (OfflineQueue queue = open(tmp.getRoot())) {
+            for (int i = 0; i < 500; i++) {
+                queue.append(record(i));
+            }
+            assertTrue(queue.getSegmentCount() > 5);
+
+            int delivered = 0;
+            int count;
+            while ((count = queue.peek(64, (buf, off, len) -> true)) > 0) {
+                assertEquals(count, queue.skip(count));
+                delivered += count;
+            }
+            assertEquals(500, delivered);
+            assertEquals(0, queue.getPendingRecords());
+            assertEquals(1, queue.getSegmentCount());
+        }
+    }
+
+    @Test
+    public void peekAndSkipMatchDrainAroundACorruptRecord() throws IOException {
+        List<String> drained;
+        long drainDropped;
+        try (OfflineQueue queue = open(queueWithCorruptRecord())) {
+            drained = drainAll(queue);
+            drainDropped = queue.getDroppedRecords();
+        }
+        assertTrue(drainDropped > 0);
+        assertEquals(200, drained.size() + drainDropped);
+
+        try (OfflineQueue queue = open(queueWithCorruptRecord())) {
+            List<String> delivered = new ArrayList<>();
+            int count;
+            while ((count = queue.peek(16, (buf, off, len) ->
+                    delivered.add(new String(buf, off, len, StandardCharsets.UTF_8)))) > 0) {
+                assertEquals(count, queue.skip(count));
+            }
+            assertEquals(drained, delivered);
+            assertEquals(drainDropped, queue.getDroppedRecords());
+            assertEquals(0, queue.getPendingRecords());
+        }
+
+        // Without a matching peek, skip removes records exactly as drain does
+        try (OfflineQueue queue = open(queueWithCorruptRecord())) {
+            int skipped = 0;
+            int count;
+            while ((count = queue.skip(7)) > 0) {
+                skipped += count;
+            }
+            assertEquals(drained.size(), skipped);
+            assertEquals(drainDropped, queue.getDroppedRecords());
+        }
+    }
+
+    @Test
+    public void rollsSegmentsAndDeletesThemOnceDrained() throws IOException {
+        try (OfflineQueue queue = open(tmp.getRoot())) {
+            for (int i = 0; i < 200; i++) {
+                queue.append(record(i));
+            }
+            assertTrue(queue.getSegmentCount() > 1);
+
+            assertEquals(200, drainAll(queue).size());
+            assertEquals(1, queue.getSegmentCount());
+            assertEquals(0, queue.getTotalBytes());
+        }
+    }
+
+    @Test
+    public void retentionCapDropsOldestSegments() throws IOException {
+        try (OfflineQueue queue = OfflineQueue.open(tmp.getRoot(), SEGMENT_BYTES, 4 * SEGMENT_BYTES,
+                OfflineQueue.FsyncPolicy.NEVER)) {
+            for (int i = 0; i < 1000; i++) {
+                queue.append(record(i));
+            }
+
+            assertTrue(queue.getTotalBytes() <= 4 * SEGMENT_BYTES);
+            assertTrue(queue.getDroppedRecords() > 0);
+            List<String> drained = drainAll(queue);
+            assertEquals(1000, drained.size() + queue.getDroppedRecords());
+            assertEquals("sample-999", drained.get(drained.size() - 1));
+        }
+    }
+
+    @Test
+    public void drainedRecordsAreNotRedeliveredAfterReopen() throws IOException {
+        try (OfflineQueue queue = open(tmp.getRoot())) {
+            for (int i = 0; i < 10; i++) {
+                queue.append(record(i));
+            }
+            queue.drain(4, (buf, off, len) -> true);
+        }
+
+        try (OfflineQueue queue = open(tmp.getRoot())) {
+            assertEquals(6, queue.getPendingRecords());
+            assertEquals("sample-4", drainAll(queue).get(0));
+        }
+    }
+
+    @Test
+    public void recoversFromTornRecordAtEndOfSegment() throws IOException {
+        File dir = tmp.getRoot();
+        try (OfflineQueue queue = open(dir)) {
+            queue.append(record(0));
+            queue.append(record(1));
+        }
+
+        // Simulate a crash halfway through writing a third record
+        File segment = dir.listFiles((d, name) -> name.startsWith("segment-"))[0];
+        long intactLength = segment.length();
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.seek(intactLength);
+            raf.writeInt(100);
+            raf.writeInt(0xCAFE);
+            raf.write("partial".getBytes(StandardCharsets.UTF_8));
+        }
+
+        try (OfflineQueue queue = open(dir)) {
+            assertEquals(intactLength, segment.length());
+            assertEquals(2, queue.getPendingRecords());
+            queue.append(record(2));
+            assertEquals(Arrays.asList("sample-0", "sample-1", "sample-2"), drainAll(queue));
+        }
+    }
+
+    @Test
+    public void corruptedPayloadIsDetectedByChecksum() throws IOException {
+        File dir = tmp.getRoot();
+        try (OfflineQueue queue = open(dir)) {
+            queue.append(record(0));
+            queue.append(record(1));
+        }
+
+        File segment = dir.listFiles((d, name) -> name.startsWith("segment-"))[0];
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            // Flip a byte inside the second record's payload
+            raf.seek(segment.length() - 1);
+            raf.write('X');
+        }
+
+        try (OfflineQueue queue = open(dir)) {
+            assertEquals(Arrays.asList("sample-0"), drainAll(queue));
+        }
+    }
+
+    @Test
+    public void sustainsHighAppendAndDrainThroughput() throws IOException {
+        byte[] payload = new byte[256];
+        Arrays.fill(payload, (byte) '7');
+        int records = 50_000;
+
+        try (OfflineQueue queue = OfflineQueue.open(tmp.getRoot(), 1024 * 1024, 64L * 1024 * 1024,
+                OfflineQueue.FsyncPolicy.ON_ROLLOVER)) {
+            long start = System.nanoTime();
+            for (int i = 0; i < records; i++) {
+                queue.append(payload);
+            }
+            long appended = System.nanoTime();
+            int[] count = {0};
+            while (queue.drain(1000, (buf, off, len) -> {
+                count[0]++;
+                return len == payload.length;
+            }) > 0) {
+                // keep draining
+            }
+            long drained = System.nanoTime();
+
+            assertEquals(records, count[0]);
+            // Generous bounds: well over 10k records/s each way even on slow CI disks
+            assertTrue("append took " + (appended - start) / 1_000_000 + " ms",
+                    appended - start < 5_000_000_000L);
+            assertTrue("drain took " + (drained - appended) / 1_000_000 + " ms",
+                    drained - appended < 5_000_000_000L);
+        }
+    }
+
+    /** 200 records with a payload byte flipped in the third record of the second, completed segment. */
+    private File queueWithCorruptRecord() throws IOException {
+        File dir = tmp.newFolder();
+        try (OfflineQueue queue = open(dir)) {
+            for (int i = 0; i < 200; i++) {
+                queue.append(record(i));
+            }
+        }
+        File[] segments = dir.listFiles((d, name) -> name.startsWith("segment-"));
+        Arrays.sort(segments);
+        try (RandomAccessFile raf = new RandomAccessFile(segments[1], "rw")) {
+            long position = 0;
+            for (int i = 0; i < 2; i++) {
+                raf.seek(position);
+                position += OfflineQueue.HEADER_BYTES + raf.readInt();
+            }
+            raf.seek(position + OfflineQueue.HEADER_BYTES);
+            raf.write('X');
+        }
+        return dir;
+    }
+
+    private static OfflineQueue open(File dir) throws IOException {
+        return OfflineQueue.open(dir, SEGMENT_BYTES, TOTAL_BYTES, OfflineQueue.FsyncPolicy.ALWAYS);
+    }
+
+    private static List<String> drainAll(OfflineQueue queue) throws IOException {
+        List<String> out = new ArrayList<>();
+        while (queue.drain(64, (buf, off, len) -> out.add(new String(buf, off, len, StandardCharsets.UTF_8))) > 0) {
+            // keep draining
+        }
+        return out;
+    }
+
+    private static byte[] record(int n) {
+        return ("sample-" + n).getBytes(StandardCharsets.UTF_8);
+    }
+}
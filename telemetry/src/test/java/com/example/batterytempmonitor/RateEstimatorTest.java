@@ -0,0 +1,121 @@
+package com.example.batterytempmonitor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RateEstimatorTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    public void firstReadingOnlySetsBaseline() {
+        RateEstimator estimator = new RateEstimator(0);
+        // A lifetime total must not be reported as traffic in the first interval
+        assertTrue(Double.isNaN(estimator.update(9_000_000_000L, 0)));
+        assertEquals(2000.0, estimator.update(9_000_010_000L, 5 * SECOND), 1e-9);
+    }
+
+    @Test
+    public void rateUsesActualElapsedTime() {
+        RateEstimator estimator = new RateEstimator(0);
+        estimator.update(0, 0);
+        // The tick was due at 5 s but ran 700 ms late
+        assertEquals(1000.0, estimator.update(5700, 5_700_000_000L), 1e-9);
+        assertEquals(1000.0, estimator.update(10_000, 10_000_000_000L), 1e-9);
+    }
+
+    @Test
+    public void counterResetSkipsOneInterval() {
+        RateEstimator estimator = new RateEstimator(0);
+        estimator.update(50_000, 0);
+        estimator.update(60_000, SECOND);
+
+        assertTrue(Double.isNaN(estimator.update(1_000, 2 * SECOND)));
+        assertEquals(1, estimator.getResetCount());
+        assertEquals(500.0, estimator.update(1_500, 3 * SECOND), 1e-9);
+    }
+
+    @Test
+    public void unsupportedCounterAndStalledClockGiveNoNewRate() {
+        RateEstimator estimator = new RateEstimator(0);
+        assertTrue(Double.isNaN(estimator.update(-1, 0)));
+        estimator.update(100, SECOND);
+        assertEquals(100.0, estimator.update(200, 2 * SECOND), 1e-9);
+        assertEquals(100.0, estimator.update(900, 2 * SECOND), 1e-9);
+        assertEquals(300.0, estimator.update(500, 3 * SECOND), 1e-9);
+    }
+
+    @Test
+    public void smoothingWeightsByElapsedTime() {
+        RateEstimator estimator = new RateEstimator(10_000);
+        estimator.update(0, 0);
+        assertEquals(1000.0, estimator.update(1000, SECOND), 1e-9);
+
+        // A burst over one long interval moves the average further than over a short one
+        double alphaLong = 1 - Math.exp(-1.0);
+        assertEquals(1000 + alphaLong * (3000 - 1000), estimator.update(1000 + 30_000, 11 * SECOND), 1e-6);
+    }
+
+    @Test
+    public void trackerBreaksTrafficDownByUid() {
+        long[] clock = {0};
+        FakeCounters counters = new FakeCounters();
+        TrafficRateTracker tracker = new TrafficRateTracker(counters, () -> clock[0], 0, 10_123);
+
+        counters.set(1_000_000, 500_000, 4_000, 2_000);
+        tracker.update();
+        assertTrue(Double.isNaN(tracker.getRxRate()));
+        assertEquals(1_000_000, tracker.getTotalRxBytes());
+
+        clock[0] = 5 * SECOND;
+        counters.set(1_051_200, 510_240, 5_024, 2_512);
+        tracker.update();
+
+        assertEquals(10_240.0, tracker.getRxRate(), 1e-9);
+        assertEquals(2_048.0, tracker.getTxRate(), 1e-9);
+        assertEquals(204.8, tracker.getUidRxRate(10_123), 1e-9);
+        assertEquals(102.4, tracker.getUidTxRate(10_123), 1e-9);
+        assertTrue(Double.isNaN(tracker.getUidRxRate(10_999)));
+
+        // Per-UID counters unavailable, e.g. another app's UID on newer Android
+        clock[0] = 10 * SECOND;
+        counters.set(1_102_400, 520_480, -1, -1);
+        tracker.update();
+        assertTrue(Double.isNaN(tracker.getUidRxRate(10_123)));
+        assertEquals(10_240.0, tracker.getRxRate(), 1e-9);
+    }
+
+    private static final class FakeCounters implements TrafficCounters {
+        private long totalRx;
+        private long totalTx;
+        private long uidRx;
+        private long uidTx;
+
+        void set(long totalRx, long totalTx, long uidRx, long uidTx) {
+            this.totalRx = totalRx;
+            this.totalTx = totalTx;
+            this.uidRx = uidRx;
+            this.uidTx = uidTx;
+        }
+
+        @Override
+        public long getTotalRxBytes() {
+            return totalRx;
+        }
+
+        @Override
+        public long getTotalTxBytes() {
+            return totalTx;
+        }
+
+        @Override
+        public long getUidRxBytes(int uid) {
+            return uidRx;
+        }
+
+        @Override
+        public long getUidTxBytes(int uid) {
+            return uidTx;
+        }
+    }
+}
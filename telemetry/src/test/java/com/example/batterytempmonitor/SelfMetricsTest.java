@@ -0,0 +1,171 @@
+package com.example.batterytempmonitor;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SelfMetricsTest {
+
+    @Test
+    public void percentilesStayWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = new long[100_000];
+        Random random = new Random(1);
+        for (int i = 0; i < values.length; i++) {
+            // Log-normal around 50 us with a long tail, like real stage latencies
+            values[i] = (long) (50_000 * Math.exp(random.nextGaussian()));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(values.length, snapshot.getCount());
+        for (double percentile : new double[]{50, 90, 95, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(values.length * percentile / 100) - 1];
+            long reported = snapshot.getPercentileNanos(percentile);
+            assertTrue("p" + percentile + " " + reported + " < " + exact, reported >= exact);
+            assertTrue("p" + percentile + " " + reported + " vs " + exact, reported <= exact * 1.0625 + 1);
+        }
+        long max = values[values.length - 1];
+        assertTrue(snapshot.getMaxNanos() >= max && snapshot.getMaxNanos() <= max * 1.0625);
+        double sum = 0;
+        for (long value : values) {
+            sum += value;
+        }
+        assertEquals(sum / values.length, snapshot.getMeanNanos(), 1e-6);
+    }
+
+    @Test
+    public void bucketsCoverEveryValueExactlyOnce() {
+        long previousHighest = -1;
+        for (int bucket = 0; bucket < LatencyHistogram.BUCKET_COUNT; bucket++) {
+            long highest = LatencyHistogram.highestValueOf(bucket);
+            assertEquals(bucket, LatencyHistogram.bucketOf(previousHighest + 1));
+            assertEquals(bucket, LatencyHistogram.bucketOf(highest));
+            previousHighest = highest;
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+        assertEquals(0, LatencyHistogram.bucketOf(0));
+    }
+
+    @Test
+    public void concurrentRecordingLosesNothing() throws InterruptedException {
+        SelfMetrics metrics = new SelfMetrics();
+        int threads = 8;
+        int perThread = 50_000;
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            workers[t] = new Thread(() -> {
+                Random random = new Random(seed);
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    metrics.record(SelfMetrics.Stage.PUBLISH, random.nextInt(1_000_000));
+                    metrics.increment(SelfMetrics.Counter.BATCHES_PUBLISHED);
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        SelfMetrics.Report report = metrics.report(0);
+        assertEquals((long) threads * perThread, report.get(SelfMetrics.Stage.PUBLISH).getCount());
+        assertEquals((long) threads * perThread, report.get(SelfMetrics.Counter.BATCHES_PUBLISHED));
+    }
+
+    @Test
+    public void recordingDoesNotAllocate() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        long threadId = Thread.currentThread().getId();
+        SelfMetrics metrics = new SelfMetrics();
+        // Warm up so that the measured loop runs compiled code
+        for (int i = 0; i < 200_000; i++) {
+            record(metrics, i);
+        }
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1_000_000; i++) {
+            record(metrics, i);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        // A few hundred bytes of slack for the measurement itself
+        assertTrue(allocated + " bytes allocated", allocated < 1024);
+    }
+
+    private static void record(SelfMetrics metrics, int i) {
+        long start = System.nanoTime();
+        metrics.increment(SelfMetrics.Counter.TICKS);
+        metrics.record(SelfMetrics.Stage.SAMPLE, i);
+        metrics.recordSince(SelfMetrics.Stage.ENCODE, start);
+    }
+
+    @Test
+    public void intervalReportSubtractsEarlierReport() {
+        SelfMetrics metrics = new SelfMetrics();
+        AtomicInteger queueDepth = new AtomicInteger(3);
+        metrics.addGauge("queuePending", queueDepth::get);
+        metrics.record(SelfMetrics.Stage.ENQUEUE, 5_000_000);
+        metrics.increment(SelfMetrics.Counter.LOCAL_SAVES);
+        SelfMetrics.Report first = metrics.report(1000);
+
+        metrics.record(SelfMetrics.Stage.ENQUEUE, 20_000);
+        metrics.record(SelfMetrics.Stage.ENQUEUE, 30_000);
+        metrics.add(SelfMetrics.Counter.LOCAL_SAVES, 2);
+        queueDepth.set(5);
+        SelfMetrics.Report interval = metrics.report(61_000).minus(first);
+
+        LatencyHistogram.Snapshot enqueue = interval.get(SelfMetrics.Stage.ENQUEUE);
+        assertEquals(2, enqueue.getCount());
+        // The 5 ms outlier belongs to the earlier interval
+        assertTrue(enqueue.getMaxNanos() < 32_000);
+        assertEquals(25_000, enqueue.getMeanNanos(), 0);
+        assertEquals(2, interval.get(SelfMetrics.Counter.LOCAL_SAVES));
+        assertEquals(5, interval.getGauge("queuePending"));
+        assertEquals(-1, interval.getGauge("missing"));
+
+        String json = interval.toJson("Pixel \"7\"");
+        assertTrue(json, json.startsWith("{\"deviceId\":\"Pixel \\\"7\\\"\",\"timestamp\":61000,"));
+        assertTrue(json, json.contains("\"enqueue\":{\"count\":2,\"meanUs\":25,"));
+        assertTrue(json, json.contains("\"localSaves\":2"));
+        assertTrue(json, json.endsWith("\"gauges\":{\"queuePending\":5}}"));
+    }
+
+    @Test
+    public void publisherRecordsEncodeAndPublishOutcomes() {
+        SelfMetrics metrics = new SelfMetrics();
+        FakeMqttTransport transport = new FakeMqttTransport();
+        BatchingPublisher publisher = new BatchingPublisher(transport, "t", new JsonPayloadFormat("dev"),
+                2, 4096, 60_000);
+        publisher.setSelfMetrics(metrics);
+        MetricsSnapshot sample = new MetricsSnapshot.Builder().set(Metric.CPU_USAGE, 12.5).build(1000);
+
+        publisher.publish(sample);
+        publisher.publish(sample);
+        transport.failPublish = true;
+        publisher.publish(sample);
+        publisher.flush();
+
+        assertEquals(3, metrics.getHistogram(SelfMetrics.Stage.ENCODE).snapshot().getCount());
+        assertEquals(1, metrics.getHistogram(SelfMetrics.Stage.PUBLISH).snapshot().getCount());
+        assertEquals(1, metrics.get(SelfMetrics.Counter.BATCHES_PUBLISHED));
+        assertEquals(2, metrics.get(SelfMetrics.Counter.SAMPLES_PUBLISHED));
+        assertEquals(1, metrics.get(SelfMetrics.Counter.PUBLISH_FAILURES));
+    }
+}
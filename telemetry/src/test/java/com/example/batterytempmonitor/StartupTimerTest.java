@@ -0,0 +1,57 @@
+package com.example.batterytempmonitor;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class StartupTimerTest {
+
+    @Test
+    public void phasesAreReportedAsGaugesOnceReached() {
+        AtomicLong nanos = new AtomicLong(1_000_000_000L);
+        StartupTimer timer = new StartupTimer(nanos::get);
+        SelfMetrics metrics = new SelfMetrics();
+        timer.addGauges(metrics);
+
+        nanos.addAndGet(120_000_000);
+        timer.mark(StartupTimer.Phase.CREDENTIALS_LOADED);
+        nanos.addAndGet(300_000_000);
+        timer.mark(StartupTimer.Phase.CONNECTED);
+
+        SelfMetrics.Report report = metrics.report(0);
+        assertEquals(120, report.getGauge("startupCredentialsMs"));
+        assertEquals(420, report.getGauge("startupConnectedMs"));
+        assertEquals(-1, report.getGauge("startupFirstPublishMs"));
+        assertTrue(report.toJson("device").contains("\"startupFirstPublishMs\":-1"));
+
+        nanos.addAndGet(80_000_000);
+        assertTrue(timer.mark(StartupTimer.Phase.FIRST_PUBLISH));
+        // A reconnect later on does not move the startup figures
+        nanos.addAndGet(60_000_000_000L);
+        assertFalse(timer.mark(StartupTimer.Phase.CONNECTED));
+
+        SelfMetrics.Report later = metrics.report(1).minus(report);
+        assertEquals(420, later.getGauge("startupConnectedMs"));
+        assertEquals(500, later.getGauge("startupFirstPublishMs"));
+    }
+
+    @Test
+    public void restartExcludesTimeBeforeThePipelineStarts() {
+        AtomicLong nanos = new AtomicLong();
+        StartupTimer timer = new StartupTimer(nanos::get);
+        SelfMetrics metrics = new SelfMetrics();
+        timer.addGauges(metrics);
+
+        // The service is created when the activity binds; the user presses Start later
+        nanos.addAndGet(30_000_000_000L);
+        timer.restart();
+        nanos.addAndGet(250_000_000);
+        timer.mark(StartupTimer.Phase.CONNECTED);
+
+        SelfMetrics.Report report = metrics.report(0);
+        assertEquals(250, report.getGauge("startupConnectedMs"));
+        assertEquals(-1, report.getGauge("startupCredentialsMs"));
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.batterytempmonitor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TimeSeriesStoreTest {
+    private static final long MINUTE = 60_000;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long INTERVAL_MS = 5000;
+    // Not aligned to a minute, so the first bucket is partial
+    private static final long START = 1_700_000_017_000L;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void rollupsMatchStatisticsOfRawSamples() throws IOException {
+        MetricsSnapshot[] samples = samples(3 * HOUR / INTERVAL_MS, 1);
+        try (TimeSeriesStore store = open(tmp.getRoot())) {
+            for (MetricsSnapshot sample : samples) {
+                assertTrue(store.append(sample));
+            }
+            for (Metric metric : new Metric[]{Metric.CPU_USAGE, Metric.BATTERY_TEMP}) {
+                assertRollup(store, samples, metric, TimeSeriesStore.Resolution.MINUTE);
+                assertRollup(store, samples, metric, TimeSeriesStore.Resolution.HOUR);
+            }
+            assertEquals(samples.length, store.getRowCount(TimeSeriesStore.Resolution.RAW));
+            // The minute and hour in progress are not rolled up yet
+            assertEquals(3 * 60, store.getRowCount(TimeSeriesStore.Resolution.MINUTE));
+            assertEquals(3, store.getRowCount(TimeSeriesStore.Resolution.HOUR));
+        }
+    }
+
+    @Test
+    public void rangeQueryReturnsRawSamplesInOrder() throws IOException {
+        MetricsSnapshot[] samples = samples(100, 2);
+        try (TimeSeriesStore store = open(tmp.getRoot())) {
+            for (MetricsSnapshot sample : samples) {
+                store.append(sample);
+            }
+            long from = samples[10].getTimestampMillis();
+            long to = samples[19].getTimestampMillis();
+            TimeSeriesStore.Series series = store.query(Metric.CPU_USAGE, from, to, TimeSeriesStore.Resolution.RAW);
+
+            assertEquals(10, series.size());
+            for (int i = 0; i < series.size(); i++) {
+                assertEquals(samples[10 + i].getTimestampMillis(), series.getTimestampMillis(i));
+                assertEquals(samples[10 + i].get(Metric.CPU_USAGE), series.getMean(i), 0);
+                assertEquals(1, series.getCount(i));
+            }
+            // Battery level is only sampled every sixth tick; absent rows are skipped
+            TimeSeriesStore.Series level = store.query(Metric.BATTERY_LEVEL, from, to, TimeSeriesStore.Resolution.RAW);
+            assertEquals(2, level.size());
+        }
+    }
+
+    @Test
+    public void reopeningResumesTheBucketsInProgress() throws IOException {
+        MetricsSnapshot[] samples = samples(2 * HOUR / INTERVAL_MS, 3);
+        File interrupted = tmp.newFolder("interrupted");
+        File continuous = tmp.newFolder("continuous");
+
+        int split = samples.length / 2 + 7;
+        try (TimeSeriesStore store = open(interrupted)) {
+            for (int i = 0; i < split; i++) {
+                store.append(samples[i]);
+            }
+        }
+        try (TimeSeriesStore reopened = open(interrupted); TimeSeriesStore reference = open(continuous)) {
+            // Samples older than what was already stored are rejected after a restart too
+            assertFalse(reopened.append(samples[split - 2]));
+            for (int i = split; i < samples.length; i++) {
+                reopened.append(samples[i]);
+            }
+            for (MetricsSnapshot sample : samples) {
+                reference.append(sample);
+            }
+            for (TimeSeriesStore.Resolution resolution : TimeSeriesStore.Resolution.values()) {
+                assertSameSeries(reference.query(Metric.CPU_USAGE, 0, Long.MAX_VALUE, resolution),
+                        reopened.query(Metric.CPU_USAGE, 0, Long.MAX_VALUE, resolution));
+            }
+            assertEquals(1, reopened.getRejectedCount());
+        }
+    }
+
+    @Test
+    public void ringsKeepDiskUsageFixed() throws IOException {
+        MetricsSnapshot[] samples = samples(HOUR / INTERVAL_MS, 4);
+        try (TimeSeriesStore store = TimeSeriesStore.open(tmp.getRoot(), 100, 10, 2)) {
+            long diskBytes = store.getDiskBytes();
+            for (MetricsSnapshot sample : samples) {
+                store.append(sample);
+            }
+            assertEquals(diskBytes, store.getDiskBytes());
+            assertEquals(diskBytes, directorySize(tmp.getRoot()));
+
+            assertEquals(100, store.getRowCount(TimeSeriesStore.Resolution.RAW));
+            assertEquals(samples[samples.length - 100].getTimestampMillis(),
+                    store.getOldestMillis(TimeSeriesStore.Resolution.RAW));
+            assertEquals(10, store.getRowCount(TimeSeriesStore.Resolution.MINUTE));
+            TimeSeriesStore.Series minutes = store.query(Metric.CPU_USAGE, 0, Long.MAX_VALUE,
+                    TimeSeriesStore.Resolution.MINUTE);
+            assertEquals(10, minutes.size());
+            assertEquals(MINUTE, minutes.getTimestampMillis(1) - minutes.getTimestampMillis(0));
+        }
+    }
+
+    @Test
+    public void changedLayoutStartsAfresh() throws IOException {
+        try (TimeSeriesStore store = open(tmp.getRoot())) {
+            for (MetricsSnapshot sample : samples(50, 5)) {
+                store.append(sample);
+            }
+        }
+        try (TimeSeriesStore store = TimeSeriesStore.open(tmp.getRoot(), 500, 100, 10)) {
+            assertEquals(0, store.getRowCount(TimeSeriesStore.Resolution.RAW));
+            assertEquals(-1, store.getOldestMillis(TimeSeriesStore.Resolution.RAW));
+        }
+    }
+
+    private static TimeSeriesStore open(File directory) throws IOException {
+        return TimeSeriesStore.open(directory, 5000, 500, 50);
+    }
+
+    /** 5 s samples with noisy CPU and temperature; battery level every 30 s, CPU missing now and then. */
+    private static MetricsSnapshot[] samples(long count, long seed) {
+        Random random = new Random(seed);
+        MetricsSnapshot[] samples = new MetricsSnapshot[(int) count];
+        for (int i = 0; i < count; i++) {
+            MetricsSnapshot.Builder builder = new MetricsSnapshot.Builder();
+            if (random.nextInt(20) != 0) {
+                builder.set(Metric.CPU_USAGE, Math.round(random.nextDouble() * 10000) / 100.0);
+            }
+            builder.set(Metric.BATTERY_TEMP, 30 + random.nextGaussian());
+            if (i % 6 == 0) {
+                builder.set(Metric.BATTERY_LEVEL, 100 - i / 100.0);
+            }
+            samples[i] = builder.build(START + i * INTERVAL_MS);
+        }
+        return samples;
+    }
+
+    /** Compares every completed bucket against statistics computed directly from the samples. */
+    private static void assertRollup(TimeSeriesStore store, MetricsSnapshot[] samples, Metric metric,
+                                     TimeSeriesStore.Resolution resolution) {
+        long bucketMillis = resolution.getBucketMillis();
+        TimeSeriesStore.Series series = store.query(metric, 0, Long.MAX_VALUE, resolution);
+        assertTrue(series.size() > 0);
+        for (int row = 0; row < series.size(); row++) {
+            long bucket = series.getTimestampMillis(row);
+            assertEquals(0, bucket % bucketMillis);
+            double sum = 0;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            long count = 0;
+            for (MetricsSnapshot sample : samples) {
+                long t = sample.getTimestampMillis();
+                if (t >= bucket && t < bucket + bucketMillis && sample.has(metric)) {
+                    double value = sample.get(metric);
+                    sum += value;
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                    count++;
+                }
+            }
+            String where = resolution + " bucket " + row;
+            assertEquals(where, count, series.getCount(row));
+            assertEquals(where, sum / count, series.getMean(row), 1e-9);
+            assertEquals(where, min, series.getMin(row), 0);
+            assertEquals(where, max, series.getMax(row), 0);
+        }
+    }
+
+    private static void assertSameSeries(TimeSeriesStore.Series expected, TimeSeriesStore.Series actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getTimestampMillis(i), actual.getTimestampMillis(i));
+            assertEquals(expected.getMean(i), actual.getMean(i), 1e-9);
+            assertEquals(expected.getMin(i), actual.getMin(i), 0);
+            assertEquals(expected.getMax(i), actual.getMax(i), 0);
+            assertEquals(expected.getCount(i), actual.getCount(i));
+        }
+    }
+
+    private static long directorySize(File directory) {
+        long total = 0;
+        for (File file : directory.listFiles()) {
+            total += file.length();
+        }
+        return total;
+    }
+}
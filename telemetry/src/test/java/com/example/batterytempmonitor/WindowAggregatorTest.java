@@ -0,0 +1,97 @@
+package com.example.batterytempmonitor;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class WindowAggregatorTest {
+
+    @Test
+    public void statisticsMatchSortedReference() {
+        Random random = new Random(11);
+        for (int n : new int[] {1, 2, 19, 20, 21, 100, 997}) {
+            WindowAggregator aggregator = new WindowAggregator(n);
+            double[] reference = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                // Few distinct values, so duplicates around the pivot are exercised too
+                reference[i] = random.nextInt(50) / 2.0;
+                sum += reference[i];
+                aggregator.add(Metric.BATTERY_TEMP, reference[i]);
+            }
+            aggregator.computeWindow();
+            Arrays.sort(reference);
+
+            assertEquals(n, aggregator.getCount(Metric.BATTERY_TEMP));
+            assertEquals(reference[0], aggregator.getMin(Metric.BATTERY_TEMP), 0.0);
+            assertEquals(reference[n - 1], aggregator.getMax(Metric.BATTERY_TEMP), 0.0);
+            assertEquals(sum / n, aggregator.getMean(Metric.BATTERY_TEMP), 1e-9);
+            assertEquals("n=" + n, reference[(int) Math.ceil(0.95 * n) - 1],
+                    aggregator.getP95(Metric.BATTERY_TEMP), 0.0);
+        }
+    }
+
+    @Test
+    public void closeWindowEmitsMeansWithStatsAndResets() {
+        WindowAggregator aggregator = new WindowAggregator(30);
+        for (int i = 1; i <= 30; i++) {
+            aggregator.add(Metric.CPU_USAGE, i);
+        }
+        aggregator.add(Metric.STORAGE_TOTAL, Double.NaN);
+
+        MetricsSnapshot snapshot = aggregator.closeWindow(1000, 30000);
+        WindowStats window = snapshot.getWindow();
+
+        assertEquals(1000, snapshot.getTimestampMillis());
+        assertEquals(15.5, snapshot.get(Metric.CPU_USAGE), 1e-9);
+        assertFalse(snapshot.has(Metric.STORAGE_TOTAL));
+        assertEquals(30000, window.getDurationMillis());
+        assertEquals(30, window.getCount(Metric.CPU_USAGE));
+        assertEquals(1.0, window.getMin(Metric.CPU_USAGE), 0.0);
+        assertEquals(30.0, window.getMax(Metric.CPU_USAGE), 0.0);
+        assertEquals(29.0, window.getP95(Metric.CPU_USAGE), 0.0);
+        assertFalse(window.has(Metric.STORAGE_TOTAL));
+        assertEquals(0, aggregator.getCount(Metric.CPU_USAGE));
+    }
+
+    @Test
+    public void addingSamplesDoesNotAllocate() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+
+        WindowAggregator aggregator = new WindowAggregator(1000);
+        MetricsSnapshot.Builder builder = new MetricsSnapshot.Builder();
+        Random random = new Random(5);
+        double[] values = new double[1000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextDouble() * 100;
+        }
+        runWindows(aggregator, builder, values);
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        runWindows(aggregator, builder, values);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue("allocated " + allocated + " bytes", allocated < 4096);
+    }
+
+    private static void runWindows(WindowAggregator aggregator, MetricsSnapshot.Builder builder, double[] values) {
+        for (int window = 0; window < 20; window++) {
+            for (double value : values) {
+                builder.clearSampled();
+                builder.set(Metric.CPU_USAGE, value).set(Metric.BATTERY_TEMP, value / 3);
+                aggregator.addSampled(builder);
+            }
+            aggregator.computeWindow();
+            aggregator.reset();
+        }
+    }
+}